@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.model.instance.AtlasEntity;
+import org.apache.atlas.model.instance.AtlasObjectId;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+
+/**
+ * Converts V1 hook notification messages into V2 {@link AtlasEntity} instances,
+ * so that lineage can be sent through Atlas V2 bulk entity REST API.
+ * <p>Entities are merged by type name and qualifiedName. Collection attributes such as inputs and outputs
+ * are unioned, other attributes are overwritten by the latest message.
+ * A partial update to an entity that is created within the same batch is merged into the created entity.</p>
+ * <p>Nested Referenceables are converted to {@link AtlasObjectId} referring the entity by its qualifiedName.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class AtlasEntityConverter {
+
+    private final Map<String, AtlasEntity> createdEntities = new LinkedHashMap<>();
+    private final Map<String, AtlasEntity> updatedEntities = new LinkedHashMap<>();
+
+    public void add(HookNotification.HookNotificationMessage message) {
+        switch (message.getType()) {
+            case ENTITY_CREATE:
+                for (Referenceable ref : ((HookNotification.EntityCreateRequest) message).getEntities()) {
+                    merge(createdEntities, toEntity(ref));
+                }
+                break;
+            case ENTITY_PARTIAL_UPDATE:
+                final AtlasEntity entity = toEntity(((HookNotification.EntityPartialUpdateRequest) message).getEntity());
+                final String key = toKey(entity);
+                if (createdEntities.containsKey(key)) {
+                    merge(createdEntities, entity);
+                } else {
+                    merge(updatedEntities, entity);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported hook notification type: " + message.getType());
+        }
+    }
+
+    /**
+     * @return entities to be created or updated with Atlas bulk entity API, in the order they are added.
+     */
+    public Collection<AtlasEntity> getCreatedEntities() {
+        return createdEntities.values();
+    }
+
+    /**
+     * @return entities to be partially updated by its unique attribute, in the order they are added.
+     */
+    public Collection<AtlasEntity> getUpdatedEntities() {
+        return updatedEntities.values();
+    }
+
+    public boolean isEmpty() {
+        return createdEntities.isEmpty() && updatedEntities.isEmpty();
+    }
+
+    static AtlasEntity toEntity(Referenceable ref) {
+        final AtlasEntity entity = new AtlasEntity(ref.getTypeName());
+        for (Map.Entry<String, Object> value : ref.getValuesMap().entrySet()) {
+            entity.setAttribute(value.getKey(), toAttributeValue(value.getValue()));
+        }
+        return entity;
+    }
+
+    private static Object toAttributeValue(Object value) {
+        if (value instanceof Referenceable) {
+            final Referenceable ref = (Referenceable) value;
+            return new AtlasObjectId(ref.getTypeName(), ATTR_QUALIFIED_NAME, ref.get(ATTR_QUALIFIED_NAME));
+        }
+        if (value instanceof Collection) {
+            final Collection<?> values = (Collection<?>) value;
+            final List<Object> converted = new ArrayList<>(values.size());
+            for (Object v : values) {
+                converted.add(toAttributeValue(v));
+            }
+            return converted;
+        }
+        return value;
+    }
+
+    private static String toKey(AtlasEntity entity) {
+        return entity.getTypeName() + "::" + entity.getAttribute(ATTR_QUALIFIED_NAME);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void merge(Map<String, AtlasEntity> entities, AtlasEntity entity) {
+        final String key = toKey(entity);
+        final AtlasEntity existing = entities.get(key);
+        if (existing == null) {
+            entities.put(key, entity);
+            return;
+        }
+
+        for (Map.Entry<String, Object> attribute : entity.getAttributes().entrySet()) {
+            final Object existingValue = existing.getAttribute(attribute.getKey());
+            final Object value = attribute.getValue();
+            if (existingValue instanceof Collection && value instanceof Collection) {
+                final Set<Object> union = new LinkedHashSet<>((Collection<Object>) existingValue);
+                union.addAll((Collection<Object>) value);
+                existing.setAttribute(attribute.getKey(), new ArrayList<>(union));
+            } else if (value != null) {
+                existing.setAttribute(attribute.getKey(), value);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate of outbound Atlas traffic per {@link TrafficClass} with token buckets.
+ * <p>Traffic classes are prioritized by declaration order. While a higher priority class has pending or in-progress
+ * requests, lower priority classes wait, so that type definition and flow structure updates never queue up behind
+ * a lineage backlog.</p>
+ * <p>Rates are configured in atlas-application.properties:</p>
+ * <ul>
+ *     <li>atlas.hook.nifi.rate.&lt;class&gt;.permitsPerSecond: number of entities or messages per second.
+ *     Zero or negative means unlimited (default).</li>
+ *     <li>atlas.hook.nifi.rate.&lt;class&gt;.burst: max permits accumulated while idle. Defaults to permitsPerSecond.</li>
+ * </ul>
+ * <p>Where &lt;class&gt; is one of typeDefs, flowStructure, lineageCreate and lineagePartialUpdate.</p>
+ * <p>This class is thread-safe.</p>
+ */
+public class AtlasTrafficShaper {
+
+    private static final String CONF_PREFIX = "atlas.hook.nifi.rate.";
+
+    public enum TrafficClass {
+        TYPE_DEFS("typeDefs"),
+        FLOW_STRUCTURE("flowStructure"),
+        LINEAGE_CREATE("lineageCreate"),
+        LINEAGE_PARTIAL_UPDATE("lineagePartialUpdate");
+
+        private final String configName;
+
+        TrafficClass(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+    }
+
+    private static class TokenBucket {
+        private final double permitsPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+
+        private TokenBucket(double permitsPerSecond, double capacity, long nowNanos) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefillNanos = nowNanos;
+        }
+
+        private boolean isUnlimited() {
+            return permitsPerNano <= 0;
+        }
+
+        private void refill(long nowNanos) {
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * permitsPerNano);
+            lastRefillNanos = nowNanos;
+        }
+
+        /**
+         * A request larger than the bucket capacity is allowed once the bucket is full,
+         * and the bucket goes into debt so that following requests wait accordingly.
+         * @return 0 if permits are consumed, otherwise nanoseconds to wait until enough tokens are available
+         */
+        private long tryConsume(int permits, long nowNanos) {
+            if (isUnlimited()) {
+                return 0;
+            }
+            refill(nowNanos);
+            final double required = Math.min(permits, capacity);
+            if (tokens >= required) {
+                tokens -= permits;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((required - tokens) / permitsPerNano));
+        }
+    }
+
+    private final TokenBucket[] buckets = new TokenBucket[TrafficClass.values().length];
+    private final int[] activeRequests = new int[TrafficClass.values().length];
+    private final LongSupplier nanoClock;
+
+    /**
+     * Create an unlimited traffic shaper, that only prioritizes traffic classes.
+     */
+    public AtlasTrafficShaper() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * For unit tests to control time.
+     */
+    AtlasTrafficShaper(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            setRate(trafficClass, 0, 0);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if a rate is not a number
+     */
+    public static AtlasTrafficShaper fromProperties(Properties atlasProperties) {
+        final AtlasTrafficShaper shaper = new AtlasTrafficShaper();
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            final String prefix = CONF_PREFIX + trafficClass.getConfigName();
+            final double permitsPerSecond = parseRate(atlasProperties, prefix + ".permitsPerSecond", 0);
+            final double burst = parseRate(atlasProperties, prefix + ".burst", permitsPerSecond);
+            shaper.setRate(trafficClass, permitsPerSecond, burst);
+        }
+        return shaper;
+    }
+
+    private static double parseRate(Properties atlasProperties, String key, double defaultValue) {
+        final String value = atlasProperties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            final double rate = Double.parseDouble(value.trim());
+            if (Double.isNaN(rate) || Double.isInfinite(rate)) {
+                throw new NumberFormatException();
+            }
+            return rate;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value '%s' for '%s' in atlas-application.properties, a number is expected.",
+                    value, key), e);
+        }
+    }
+
+    public synchronized void setRate(TrafficClass trafficClass, double permitsPerSecond, double burst) {
+        buckets[trafficClass.ordinal()] = new TokenBucket(permitsPerSecond, Math.max(1, burst), nanoClock.getAsLong());
+        notifyAll();
+    }
+
+    /**
+     * @return max number of permits that can be acquired without going into debt, or {@link Integer#MAX_VALUE} if unlimited.
+     */
+    public synchronized int getBurst(TrafficClass trafficClass) {
+        final TokenBucket bucket = buckets[trafficClass.ordinal()];
+        return bucket.isUnlimited() ? Integer.MAX_VALUE : (int) Math.max(1, bucket.capacity);
+    }
+
+    /**
+     * Wait until the requested permits are available and no higher priority request is pending.
+     * @param trafficClass the traffic class of the request
+     * @param permits number of entities or messages to send
+     */
+    public void acquire(TrafficClass trafficClass, int permits) {
+        final int index = trafficClass.ordinal();
+        synchronized (this) {
+            activeRequests[index]++;
+            try {
+                while (true) {
+                    final long waitNanos = tryAcquire(trafficClass, permits);
+                    if (waitNanos == 0) {
+                        return;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for Atlas " + trafficClass.getConfigName() + " traffic permits.", e);
+            } finally {
+                activeRequests[index]--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Consume the requested permits if available and no higher priority request is pending, without waiting.
+     * @return 0 if permits are consumed, otherwise nanoseconds to wait before trying again
+     */
+    synchronized long tryAcquire(TrafficClass trafficClass, int permits) {
+        final int index = trafficClass.ordinal();
+        return hasHigherPriorityRequests(index)
+                ? TimeUnit.MILLISECONDS.toNanos(100)
+                : buckets[index].tryConsume(permits, nanoClock.getAsLong());
+    }
+
+    /**
+     * Mark a series of requests in progress, so that lower priority classes wait until it is closed.
+     * @param trafficClass the traffic class of the requests
+     * @return a session to be closed when the requests complete
+     */
+    public Session begin(TrafficClass trafficClass) {
+        final int index = trafficClass.ordinal();
+        synchronized (this) {
+            activeRequests[index]++;
+        }
+        return () -> {
+            synchronized (AtlasTrafficShaper.this) {
+                activeRequests[index]--;
+                AtlasTrafficShaper.this.notifyAll();
+            }
+        };
+    }
+
+    public interface Session extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private boolean hasHigherPriorityRequests(int index) {
+        for (int i = 0; i < index; i++) {
+            if (activeRequests[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.distributed.cache.client.Deserializer;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
+import org.apache.nifi.distributed.cache.client.Serializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+
+/**
+ * A registry of DataSets and flow path edges already sent to Atlas, shared among NiFi cluster nodes
+ * with a {@link DistributedMapCacheClient}, so that each node does not send the same entities again.
+ * <p>A bounded near-cache holds keys known to be registered, so that the distributed cache is accessed
+ * only for keys not seen by this node recently. Keys are looked up and registered per batch of messages.</p>
+ * <p>Keys expire after the TTL since those are registered, so that entities are sent again periodically,
+ * in case those are lost or deleted in Atlas. Expired keys are registered again with the current time.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class DataSetRegistry {
+
+    private static final String KEY_PREFIX = "nifi-atlas:";
+    private static final Serializer<String> SERIALIZER = (value, out) -> out.write(value.getBytes(StandardCharsets.UTF_8));
+    // The cache client passes an empty array if the key does not exist.
+    private static final Deserializer<String> DESERIALIZER = input -> input == null || input.length == 0
+            ? null : new String(input, StandardCharsets.UTF_8);
+
+    private final DistributedMapCacheClient client;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    // Registered time of each key.
+    private final Map<String, Long> nearCache;
+    private long nearCacheHitCount;
+    private long remoteHitCount;
+    private long missCount;
+
+    /**
+     * @param ttlMillis how long a registered key is valid
+     */
+    public DataSetRegistry(DistributedMapCacheClient client, int nearCacheSize, long ttlMillis) {
+        this(client, nearCacheSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    DataSetRegistry(DistributedMapCacheClient client, int nearCacheSize, long ttlMillis, LongSupplier clock) {
+        this.client = client;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.nearCache = new LinkedHashMap<String, Long>(Math.min(nearCacheSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > nearCacheSize;
+            }
+        };
+    }
+
+    public static String toDataSetKey(Referenceable dataSet) {
+        return dataSet.getTypeName() + ":" + dataSet.get(ATTR_QUALIFIED_NAME);
+    }
+
+    public static String toEdgeKey(String flowPathQualifiedName, Referenceable dataSet, boolean input) {
+        return flowPathQualifiedName + (input ? " < " : " > ") + toDataSetKey(dataSet);
+    }
+
+    private boolean isValid(Long registeredAt, long now) {
+        return registeredAt != null && now - registeredAt < ttlMillis;
+    }
+
+    private static Long parseRegisteredAt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param keys keys of DataSets or edges
+     * @return keys those are already registered and not expired
+     */
+    public Set<String> findRegistered(Collection<String> keys) throws IOException {
+        final long now = clock.getAsLong();
+        final Set<String> registered = new HashSet<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (isValid(nearCache.get(key), now)) {
+                nearCacheHitCount++;
+                registered.add(key);
+                continue;
+            }
+
+            final Long registeredAt = parseRegisteredAt(client.get(KEY_PREFIX + key, SERIALIZER, DESERIALIZER));
+            if (isValid(registeredAt, now)) {
+                remoteHitCount++;
+                nearCache.put(key, registeredAt);
+                registered.add(key);
+            } else {
+                missCount++;
+                nearCache.remove(key);
+            }
+        }
+        return registered;
+    }
+
+    /**
+     * Register keys of DataSets or edges those have been delivered to Atlas.
+     * Keys already registered by this node and not expired are not put again.
+     * A key registered by another node is kept as it is unless it has expired, then it is replaced
+     * by removing it and putting it again if absent, so that a key re-registered concurrently by another node is kept.
+     */
+    public void register(Collection<String> keys) throws IOException {
+        final long now = clock.getAsLong();
+        final String registeredAt = String.valueOf(now);
+        for (String key : keys) {
+            if (isValid(nearCache.get(key), now)) {
+                continue;
+            }
+
+            final String cacheKey = KEY_PREFIX + key;
+            final Long existing = parseRegisteredAt(client.getAndPutIfAbsent(cacheKey, registeredAt, SERIALIZER, SERIALIZER, DESERIALIZER));
+            if (isValid(existing, now)) {
+                nearCache.put(key, existing);
+                continue;
+            }
+
+            if (existing != null) {
+                client.remove(cacheKey, SERIALIZER);
+                client.putIfAbsent(cacheKey, registeredAt, SERIALIZER, SERIALIZER);
+            }
+            nearCache.put(key, now);
+        }
+    }
+
+    public long getNearCacheHitCount() {
+        return nearCacheHitCount;
+    }
+
+    public long getRemoteHitCount() {
+        return remoteHitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+}
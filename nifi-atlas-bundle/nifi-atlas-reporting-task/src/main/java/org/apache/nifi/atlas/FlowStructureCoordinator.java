@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.model.instance.AtlasEntity;
+import org.apache.atlas.model.instance.AtlasObjectId;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateManager;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.web.api.dto.flow.FlowDTO;
+import org.apache.nifi.web.api.entity.PortEntity;
+import org.apache.nifi.web.api.entity.ProcessGroupFlowEntity;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_DESCRIPTION;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+
+/**
+ * Coordinates NiFi cluster nodes so that only one of them registers the NiFi flow structure to Atlas.
+ * <p>The publisher is elected with a lease stored in CLUSTER scoped state. The lease is taken or renewed with
+ * {@link StateManager#replace(StateMap, Map, Scope)}, so only one node can win against the same state version.
+ * Every time a different node takes the lease, the epoch is incremented. The epoch is used as a fencing token,
+ * a node records a published flow version only if it still holds the lease with the same epoch.</p>
+ * <p>The fingerprint of the registered flow structure is recorded as the flow version,
+ * so that the publisher can skip registration while the flow structure is not changed.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class FlowStructureCoordinator {
+
+    static final String KEY_PUBLISHER = "flow.structure.publisher";
+    static final String KEY_LEASE_EXPIRES = "flow.structure.lease.expires";
+    static final String KEY_EPOCH = "flow.structure.epoch";
+    static final String KEY_VERSION = "flow.structure.version";
+
+    private final StateManager stateManager;
+    private final String nodeId;
+    private final long leaseMillis;
+    private final boolean clustered;
+
+    private long epoch = -1;
+    private String publisher;
+    private String publishedVersion;
+
+    /**
+     * @param nodeId an identifier of this node, unique within the cluster
+     * @param leaseMillis how long the lease is valid without being renewed
+     * @param clustered false if no other node shares the state
+     */
+    public FlowStructureCoordinator(StateManager stateManager, String nodeId, long leaseMillis, boolean clustered) {
+        this.stateManager = stateManager;
+        this.nodeId = nodeId;
+        this.leaseMillis = leaseMillis;
+        this.clustered = clustered;
+    }
+
+    /**
+     * Take the lease if no other node holds a valid lease, or renew the lease held by this node.
+     * @param now current time in milliseconds
+     * @return true if this node is the publisher of the flow structure
+     */
+    public boolean acquire(long now) throws IOException {
+        final StateMap state = stateManager.getState(Scope.CLUSTER);
+        final Map<String, String> values = state.toMap();
+        publisher = values.get(KEY_PUBLISHER);
+        publishedVersion = values.get(KEY_VERSION);
+
+        final boolean holding = nodeId.equals(publisher);
+        final long leaseExpires = parseLong(values.get(KEY_LEASE_EXPIRES));
+        if (!holding && publisher != null && leaseExpires > now) {
+            epoch = -1;
+            return false;
+        }
+
+        // The epoch is kept while this node holds the lease, even if it has expired,
+        // because no other node has taken the lease since.
+        final long currentEpoch = parseLong(values.get(KEY_EPOCH));
+        final long newEpoch = holding ? currentEpoch : currentEpoch + 1;
+        final Map<String, String> newValues = new HashMap<>(values);
+        newValues.put(KEY_PUBLISHER, nodeId);
+        newValues.put(KEY_LEASE_EXPIRES, String.valueOf(now + leaseMillis));
+        newValues.put(KEY_EPOCH, String.valueOf(newEpoch));
+        if (!update(state, newValues)) {
+            // Another node updated the state concurrently.
+            epoch = -1;
+            return false;
+        }
+
+        epoch = newEpoch;
+        publisher = nodeId;
+        return true;
+    }
+
+    /**
+     * Record the version of the flow structure registered by this node.
+     * @param version the fingerprint of the registered flow structure
+     * @return false if this node has lost the lease and the version is not recorded
+     */
+    public boolean recordPublished(String version) throws IOException {
+        final StateMap state = stateManager.getState(Scope.CLUSTER);
+        final Map<String, String> values = state.toMap();
+        if (epoch < 0 || !nodeId.equals(values.get(KEY_PUBLISHER)) || epoch != parseLong(values.get(KEY_EPOCH))) {
+            epoch = -1;
+            return false;
+        }
+
+        final Map<String, String> newValues = new HashMap<>(values);
+        newValues.put(KEY_VERSION, version);
+        if (!update(state, newValues)) {
+            return false;
+        }
+        publishedVersion = version;
+        return true;
+    }
+
+    private boolean update(StateMap oldState, Map<String, String> newValues) throws IOException {
+        if (!clustered && oldState.getVersion() < 0) {
+            // A standalone state provider may not be able to replace state that has never been set.
+            stateManager.setState(newValues, Scope.CLUSTER);
+            return true;
+        }
+        return stateManager.replace(oldState, newValues, Scope.CLUSTER);
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the publisher found when the lease was acquired last time, can be null
+     */
+    public String getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * @return the flow structure version recorded in the state, can be null
+     */
+    public String getPublishedVersion() {
+        return publishedVersion;
+    }
+
+    /**
+     * @return the epoch of the lease held by this node, or -1 if this node doesn't hold the lease
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Describe root group ports with their comments, those are not available from status.
+     * Only the publisher should call this method, after acquiring the lease and before calculating the fingerprint,
+     * so that a single node in a cluster reads them via NiFi API, and a changed comment is registered as a new version.
+     */
+    public static void describeRootGroupPorts(NiFiFlow nifiFlow, NiFiApiClient nifiApiClient) throws IOException {
+        final ProcessGroupFlowEntity processGroupFlow = nifiApiClient.getProcessGroupFlowStructure(nifiFlow.getRootProcessGroupId());
+        final FlowDTO flow = processGroupFlow.getProcessGroupFlow() != null ? processGroupFlow.getProcessGroupFlow().getFlow() : null;
+        if (flow == null) {
+            return;
+        }
+
+        final Map<String, String> comments = new HashMap<>();
+        for (Collection<PortEntity> ports : Arrays.asList(flow.getInputPorts(), flow.getOutputPorts())) {
+            if (ports != null) {
+                ports.stream().filter(port -> port.getComponent() != null && port.getComponent().getComments() != null)
+                        .forEach(port -> comments.put(port.getId(), port.getComponent().getComments()));
+            }
+        }
+
+        for (Map<AtlasObjectId, AtlasEntity> entities : Arrays.asList(nifiFlow.getRootInputPortEntities(), nifiFlow.getRootOutputPortEntities())) {
+            entities.values().forEach(entity -> {
+                final String comment = comments.get((String) entity.getAttribute(ATTR_QUALIFIED_NAME));
+                if (comment != null && !comment.isEmpty()) {
+                    entity.setAttribute(ATTR_DESCRIPTION, comment);
+                }
+            });
+        }
+    }
+
+    /**
+     * Calculate a fingerprint of what {@link NiFiAtlasClient#registerNiFiFlow(NiFiFlow)} registers.
+     * The same flow structure always has the same fingerprint regardless of the order of its components.
+     * This method should be called after {@link NiFiFlowAnalyzer#analyzePaths(NiFiFlow)}.
+     */
+    public static String fingerprint(NiFiFlow nifiFlow) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+
+        update(digest, nifiFlow.getFlowName(), nifiFlow.getRootProcessGroupId(), nifiFlow.getUrl(), nifiFlow.getDescription());
+
+        new TreeMap<>(nifiFlow.getProcessors()).forEach((pid, processor) -> update(digest, pid, processor.getName()));
+
+        nifiFlow.getFlowPaths().stream().sorted(Comparator.comparing(NiFiFlowPath::getId)).forEach(path -> update(digest,
+                path.getId(),
+                path.getProcessorIds(),
+                sorted(path.getInputs()),
+                sorted(path.getOutputs()),
+                sorted(path.getIncomingPaths().stream().map(NiFiFlowPath::getId).collect(Collectors.toList())),
+                sorted(path.getOutgoingPaths().stream().map(NiFiFlowPath::getId).collect(Collectors.toList()))));
+
+        for (Map<AtlasObjectId, AtlasEntity> entities : Arrays.asList(nifiFlow.getRootInputPortEntities(),
+                nifiFlow.getRootOutputPortEntities(), nifiFlow.getQueues(), nifiFlow.getCreatedData())) {
+            update(digest, entities.size());
+            entities.entrySet().stream().sorted(Comparator.comparing(entry -> entry.getKey().toString()))
+                    .forEach(entry -> {
+                        final Map<String, Object> attributes = entry.getValue().getAttributes();
+                        update(digest, entry.getKey(), attributes != null ? new TreeMap<>(attributes) : null);
+                    });
+        }
+
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    private static String sorted(Collection<?> values) {
+        return values.stream().map(String::valueOf).sorted().collect(Collectors.toList()).toString();
+    }
+
+    private static void update(MessageDigest digest, Object ... values) {
+        for (Object value : values) {
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+}
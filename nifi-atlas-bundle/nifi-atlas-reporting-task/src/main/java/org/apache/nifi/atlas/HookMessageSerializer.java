@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.persistence.Id;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Writes Atlas hook notification JSON directly from hook messages,
+ * without converting Referenceables into intermediate JSON trees and Strings
+ * as Atlas notification layer does.
+ * <p>The output is compatible with the versioned message format consumed by Atlas hook consumer.
+ * Serialization is done into pooled byte buffers, only the final message byte array is allocated per message.</p>
+ * <p>A nested Referenceable which has already been written within the same message, such as the nifi_flow referred
+ * from every flow path or a DataSet shared by flow paths, is written as a compact Id descriptor instead of its full
+ * values. Atlas resolves the Id to the entity written in full. Top level entities are always written in full.</p>
+ * <p>This class is thread-safe.</p>
+ */
+public class HookMessageSerializer {
+
+    static final String MESSAGE_VERSION = "1.0.0";
+    private static final String JSON_CLASS = "jsonClass";
+    private static final String REFERENCE_CLASS = "org.apache.atlas.typesystem.json.InstanceSerialization$_Reference";
+    private static final String ID_CLASS = "org.apache.atlas.typesystem.json.InstanceSerialization$_Id";
+    private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = ThreadLocal.withInitial(() -> {
+        final SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    });
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    static {
+        jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private final Deque<MessageBuffer> bufferPool = new ArrayDeque<>();
+    private final int maxPooledBuffers;
+    private final int initialBufferSize;
+
+    /**
+     * Reusable buffer. ByteArrayOutputStream keeps its internal array on reset,
+     * so that once it grows to fit typical messages, no further allocation is needed.
+     */
+    private static class MessageBuffer extends ByteArrayOutputStream {
+        private MessageBuffer(int size) {
+            super(size);
+        }
+    }
+
+    public HookMessageSerializer(int maxPooledBuffers, int initialBufferSize) {
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.initialBufferSize = initialBufferSize;
+    }
+
+    public byte[] serialize(HookNotification.HookNotificationMessage message) throws IOException {
+        final MessageBuffer buffer = borrowBuffer();
+        try {
+            try (JsonGenerator generator = jsonFactory.createJsonGenerator(buffer, JsonEncoding.UTF8)) {
+                writeVersionedMessage(generator, message);
+            }
+            return buffer.toByteArray();
+        } finally {
+            returnBuffer(buffer);
+        }
+    }
+
+    private MessageBuffer borrowBuffer() {
+        synchronized (bufferPool) {
+            final MessageBuffer buffer = bufferPool.pollFirst();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new MessageBuffer(initialBufferSize);
+    }
+
+    private void returnBuffer(MessageBuffer buffer) {
+        buffer.reset();
+        synchronized (bufferPool) {
+            if (bufferPool.size() < maxPooledBuffers) {
+                bufferPool.addFirst(buffer);
+            }
+        }
+    }
+
+    private void writeVersionedMessage(JsonGenerator generator, HookNotification.HookNotificationMessage message) throws IOException {
+        generator.writeStartObject();
+
+        generator.writeObjectFieldStart("version");
+        generator.writeStringField("version", MESSAGE_VERSION);
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("message");
+        final Set<String> writtenIds = new HashSet<>();
+        switch (message.getType()) {
+            case ENTITY_CREATE:
+                generator.writeArrayFieldStart("entities");
+                for (Referenceable entity : ((HookNotification.EntityCreateRequest) message).getEntities()) {
+                    writeReferenceable(generator, entity, writtenIds);
+                }
+                generator.writeEndArray();
+                break;
+            case ENTITY_PARTIAL_UPDATE:
+                final HookNotification.EntityPartialUpdateRequest update = (HookNotification.EntityPartialUpdateRequest) message;
+                generator.writeStringField("typeName", update.getTypeName());
+                generator.writeStringField("attribute", update.getAttribute());
+                generator.writeStringField("attributeValue", update.getAttributeValue());
+                generator.writeFieldName("entity");
+                writeReferenceable(generator, update.getEntity(), writtenIds);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported hook notification type: " + message.getType());
+        }
+        generator.writeStringField("type", message.getType().name());
+        generator.writeStringField("user", message.getUser());
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+    }
+
+    private void writeReferenceable(JsonGenerator generator, Referenceable ref, Set<String> writtenIds) throws IOException {
+        writtenIds.add(ref.getId()._getId());
+
+        generator.writeStartObject();
+        generator.writeStringField(JSON_CLASS, REFERENCE_CLASS);
+
+        generator.writeFieldName("id");
+        writeId(generator, ref);
+
+        generator.writeStringField("typeName", ref.getTypeName());
+
+        generator.writeObjectFieldStart("values");
+        for (Map.Entry<String, Object> value : ref.getValuesMap().entrySet()) {
+            generator.writeFieldName(value.getKey());
+            writeValue(generator, value.getValue(), writtenIds);
+        }
+        generator.writeEndObject();
+
+        // NiFi lineage entities don't have traits.
+        generator.writeArrayFieldStart("traitNames");
+        generator.writeEndArray();
+        generator.writeObjectFieldStart("traits");
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+    }
+
+    private void writeId(JsonGenerator generator, Referenceable ref) throws IOException {
+        final Id id = ref.getId();
+        generator.writeStartObject();
+        generator.writeStringField(JSON_CLASS, ID_CLASS);
+        generator.writeStringField("id", id._getId());
+        generator.writeNumberField("version", id.getVersion());
+        generator.writeStringField("typeName", ref.getTypeName());
+        generator.writeStringField("state", id.getState() != null ? id.getState().name() : Id.EntityState.ACTIVE.name());
+        generator.writeEndObject();
+    }
+
+    private void writeValue(JsonGenerator generator, Object value, Set<String> writtenIds) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof Referenceable) {
+            final Referenceable ref = (Referenceable) value;
+            if (writtenIds.contains(ref.getId()._getId())) {
+                writeId(generator, ref);
+            } else {
+                writeReferenceable(generator, ref, writtenIds);
+            }
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(generator, element, writtenIds);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue(), writtenIds);
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Date) {
+            generator.writeString(dateFormat.get().format((Date) value));
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
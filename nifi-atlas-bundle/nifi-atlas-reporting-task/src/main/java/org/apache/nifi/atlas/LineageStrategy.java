@@ -1,5 +1,5 @@
 package org.apache.nifi.atlas;
 
 public enum LineageStrategy {
-    BY_PATH, BY_FILE
+    BY_PATH, BY_FILE, BY_WINDOW
 }
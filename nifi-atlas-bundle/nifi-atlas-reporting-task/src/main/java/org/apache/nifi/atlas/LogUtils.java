@@ -11,9 +11,13 @@ import java.io.IOException;
 
 public class LogUtils {
     private static final Logger logger = LoggerFactory.getLogger(LogUtils.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
 
     static public void log (String title, Object object) {
-        ObjectMapper mapper = new ObjectMapper();
+        // Pretty printing is expensive, avoid it unless it's logged.
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
         try {
             String s = mapper.writerWithDefaultPrettyPrinter().writeValueAsString((object));
             logger.debug("------------------ {}", title);
@@ -1,13 +1,23 @@
 package org.apache.nifi.atlas;
 
+import org.apache.atlas.AtlasServiceException;
 import org.apache.atlas.hook.AtlasHook;
+import org.apache.atlas.notification.NotificationException;
+import org.apache.atlas.notification.NotificationInterface;
 import org.apache.atlas.notification.hook.HookNotification;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_DESCRIPTION;
@@ -23,11 +33,21 @@ import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW_PATH;
 /**
  * This class is not thread-safe as it holds uncommitted notification messages within instance.
  * {@link #addDataSetRefs(DataSetRefs, Referenceable, boolean)} and {@link #commitMessages()} should be used serially from a single thread.
+ * <p>If 'atlas.hook.nifi.streamingSerialization' is set to true in atlas-application.properties,
+ * messages are serialized by {@link HookMessageSerializer} and published directly to the hook topic
+ * ('atlas.hook.nifi.topic', defaults to ATLAS_HOOK).</p>
+ * <p>If a {@link DataSetRegistry} is set, messages creating DataSets or adding flow path edges those have already been
+ * sent by any node are dropped when messages are committed. Keys are registered only if all messages are delivered.</p>
  */
 public class NiFIAtlasHook extends AtlasHook {
 
     private static final String CONF_PREFIX = "atlas.hook.nifi.";
     private static final String HOOK_NUM_RETRIES = CONF_PREFIX + "numRetries";
+    private static final String HOOK_STREAMING_SERIALIZATION = CONF_PREFIX + "streamingSerialization";
+    private static final String HOOK_TOPIC = CONF_PREFIX + "topic";
+
+    // Created when messages are published to the hook topic for the first time, as REST delivery does not use it.
+    private StreamingHookNotifier streamingNotifier;
 
     @Override
     protected String getNumberOfRetriesPropertyKey() {
@@ -185,15 +205,69 @@ public class NiFIAtlasHook extends AtlasHook {
     }
 
     private static final String NIFI_USER = "nifi";
+    private static final Logger logger = LoggerFactory.getLogger(NiFIAtlasHook.class);
 
     private final List<HookNotification.HookNotificationMessage> messages = new ArrayList<>();
+    // Keys of DataSets or edges which each message registers, only tracked if dataSetRegistry is set.
+    private final Map<HookNotification.HookNotificationMessage, Set<String>> registryKeys = new IdentityHashMap<>();
+    private DataSetRegistry dataSetRegistry;
+
+    private NiFiAtlasClient restClient;
+    private int restBatchSize;
+    private AtlasTrafficShaper trafficShaper;
+
+    /**
+     * Send messages through Atlas V2 bulk entity REST API, instead of publishing those to the Atlas Kafka topic.
+     * With REST delivery, {@link #commitMessages()} throws an exception if Atlas fails to store the entities,
+     * instead of returning false.
+     * @param restClient the client to send entities
+     * @param batchSize max number of entities sent with a single bulk request
+     */
+    public void setRestDelivery(NiFiAtlasClient restClient, int batchSize) {
+        this.restClient = restClient;
+        this.restBatchSize = batchSize;
+    }
+
+    /**
+     * Limit the rate of messages with the traffic shaper.
+     * Create and partial update messages are sent in the order they are added, each as a separate traffic class.
+     * With REST delivery, the rate is limited by {@link NiFiAtlasClient} instead.
+     * @param trafficShaper the traffic shaper shared with {@link NiFiAtlasClient}
+     */
+    public void setTrafficShaper(AtlasTrafficShaper trafficShaper) {
+        this.trafficShaper = trafficShaper;
+    }
+
+    /**
+     * Skip sending DataSets and flow path edges those are already registered in the registry shared by cluster nodes.
+     * @param dataSetRegistry the registry, or null to send all messages
+     */
+    public void setDataSetRegistry(DataSetRegistry dataSetRegistry) {
+        this.dataSetRegistry = dataSetRegistry;
+    }
+
+    private void addCreateDataSet(Referenceable dataSetRef) {
+        final HookNotification.EntityCreateRequest createDataSet = new HookNotification.EntityCreateRequest(NIFI_USER, dataSetRef);
+        messages.add(createDataSet);
+        if (dataSetRegistry != null) {
+            registryKeys.put(createDataSet, Collections.singleton(DataSetRegistry.toDataSetKey(dataSetRef)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addEdgeKeys(Set<String> edgeKeys, Referenceable flowPathRef, String targetAttribute) {
+        final Collection<Referenceable> dataSetRefs = (Collection<Referenceable>) flowPathRef.get(targetAttribute);
+        if (dataSetRefs != null) {
+            final String flowPathQualifiedName = (String) flowPathRef.get(ATTR_QUALIFIED_NAME);
+            dataSetRefs.forEach(ref -> edgeKeys.add(DataSetRegistry.toEdgeKey(flowPathQualifiedName, ref, ATTR_INPUTS.equals(targetAttribute))));
+        }
+    }
 
     @SuppressWarnings("unchecked")
     private void addDataSetRefs(Set<Referenceable> dataSetRefs, Referenceable nifiFlowPath, String targetAttribute) {
         if (dataSetRefs != null && !dataSetRefs.isEmpty()) {
             for (Referenceable dataSetRef : dataSetRefs) {
-                final HookNotification.EntityCreateRequest createDataSet = new HookNotification.EntityCreateRequest(NIFI_USER, dataSetRef);
-                messages.add(createDataSet);
+                addCreateDataSet(dataSetRef);
             }
 
             Object updatedRef = nifiFlowPath.get(targetAttribute);
@@ -219,31 +293,219 @@ public class NiFIAtlasHook extends AtlasHook {
         if (create) {
             messages.add(new HookNotification.EntityCreateRequest(NIFI_USER, flowPathRef));
         } else {
-            messages.add(new HookNotification.EntityPartialUpdateRequest(NIFI_USER, TYPE_NIFI_FLOW_PATH,
-                    ATTR_QUALIFIED_NAME, (String) flowPathRef.get(ATTR_QUALIFIED_NAME), flowPathRef));
+            final HookNotification.EntityPartialUpdateRequest updateFlowPath = new HookNotification.EntityPartialUpdateRequest(NIFI_USER,
+                    TYPE_NIFI_FLOW_PATH, ATTR_QUALIFIED_NAME, (String) flowPathRef.get(ATTR_QUALIFIED_NAME), flowPathRef);
+            messages.add(updateFlowPath);
+            if (dataSetRegistry != null) {
+                final Set<String> edgeKeys = new HashSet<>();
+                addEdgeKeys(edgeKeys, flowPathRef, ATTR_INPUTS);
+                addEdgeKeys(edgeKeys, flowPathRef, ATTR_OUTPUTS);
+                registryKeys.put(updateFlowPath, edgeKeys);
+            }
         }
     }
 
     public void addCreateReferenceable (Collection<Referenceable> ins, Referenceable ref) {
         if (ins != null && !ins.isEmpty()) {
             for (Referenceable dataSetRef : ins) {
-                final HookNotification.EntityCreateRequest createDataSet = new HookNotification.EntityCreateRequest(NIFI_USER, dataSetRef);
-                messages.add(createDataSet);
+                addCreateDataSet(dataSetRef);
             }
         }
         messages.add(new HookNotification.EntityCreateRequest(NIFI_USER, ref));
     }
 
+    /**
+     * Create entities with messages having up to chunkSize entities each, instead of a message per entity.
+     */
+    public void addCreateReferenceables (List<Referenceable> refs, int chunkSize) {
+        for (int i = 0; i < refs.size(); i += chunkSize) {
+            messages.add(new HookNotification.EntityCreateRequest(NIFI_USER,
+                    new ArrayList<>(refs.subList(i, Math.min(i + chunkSize, refs.size())))));
+        }
+    }
+
     public void addUpdateReferenceable (Referenceable ref) {
         messages.add(new HookNotification.EntityPartialUpdateRequest(NIFI_USER, ref.getTypeName(),
                 ATTR_QUALIFIED_NAME, (String) ref.get(ATTR_QUALIFIED_NAME), ref));
     }
 
-    public void commitMessages() {
+    /**
+     * Send the messages added so far, then clear them whether those are delivered or not.
+     * @return true if all messages are delivered, false if any of them is not delivered to the hook topic
+     * @throws RuntimeException with REST delivery, if Atlas fails to store the entities
+     */
+    public boolean commitMessages() {
         try {
-            notifyEntities(messages);
+            final Set<String> keysToRegister = dataSetRegistry != null ? removeRegisteredMessages() : Collections.emptySet();
+
+            // REST delivery throws an exception if it fails.
+            boolean delivered = true;
+            if (restClient != null) {
+                sendMessagesByRest();
+            } else {
+                delivered = sendMessagesInOrder();
+            }
+
+            if (!keysToRegister.isEmpty()) {
+                if (!delivered) {
+                    // Let any node send those again.
+                    logger.warn("{} DataSets and edges are not registered to the registry as messages were not delivered.", keysToRegister.size());
+                    return false;
+                }
+                try {
+                    dataSetRegistry.register(keysToRegister);
+                } catch (IOException e) {
+                    logger.warn("Failed to register {} DataSets and edges to the registry due to {}", keysToRegister.size(), e, e);
+                }
+            }
+            return delivered;
         } finally {
             messages.clear();
+            registryKeys.clear();
+        }
+    }
+
+    /**
+     * Remove messages creating DataSets or edges those are already registered, or sent by a former message of this batch.
+     * @return keys to register once the remaining messages are delivered
+     */
+    private Set<String> removeRegisteredMessages() {
+        if (registryKeys.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        final Set<String> allKeys = new HashSet<>();
+        registryKeys.values().forEach(allKeys::addAll);
+        Set<String> registered;
+        try {
+            registered = dataSetRegistry.findRegistered(allKeys);
+        } catch (IOException e) {
+            logger.warn("Failed to look up {} DataSets and edges from the registry due to {}. Sending all of them.", allKeys.size(), e, e);
+            registered = Collections.emptySet();
+        }
+
+        final Set<String> sentKeys = new HashSet<>(registered);
+        final int size = messages.size();
+        messages.removeIf(message -> {
+            final Set<String> keys = registryKeys.get(message);
+            if (keys == null || keys.isEmpty()) {
+                return false;
+            }
+            return !sentKeys.addAll(keys);
+        });
+        logger.debug("Removed {} messages those were already sent.", size - messages.size());
+
+        sentKeys.removeAll(registered);
+        return sentKeys;
+    }
+
+    /**
+     * @return true if the messages are delivered to the hook topic
+     */
+    boolean publishMessages(List<HookNotification.HookNotificationMessage> messages) {
+        if (atlasProperties != null && atlasProperties.getBoolean(HOOK_STREAMING_SERIALIZATION, false)) {
+            if (streamingNotifier == null) {
+                streamingNotifier = new StreamingHookNotifier(atlasProperties,
+                        atlasProperties.getString(HOOK_TOPIC, null), atlasProperties.getInt(HOOK_NUM_RETRIES, 3));
+            }
+            return streamingNotifier.notifyEntities(messages);
+        }
+        try {
+            notifyEntities(messages);
+            return true;
+        } catch (IllegalStateException e) {
+            logger.error("{}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Send messages to the hook topic with retries. Unlike {@link AtlasHook#notifyEntities(List)},
+     * which only logs the failure after all retries fail, this method throws an exception if the messages are not delivered.
+     * @throws IllegalStateException if the messages are not delivered
+     */
+    @Override
+    protected void notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        final int maxRetries = Math.max(1, atlasProperties != null ? atlasProperties.getInt(HOOK_NUM_RETRIES, 3) : 3);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                notificationInterface.send(NotificationInterface.NotificationType.HOOK, messages);
+                return;
+            } catch (NotificationException e) {
+                if (attempt >= maxRetries) {
+                    throw new IllegalStateException(String.format("Failed to send %d notification messages after %d attempts due to %s",
+                            messages.size(), maxRetries, e), e);
+                }
+                logger.debug("Failed to send notification messages, attempt={}, retrying.", attempt, e);
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while sending notification messages.", ie);
+                }
+            }
+        }
+    }
+
+    private static AtlasTrafficShaper.TrafficClass getTrafficClass(HookNotification.HookNotificationMessage message) {
+        return message.getType() == HookNotification.HookNotificationType.ENTITY_CREATE
+                ? AtlasTrafficShaper.TrafficClass.LINEAGE_CREATE : AtlasTrafficShaper.TrafficClass.LINEAGE_PARTIAL_UPDATE;
+    }
+
+    /**
+     * Publish messages in the order they are added, as a partial update may refer entities created by former messages.
+     * With a traffic shaper, consecutive messages of the same traffic class are published as a chunk of up to
+     * its burst size, after acquiring permits for the chunk.
+     * Once a chunk fails, the rest are not published.
+     * @return true if all messages are delivered
+     */
+    private boolean sendMessagesInOrder() {
+        if (trafficShaper == null) {
+            return publishMessages(messages);
+        }
+
+        for (int from = 0; from < messages.size();) {
+            final AtlasTrafficShaper.TrafficClass trafficClass = getTrafficClass(messages.get(from));
+            final int chunkSize = Math.max(1, trafficShaper.getBurst(trafficClass));
+            int to = from + 1;
+            while (to < messages.size() && to - from < chunkSize && getTrafficClass(messages.get(to)) == trafficClass) {
+                to++;
+            }
+            final List<HookNotification.HookNotificationMessage> chunk = messages.subList(from, to);
+            trafficShaper.acquire(trafficClass, chunk.size());
+            if (!publishMessages(chunk)) {
+                return false;
+            }
+            from = to;
+        }
+        return true;
+    }
+
+    /**
+     * Release resources used to send messages.
+     */
+    public void close() {
+        if (streamingNotifier != null) {
+            streamingNotifier.close();
+            streamingNotifier = null;
+        }
+    }
+
+    private void sendMessagesByRest() {
+        final AtlasEntityConverter converter = new AtlasEntityConverter();
+        messages.forEach(converter::add);
+        if (converter.isEmpty()) {
+            return;
+        }
+
+        try {
+            restClient.sendLineage(converter.getCreatedEntities(), converter.getUpdatedEntities(), restBatchSize);
+        } catch (AtlasServiceException e) {
+            throw new RuntimeException("Failed to send lineage to Atlas. " + e, e);
         }
     }
 }
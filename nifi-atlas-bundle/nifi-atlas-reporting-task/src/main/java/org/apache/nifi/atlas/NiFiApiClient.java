@@ -16,21 +16,34 @@
  */
 package org.apache.nifi.atlas;
 
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.apache.nifi.web.api.entity.ClusterEntity;
 import org.apache.nifi.web.api.entity.Entity;
@@ -40,25 +53,82 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.ParseException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 // TODO: This class can be replaced with EventAccess?
-public class NiFiApiClient {
+/**
+ * A client of NiFi REST API.
+ * <p>HTTP connections are pooled and kept alive, so that an instance should be reused until {@link #close()} is called.
+ * Responses are cached with their 'ETag' and 'Last-Modified' headers, and the same URIs are requested
+ * with conditional request headers. If NiFi responds 304 Not Modified, the cached entity is returned.
+ * Returned entities can be shared among callers, those should not be modified.</p>
+ * <p>Responses are decoded while being read from the connection, without buffering the whole response.
+ * Fields those are not needed can be skipped with {@link #getEntity(URI, Type, Set)},
+ * e.g. {@link #NON_STRUCTURAL_FIELDS} to read only the structure of a flow.</p>
+ */
+public class NiFiApiClient implements Closeable {
 
     private static Logger logger = LoggerFactory.getLogger(NiFiApiClient.class);
 
-    private static final Gson gson = new GsonBuilder().registerTypeAdapter(Date.class, new DateSerializer()).create();
+    /**
+     * Fields of NiFi REST entities those are not needed to analyze the structure of a flow,
+     * such as component status, bulletins and positions on the canvas.
+     */
+    public static final Set<String> NON_STRUCTURAL_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "status", "bulletins", "position", "bends", "labels", "aggregateSnapshot", "nodeSnapshots")));
+
+    private static final Gson gson = createGson(Collections.emptySet());
+    // Gson instances are thread-safe, and are created once per set of skipped fields.
+    private static final ConcurrentMap<Set<String>, Gson> selectiveGsons = new ConcurrentHashMap<>();
 
+    private static final int MAX_CONNECTIONS = 4;
+    private static final int MAX_CACHED_RESPONSES = 100;
+
+    private static class CachedResponse {
+        private final Type type;
+        private final Set<String> skippedFields;
+        private final Object entity;
+        private final String eTag;
+        private final String lastModified;
+
+        private CachedResponse(Type type, Set<String> skippedFields, Object entity, String eTag, String lastModified) {
+            this.type = type;
+            this.skippedFields = skippedFields;
+            this.entity = entity;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
 
     private final String baseUri;
     private RequestConfig requestConfig;
     private SSLContext sslContext;
+    private CloseableHttpClient httpClient;
+    private final Map<URI, CachedResponse> responseCache = new LinkedHashMap<URI, CachedResponse>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI, CachedResponse> eldest) {
+            return size() > MAX_CACHED_RESPONSES;
+        }
+    };
 
 
     public NiFiApiClient(String baseUri) {
@@ -74,7 +144,14 @@ public class NiFiApiClient {
         requestConfig = requestConfigBuilder.build();
     }
 
-    public void setSslContext(SSLContext sslContext) {
+    /**
+     * Set an SSLContext used for HTTPS connections. The SSLContext is used by all connections in the pool,
+     * so it has to be set before sending any request.
+     */
+    public synchronized void setSslContext(SSLContext sslContext) {
+        if (httpClient != null) {
+            throw new IllegalStateException("SSLContext has to be set before sending requests.");
+        }
         this.sslContext = sslContext;
     }
 
@@ -82,6 +159,43 @@ public class NiFiApiClient {
         return baseUri;
     }
 
+    private synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            final SSLConnectionSocketFactory sslSocketFactory = sslContext != null
+                    ? new SSLConnectionSocketFactory(sslContext)
+                    : SSLConnectionSocketFactory.getSocketFactory();
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", sslSocketFactory)
+                    .build();
+
+            final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+            connectionManager.setMaxTotal(MAX_CONNECTIONS);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Close pooled connections and clear cached responses.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        synchronized (responseCache) {
+            responseCache.clear();
+        }
+        if (httpClient != null) {
+            httpClient.close();
+            httpClient = null;
+        }
+    }
+
     public ProcessGroupFlowEntity getProcessGroupFlow() throws IOException {
         return getProcessGroupFlow("root");
     }
@@ -91,6 +205,14 @@ public class NiFiApiClient {
         return getEntity(path, ProcessGroupFlowEntity.class);
     }
 
+    /**
+     * Get a process group flow without status, bulletins and positions of components.
+     */
+    public ProcessGroupFlowEntity getProcessGroupFlowStructure(String processGroupId) throws IOException {
+        final String path = "nifi-api/flow/process-groups/" + processGroupId;
+        return getEntity(toUri(path), ProcessGroupFlowEntity.class, NON_STRUCTURAL_FIELDS);
+    }
+
     public ProcessGroupEntity getProcessGroupEntity() throws IOException {
         final String path = "nifi-api/process-groups/root";
         return getEntity(path, ProcessGroupEntity.class);
@@ -101,24 +223,74 @@ public class NiFiApiClient {
         return getEntity(path, ClusterEntity.class);
     }
 
-    private static class DateSerializer implements JsonDeserializer<Date> {
+    private static Gson createGson(Set<String> skippedFields) {
+        final GsonBuilder builder = new GsonBuilder().registerTypeAdapter(Date.class, new DateTypeAdapter());
+        if (!skippedFields.isEmpty()) {
+            // Values of excluded fields are skipped by the reader without creating objects.
+            builder.setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes f) {
+                    return skippedFields.contains(f.getName());
+                }
 
-        private static final String[] FORMATS = {
-                "HH:mm:ss Z",
-                "MM/dd/yyyy HH:mm:ss Z"
-        };
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return false;
+                }
+            });
+        }
+        return builder.create();
+    }
+
+    /**
+     * Reads dates formatted by NiFi REST API, with a time only format or a date time format.
+     * The format is chosen from the value, and formatters are cached per thread.
+     */
+    private static class DateTypeAdapter extends TypeAdapter<Date> {
+
+        private static final String TIME_FORMAT = "HH:mm:ss Z";
+        private static final String DATE_TIME_FORMAT = "MM/dd/yyyy HH:mm:ss Z";
+
+        private static final ThreadLocal<SimpleDateFormat> timeFormat = ThreadLocal.withInitial(() -> new SimpleDateFormat(TIME_FORMAT));
+        private static final ThreadLocal<SimpleDateFormat> dateTimeFormat = ThreadLocal.withInitial(() -> new SimpleDateFormat(DATE_TIME_FORMAT));
 
         @Override
-        public Date deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext context)
-                throws com.google.gson.JsonParseException {
-            for (String format : FORMATS) {
-                try {
-                    return new SimpleDateFormat(format).parse(jsonElement.getAsString());
-                } catch (ParseException e) {
-                    // Try next format.
-                }
+        public Date read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            final String value = in.nextString();
+            final SimpleDateFormat format = value.indexOf('/') >= 0 ? dateTimeFormat.get() : timeFormat.get();
+            final ParsePosition position = new ParsePosition(0);
+            final Date date = format.parse(value, position);
+            // Unlike parse(String), trailing characters have to be rejected explicitly.
+            if (date == null || position.getIndex() != value.length()) {
+                throw new JsonParseException("Failed to parse " + value + " to Date.");
+            }
+            return date;
+        }
+
+        @Override
+        public void write(JsonWriter out, Date value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(dateTimeFormat.get().format(value));
             }
-            throw new JsonParseException("Failed to parse " + jsonElement + " to Date.");
+        }
+    }
+
+    /**
+     * Decode an entity from a JSON stream.
+     * @param skippedFields names of fields to skip decoding
+     */
+    static <T> T decode(InputStream in, Charset charset, Type type, Set<String> skippedFields) throws IOException {
+        final Gson decoder = skippedFields.isEmpty() ? gson : selectiveGsons.computeIfAbsent(skippedFields, NiFiApiClient::createGson);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, charset))) {
+            return decoder.fromJson(reader, type);
+        } catch (JsonParseException e) {
+            throw new IOException(String.format("Failed to parse response Json as %s due to %s", type, e), e);
         }
     }
 
@@ -138,41 +310,74 @@ public class NiFiApiClient {
     }
 
     public <T extends Entity> T getEntity(URI url, Type type) throws IOException {
-        final String responseMessage = getEntity(url);
+        return getEntity(url, type, Collections.emptySet());
+    }
 
-        try {
-            return gson.fromJson(responseMessage, type);
-        } catch (JsonSyntaxException e) {
-            final String msg = String.format("Failed to parse response Json as %s. uri=%s", type, url);
-            logger.warn("{} response={}", msg, url, responseMessage);
-            throw new IOException(msg, e);
+    /**
+     * Get an entity, without decoding values of the specified fields at any depth. Skipped fields are left null.
+     * @param skippedFields names of fields to skip, e.g. {@link #NON_STRUCTURAL_FIELDS}
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Entity> T getEntity(URI url, Type type, Set<String> skippedFields) throws IOException {
+        final CachedResponse cached;
+        synchronized (responseCache) {
+            cached = responseCache.get(url);
         }
-    }
 
-    private String getEntity(URI url) throws IOException {
         final HttpGet get = new HttpGet(url);
         get.setConfig(requestConfig);
         get.setHeader("Accept", "application/json");
-
-        HttpClientBuilder clientBuilder = HttpClients.custom();
-        if (sslContext != null) {
-            clientBuilder.setSslcontext(sslContext);
+        final boolean conditional = cached != null && type.equals(cached.type) && skippedFields.equals(cached.skippedFields);
+        if (conditional) {
+            if (cached.eTag != null) {
+                get.setHeader(HttpHeaders.IF_NONE_MATCH, cached.eTag);
+            }
+            if (cached.lastModified != null) {
+                get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+            }
         }
 
-        try (CloseableHttpClient httpClient = clientBuilder.build()) {
+        try (CloseableHttpResponse response = getHttpClient().execute(get)) {
 
-            try (CloseableHttpResponse response = httpClient.execute(get)) {
+            final StatusLine statusLine = response.getStatusLine();
+            final int statusCode = statusLine.getStatusCode();
+            final HttpEntity entity = response.getEntity();
+            if (HttpStatus.SC_NOT_MODIFIED == statusCode && conditional) {
+                EntityUtils.consume(entity);
+                return (T) cached.entity;
+            }
+            if (HttpStatus.SC_OK != statusCode) {
+                // Consume the entity so that the connection can be reused.
+                EntityUtils.consume(entity);
+                final String msg = String.format("Failed to get entity from %s, response=%d:%s",
+                        get.getURI(), statusCode, statusLine.getReasonPhrase());
+                throw new RuntimeException(msg);
+            }
+
+            final Charset charset = ContentType.getOrDefault(entity).getCharset();
+            final T result;
+            try (InputStream in = entity.getContent()) {
+                result = decode(in, charset != null ? charset : StandardCharsets.UTF_8, type, skippedFields);
+            } catch (IOException e) {
+                logger.warn("Failed to read response from {} due to {}", url, e);
+                throw e;
+            }
 
-                final StatusLine statusLine = response.getStatusLine();
-                final int statusCode = statusLine.getStatusCode();
-                if (200 != statusCode) {
-                    final String msg = String.format("Failed to get entity from %s, response=%d:%s",
-                            get.getURI(), statusCode, statusLine.getReasonPhrase());
-                    throw new RuntimeException(msg);
+            final String eTag = getHeaderValue(response, HttpHeaders.ETAG);
+            final String lastModified = getHeaderValue(response, HttpHeaders.LAST_MODIFIED);
+            synchronized (responseCache) {
+                if (eTag != null || lastModified != null) {
+                    responseCache.put(url, new CachedResponse(type, skippedFields, result, eTag, lastModified));
+                } else {
+                    responseCache.remove(url);
                 }
-                final HttpEntity entity = response.getEntity();
-                return EntityUtils.toString(entity);
             }
+            return result;
         }
     }
+
+    private static String getHeaderValue(HttpResponse response, String name) {
+        final Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
 }
@@ -46,11 +46,19 @@ public class NiFiAtlasClient {
 
     private static NiFiAtlasClient nifiClient;
     private AtlasClientV2 atlasClient;
+    private volatile AtlasTrafficShaper trafficShaper = new AtlasTrafficShaper();
 
     private NiFiAtlasClient() {
         super();
     }
 
+    /**
+     * For unit tests to use a mocked client.
+     */
+    NiFiAtlasClient(AtlasClientV2 atlasClient) {
+        this.atlasClient = atlasClient;
+    }
+
     public static NiFiAtlasClient getInstance() {
         if (nifiClient == null) {
             synchronized (NiFiAtlasClient.class) {
@@ -93,6 +101,18 @@ public class NiFiAtlasClient {
         }
     }
 
+    /**
+     * Set traffic shaper to limit requests to Atlas. By default, requests are not limited.
+     * Share the same instance with {@link NiFIAtlasHook} so that flow structure updates are prioritized over lineage.
+     */
+    public void setTrafficShaper(AtlasTrafficShaper trafficShaper) {
+        this.trafficShaper = trafficShaper;
+    }
+
+    public AtlasTrafficShaper getTrafficShaper() {
+        return trafficShaper;
+    }
+
     /**
      * This is an utility method to delete unused types.
      * Should be used during development or testing only.
@@ -118,6 +138,12 @@ public class NiFiAtlasClient {
      * @param update If false, doesn't perform anything if there is existing type def for the name.
      */
     public void registerNiFiTypeDefs(boolean update) throws AtlasServiceException {
+        try (AtlasTrafficShaper.Session session = trafficShaper.begin(AtlasTrafficShaper.TrafficClass.TYPE_DEFS)) {
+            doRegisterNiFiTypeDefs(update);
+        }
+    }
+
+    private void doRegisterNiFiTypeDefs(boolean update) throws AtlasServiceException {
         final Set<String> typeNames = ENTITIES.keySet();
         final Map<String, AtlasEntityDef> existingDefs = getTypeDefs(typeNames.toArray(new String[typeNames.size()])).getEntityDefs().stream()
                 .collect(Collectors.toMap(def -> def.getName(), def -> def));
@@ -155,6 +181,7 @@ public class NiFiAtlasClient {
         });
 
         // Create or Update.
+        trafficShaper.acquire(AtlasTrafficShaper.TrafficClass.TYPE_DEFS, type.getEntityDefs().size());
         final AtlasTypesDef atlasTypeDefsResult = shouldUpdate.get()
                 ? atlasClient.updateAtlasTypeDefs(type)
                 : atlasClient.createAtlasTypeDefs(type);
@@ -174,6 +201,17 @@ public class NiFiAtlasClient {
     }
 
     public void registerNiFiFlow(NiFiFlow nifiFlow) throws AtlasServiceException {
+        try (AtlasTrafficShaper.Session session = trafficShaper.begin(AtlasTrafficShaper.TrafficClass.FLOW_STRUCTURE)) {
+            doRegisterNiFiFlow(nifiFlow);
+        }
+    }
+
+    private EntityMutationResponse createFlowEntities(AtlasEntity.AtlasEntitiesWithExtInfo atlasEntities) throws AtlasServiceException {
+        trafficShaper.acquire(AtlasTrafficShaper.TrafficClass.FLOW_STRUCTURE, atlasEntities.getEntities().size());
+        return atlasClient.createEntities(atlasEntities);
+    }
+
+    private void doRegisterNiFiFlow(NiFiFlow nifiFlow) throws AtlasServiceException {
         final String nifiFlowName = nifiFlow.getFlowName();
         final String url = nifiFlow.getUrl();
         final List<NiFiFlowPath> paths = nifiFlow.getFlowPaths();
@@ -200,7 +238,7 @@ public class NiFiAtlasClient {
 
         // Create nifi_flow entity to make nifiFlowId available for other entities.
         // TODO: why does it keep using the same atlasEntities list??
-        EntityMutationResponse mutationResponse = atlasClient.createEntities(atlasEntities);
+        EntityMutationResponse mutationResponse = createFlowEntities(atlasEntities);
         logger.debug("mutation response={}", mutationResponse);
 
         // Create DataSet entities those are created by this NiFi flow.
@@ -209,7 +247,7 @@ public class NiFiAtlasClient {
         entities.addAll(queues.values());
         entities.addAll(createdData.values());
 
-        mutationResponse = atlasClient.createEntities(atlasEntities);
+        mutationResponse = createFlowEntities(atlasEntities);
         logger.debug("mutation response={}", mutationResponse);
 
 
@@ -226,7 +264,7 @@ public class NiFiAtlasClient {
                 proc.setAttribute(ATTR_QUALIFIED_NAME, processor.getId());
             });
         }
-        mutationResponse = atlasClient.createEntities(atlasEntities);
+        mutationResponse = createFlowEntities(atlasEntities);
         logger.debug("mutation response={}", mutationResponse);
 
 
@@ -273,7 +311,7 @@ public class NiFiAtlasClient {
         }
 
         // Create entities without relationships, Atlas doesn't allow storing ObjectId that doesn't exist.
-        mutationResponse = atlasClient.createEntities(atlasEntities);
+        mutationResponse = createFlowEntities(atlasEntities);
         logger.debug("mutation response={}", mutationResponse);
 
 
@@ -305,7 +343,7 @@ public class NiFiAtlasClient {
 
         // Send updated entities.
         try {
-            mutationResponse = atlasClient.createEntities(atlasEntities);
+            mutationResponse = createFlowEntities(atlasEntities);
         } catch (AtlasServiceException e) {
             if (e.getStatus().getStatusCode() == 404 && e.getMessage().contains("ATLAS-404-00-00B")) {
                 // NOTE: If previously existed nifi_flow_path entity is removed because the path is removed from NiFi,
@@ -347,6 +385,38 @@ public class NiFiAtlasClient {
         entity.setAttribute(ATTR_OUTPUTS, outputs);
     }
 
+    /**
+     * Send lineage entities through Atlas V2 bulk entity API.
+     * DataSets are sent before Processes, because Atlas doesn't allow storing ObjectId that doesn't exist.
+     * Processes are the NiFi types defined as a sub type of Process, other types are sent as DataSets.
+     * @param createdEntities entities to be created or updated
+     * @param updatedEntities entities to be updated, identified by its qualifiedName.
+     *                        These are sent with the bulk API after the created ones, so that the attributes
+     *                        they carry are set to the existing entities.
+     * @param batchSize max number of entities sent with a single bulk request
+     */
+    public void sendLineage(Collection<AtlasEntity> createdEntities, Collection<AtlasEntity> updatedEntities,
+                            int batchSize) throws AtlasServiceException {
+        final List<AtlasEntity> dataSets = new ArrayList<>();
+        final List<AtlasEntity> processes = new ArrayList<>();
+        createdEntities.forEach(entity -> (isProcessType(entity.getTypeName()) ? processes : dataSets).add(entity));
+
+        createEntitiesInBatches(dataSets, batchSize, AtlasTrafficShaper.TrafficClass.LINEAGE_CREATE);
+        createEntitiesInBatches(processes, batchSize, AtlasTrafficShaper.TrafficClass.LINEAGE_CREATE);
+        createEntitiesInBatches(new ArrayList<>(updatedEntities), batchSize, AtlasTrafficShaper.TrafficClass.LINEAGE_PARTIAL_UPDATE);
+    }
+
+    private void createEntitiesInBatches(List<AtlasEntity> entities, int batchSize,
+                                         AtlasTrafficShaper.TrafficClass trafficClass) throws AtlasServiceException {
+        for (int from = 0; from < entities.size(); from += batchSize) {
+            final List<AtlasEntity> batch = entities.subList(from, Math.min(from + batchSize, entities.size()));
+            trafficShaper.acquire(trafficClass, batch.size());
+            final EntityMutationResponse mutationResponse
+                    = atlasClient.createEntities(new AtlasEntity.AtlasEntitiesWithExtInfo(new ArrayList<>(batch)));
+            logger.debug("mutation response={}", mutationResponse);
+        }
+    }
+
     public AtlasEntity.AtlasEntityWithExtInfo searchEntityDef(AtlasObjectId id) throws AtlasServiceException {
         final Map<String, String> attributes = new HashMap<>();
         id.getUniqueAttributes().entrySet().stream().filter(entry -> entry.getValue() != null)
@@ -256,6 +256,12 @@ public class NiFiFlowAnalyzer {
             paths.add(path);
             traverse(nifiFlow, paths, path, startPid);
         });
+
+        // Name paths here rather than when they are registered to Atlas,
+        // as lineage refers path names even if this node does not register the flow structure.
+        nifiFlow.getFlowPaths().forEach(path -> path.setName(path.getProcessorIds().stream()
+                .map(pid -> nifiFlow.getProcessors().get(pid).getName())
+                .collect(Collectors.joining(", "))));
     }
 
 }
@@ -20,7 +20,9 @@ import org.apache.atlas.model.typedef.AtlasEntityDef;
 import org.apache.atlas.model.typedef.AtlasStructDef.AtlasAttributeDef;
 import org.apache.atlas.model.typedef.AtlasStructDef.AtlasConstraintDef;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +41,7 @@ public class NiFiTypes {
     public static final String TYPE_NIFI_QUEUE = "nifi_queue";
     public static final String TYPE_NIFI_INPUT_PORT = "nifi_input_port";
     public static final String TYPE_NIFI_OUTPUT_PORT = "nifi_output_port";
+    public static final String TYPE_NIFI_LINEAGE_WINDOW = "nifi_lineage_window";
 
     public static final String ATTR_NAME = "name";
     public static final String ATTR_CLUSTER_NAME = "clusterName";
@@ -59,6 +62,11 @@ public class NiFiTypes {
     public static final String ATTR_CREATED_BY_NIFI_FLOW = "createdByNiFiFlow";
     public static final String ATTR_INCOMING_FLOW_PATHS = "incomingFlowPaths";
     public static final String ATTR_OUTGOING_FLOW_PATHS = "outgoingFlowPaths";
+    public static final String ATTR_NIFI_FLOW_PATH = "nifiFlowPath";
+    public static final String ATTR_WINDOW_START = "windowStart";
+    public static final String ATTR_WINDOW_END = "windowEnd";
+    public static final String ATTR_EVENT_COUNT = "eventCount";
+    public static final String ATTR_BYTE_COUNT = "byteCount";
 
     @FunctionalInterface
     interface EntityDefinition {
@@ -178,6 +186,32 @@ public class NiFiTypes {
         superTypes.add(TYPE_NIFI_COMPONENT);
     };
 
+    /**
+     * Aggregated lineage of a flow path within a time window.
+     */
+    private static EntityDefinition NIFI_LINEAGE_WINDOW = (entity, superTypes, attributes) -> {
+        entity.setVersion(1L);
+        superTypes.add(TYPE_PROCESS);
+        superTypes.add(TYPE_NIFI_COMPONENT);
+
+        final AtlasAttributeDef url = new AtlasAttributeDef(ATTR_URL, "string");
+
+        final AtlasAttributeDef flowPath = new AtlasAttributeDef(ATTR_NIFI_FLOW_PATH, TYPE_NIFI_FLOW_PATH);
+        flowPath.setIsOptional(true);
+
+        final AtlasAttributeDef windowStart = new AtlasAttributeDef(ATTR_WINDOW_START, "date");
+        final AtlasAttributeDef windowEnd = new AtlasAttributeDef(ATTR_WINDOW_END, "date");
+        final AtlasAttributeDef eventCount = new AtlasAttributeDef(ATTR_EVENT_COUNT, "long");
+        final AtlasAttributeDef byteCount = new AtlasAttributeDef(ATTR_BYTE_COUNT, "long");
+
+        attributes.add(url);
+        attributes.add(flowPath);
+        attributes.add(windowStart);
+        attributes.add(windowEnd);
+        attributes.add(eventCount);
+        attributes.add(byteCount);
+    };
+
     static Map<String, EntityDefinition> ENTITIES = new HashMap<>();
     static {
         ENTITIES.put(TYPE_NIFI_COMPONENT, NIFI_COMPONENT);
@@ -188,8 +222,27 @@ public class NiFiTypes {
         ENTITIES.put(TYPE_NIFI_FLOW_PATH, NIFI_FLOW_PATH);
         ENTITIES.put(TYPE_NIFI_PROCESSOR, NIFI_PROCESSOR);
         ENTITIES.put(TYPE_NIFI_FLOW, NIFI_FLOW);
+        ENTITIES.put(TYPE_NIFI_LINEAGE_WINDOW, NIFI_LINEAGE_WINDOW);
     }
 
     static final String[] NIFI_TYPES = ENTITIES.keySet().toArray(new String[ENTITIES.size()]);
 
+    private static final Set<String> PROCESS_TYPES = new HashSet<>();
+    static {
+        ENTITIES.forEach((typeName, def) -> {
+            final Set<String> superTypes = new HashSet<>();
+            def.define(new AtlasEntityDef(typeName), superTypes, new ArrayList<>());
+            if (superTypes.contains(TYPE_PROCESS)) {
+                PROCESS_TYPES.add(typeName);
+            }
+        });
+    }
+
+    /**
+     * @return true if the type is a NiFi type defined as a sub type of Process.
+     */
+    static boolean isProcessType(String typeName) {
+        return PROCESS_TYPES.contains(typeName);
+    }
+
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.ApplicationProperties;
+import org.apache.atlas.kafka.KafkaNotification;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationConverter;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Future;
+
+/**
+ * Publishes hook notification messages to the Atlas hook Kafka topic,
+ * serialized with {@link HookMessageSerializer} instead of Atlas notification layer.
+ * <p>Kafka client configurations are read from 'atlas.kafka.*' properties, same as Atlas KafkaNotification.</p>
+ */
+public class StreamingHookNotifier implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingHookNotifier.class);
+
+    private static final String KAFKA_PROPERTY_PREFIX = "atlas.kafka";
+
+    private final KafkaProducer<String, byte[]> producer;
+    private final HookMessageSerializer serializer;
+    private final String topic;
+    private final int maxRetries;
+
+    public StreamingHookNotifier(Configuration atlasProperties, String topic, int maxRetries) {
+        final Configuration kafkaConf = ApplicationProperties.getSubsetConfiguration(atlasProperties, KAFKA_PROPERTY_PREFIX);
+        final Properties properties = ConfigurationConverter.getProperties(kafkaConf);
+        properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+
+        this.producer = new KafkaProducer<>(properties);
+        this.serializer = new HookMessageSerializer(4, 16 * 1024);
+        this.topic = topic != null ? topic : KafkaNotification.ATLAS_HOOK_TOPIC;
+        this.maxRetries = Math.max(1, maxRetries);
+    }
+
+    /**
+     * Send messages. Same as Atlas hook, if all retries fail, the messages are logged and discarded.
+     * @return true if all messages are acknowledged by Kafka
+     */
+    public boolean notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            try {
+                final List<Future<RecordMetadata>> results = new ArrayList<>(messages.size());
+                for (HookNotification.HookNotificationMessage message : messages) {
+                    results.add(producer.send(new ProducerRecord<>(topic, serializer.serialize(message))));
+                }
+                for (Future<RecordMetadata> result : results) {
+                    result.get();
+                }
+                return true;
+            } catch (Exception e) {
+                if (attempt == maxRetries) {
+                    logger.error("Failed to send {} notification messages to {} after {} attempts due to {}",
+                            messages.size(), topic, maxRetries, e, e);
+                    return false;
+                }
+                logger.debug("Failed to send notification messages, attempt={}, retrying.", attempt, e);
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+    }
+}
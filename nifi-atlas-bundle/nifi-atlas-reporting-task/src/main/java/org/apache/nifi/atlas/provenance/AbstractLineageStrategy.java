@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.atlas.NiFIAtlasHook;
+import org.apache.nifi.atlas.NiFiFlow;
+import org.apache.nifi.atlas.NiFiFlowPath;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Common functions to analyze provenance events and find the flow paths those belong to.
+ */
+public abstract class AbstractLineageStrategy implements LineageEventProcessor {
+
+    protected final ComponentLog logger;
+    protected final NiFIAtlasHook nifiAtlasHook;
+    protected EventTracer eventTracer = new EventTracer(0, 0);
+    protected DataSetRefsCache dataSetRefsCache;
+    protected PublishedEventIds publishedEventIds;
+
+    protected AbstractLineageStrategy(ComponentLog logger, NiFIAtlasHook atlasHook) {
+        this.logger = logger;
+        this.nifiAtlasHook = atlasHook;
+    }
+
+    /**
+     * Set a tracer to aggregate warnings per batch. The caller is responsible to log the summary of each batch.
+     */
+    public void setEventTracer(EventTracer eventTracer) {
+        this.eventTracer = eventTracer;
+    }
+
+    /**
+     * Set a cache to reuse DataSets analyzed from previous events. If not set, every event is analyzed.
+     */
+    public void setDataSetRefsCache(DataSetRefsCache dataSetRefsCache) {
+        this.dataSetRefsCache = dataSetRefsCache;
+    }
+
+    /**
+     * Set ids of events already published, those are skipped when replayed. If not set, every event is processed.
+     */
+    public void setPublishedEventIds(PublishedEventIds publishedEventIds) {
+        this.publishedEventIds = publishedEventIds;
+    }
+
+    protected ComponentLog getLogger() {
+        return logger;
+    }
+
+    protected NiFiProvenanceEventAnalyzer findAnalyzer(ProvenanceEventRecord event) {
+        final NiFiProvenanceEventAnalyzer analyzer = NiFiProvenanceEventAnalyzerFactory.getAnalyzer(event.getComponentType(), event.getTransitUri(), event.getEventType());
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug("Analyzer {} is found for event: {}", new Object[]{analyzer, event});
+        }
+        return analyzer;
+    }
+
+    @Override
+    public void processEvent(ProvenanceEventRecord event, NiFiFlow nifiFlow, AnalysisContext analysisContext) {
+        processEvents(Collections.singletonList(event), nifiFlow, analysisContext);
+    }
+
+    /**
+     * Events are routed to analyzers in event order, then events of the same analyzer are analyzed together.
+     * Finally, analyzed events are reported in event order with {@link #processAnalyzedEvent(ProvenanceEventRecord, DataSetRefs, NiFiFlow)}.
+     */
+    @Override
+    public void processEvents(List<ProvenanceEventRecord> events, NiFiFlow nifiFlow, AnalysisContext analysisContext) {
+        final int size = events.size();
+        final boolean[] withoutAnalyzer = new boolean[size];
+        final DataSetRefs[] analyzed = new DataSetRefs[size];
+
+        final Map<NiFiProvenanceEventAnalyzer, List<Integer>> eventsByAnalyzer = new LinkedHashMap<>();
+        int replayedCount = 0;
+        for (int i = 0; i < size; i++) {
+            final ProvenanceEventRecord event = events.get(i);
+            if (publishedEventIds != null && publishedEventIds.contains(event.getEventId())) {
+                replayedCount++;
+                continue;
+            }
+            try {
+                if (!accept(event, nifiFlow)) {
+                    continue;
+                }
+                if (isProcessedWithoutAnalyzer(event)) {
+                    withoutAnalyzer[i] = true;
+                    continue;
+                }
+                final NiFiProvenanceEventAnalyzer analyzer = findAnalyzer(event);
+                if (analyzer == null) {
+                    onAnalyzerNotFound(event);
+                    continue;
+                }
+                eventsByAnalyzer.computeIfAbsent(analyzer, k -> new ArrayList<>()).add(i);
+            } catch (Exception e) {
+                logSkippedEvent(event, e);
+            }
+        }
+        if (replayedCount > 0) {
+            getLogger().info("Skipped {} events those have already been published.", new Object[]{replayedCount});
+        }
+
+        for (Map.Entry<NiFiProvenanceEventAnalyzer, List<Integer>> group : eventsByAnalyzer.entrySet()) {
+            final List<Integer> indices = group.getValue();
+            final List<ProvenanceEventRecord> groupEvents = indices.stream().map(events::get).collect(Collectors.toList());
+            final List<DataSetRefs> groupRefs = analyze(group.getKey(), analysisContext, groupEvents);
+            for (int i = 0; i < indices.size(); i++) {
+                analyzed[indices.get(i)] = groupRefs.get(i);
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            final ProvenanceEventRecord event = events.get(i);
+            final DataSetRefs refs = analyzed[i];
+            if (!withoutAnalyzer[i] && (refs == null || refs.isEmpty())) {
+                continue;
+            }
+            try {
+                processAnalyzedEvent(event, refs, nifiFlow);
+            } catch (Exception e) {
+                logSkippedEvent(event, e);
+            }
+        }
+    }
+
+    /**
+     * Analyze events routed to the same analyzer. If the analyzer fails with the whole events,
+     * events are analyzed one by one, so that only failed events are skipped.
+     * @return DataSetRefs of each event at the same index as the event, an element is null if not analyzed
+     */
+    protected List<DataSetRefs> analyze(NiFiProvenanceEventAnalyzer analyzer, AnalysisContext analysisContext, List<ProvenanceEventRecord> events) {
+        try {
+            final List<DataSetRefs> refs = dataSetRefsCache != null
+                    ? dataSetRefsCache.analyze(analyzer, analysisContext, events)
+                    : analyzer.analyze(analysisContext, events);
+            if (refs != null && refs.size() == events.size()) {
+                return refs;
+            }
+            getLogger().warn("{} returned {} results for {} events. Analyzing events one by one.",
+                    new Object[]{analyzer, refs == null ? null : refs.size(), events.size()});
+        } catch (Exception e) {
+            if (events.size() == 1) {
+                logSkippedEvent(events.get(0), e);
+                return Collections.singletonList(null);
+            }
+            getLogger().warn("Failed to analyze {} events with {} due to {}. Analyzing events one by one.",
+                    new Object[]{events.size(), analyzer, e}, e);
+        }
+
+        final List<DataSetRefs> refs = new ArrayList<>(events.size());
+        for (ProvenanceEventRecord event : events) {
+            try {
+                refs.add(dataSetRefsCache != null
+                        ? dataSetRefsCache.analyze(analyzer, analysisContext, event)
+                        : analyzer.analyze(analysisContext, event));
+            } catch (Exception e) {
+                logSkippedEvent(event, e);
+                refs.add(null);
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Returns whether the event should be reported. Called for each event in event order, before events are analyzed.
+     */
+    protected boolean accept(ProvenanceEventRecord event, NiFiFlow nifiFlow) {
+        return true;
+    }
+
+    /**
+     * Returns whether the event is reported without being analyzed by an analyzer.
+     */
+    protected boolean isProcessedWithoutAnalyzer(ProvenanceEventRecord event) {
+        return false;
+    }
+
+    protected void onAnalyzerNotFound(ProvenanceEventRecord event) {
+    }
+
+    /**
+     * Report lineage of an event. Called for each event in event order, after events in a batch are analyzed.
+     * @param refs DataSets analyzed from the event, having at least one input or output,
+     *             or null if {@link #isProcessedWithoutAnalyzer(ProvenanceEventRecord)} returned true for the event
+     */
+    protected abstract void processAnalyzedEvent(ProvenanceEventRecord event, DataSetRefs refs, NiFiFlow nifiFlow);
+
+    private void logSkippedEvent(ProvenanceEventRecord event, Exception e) {
+        // If something went wrong, log it and continue with other records.
+        getLogger().error("Skipping failed analyzing event {} due to {}.", new Object[]{event, e}, e);
+    }
+
+    // TODO: need special logic for remote ports as it may be connected to multiple flow paths.
+    protected Set<NiFiFlowPath> findFlowPaths(DataSetRefs refs, NiFiFlow nifiFlow, ProvenanceEventRecord event) {
+        return refs.getComponentIds().stream()
+                .map(componentId -> {
+                    final NiFiFlowPath flowPath = nifiFlow.findPath(componentId);
+                    if (flowPath == null) {
+                        eventTracer.countWarning("FlowPath was not found", event.getComponentId());
+                    }
+                    return flowPath;
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+}
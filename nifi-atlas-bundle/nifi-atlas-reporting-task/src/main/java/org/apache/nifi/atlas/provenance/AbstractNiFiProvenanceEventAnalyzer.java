@@ -3,7 +3,13 @@ package org.apache.nifi.atlas.provenance;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.resolver.ClusterResolvers;
 import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.provenance.lineage.ComputeLineageResult;
+import org.apache.nifi.provenance.lineage.LineageNode;
+import org.apache.nifi.provenance.lineage.LineageNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -11,6 +17,8 @@ import java.util.Collections;
 
 public abstract class AbstractNiFiProvenanceEventAnalyzer implements NiFiProvenanceEventAnalyzer {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractNiFiProvenanceEventAnalyzer.class);
+
     /**
      * Utility method to parse a string uri silently.
      * @param uri uri to parse
@@ -25,6 +33,33 @@ public abstract class AbstractNiFiProvenanceEventAnalyzer implements NiFiProvena
         }
     }
 
+    /**
+     * Parse a transit URI without creating {@link URI} or throwing an exception.
+     * @param transitUri transit URI to parse
+     * @return parsed transit URI, or null if the transit URI is null
+     */
+    protected TransitUri parseTransitUri(String transitUri) {
+        return TransitUri.parse(transitUri);
+    }
+
+    /**
+     * Resolve cluster name from the hosts of a transit URI, such as a list of Kafka brokers or ZooKeeper servers.
+     * @return the cluster name resolved from the first host that can be resolved,
+     * or the default cluster name if none of the hosts can be resolved
+     */
+    protected String resolveClusterName(AnalysisContext context, TransitUri transitUri) {
+        return context.getClusterResolver().fromHostnames(transitUri.getAuthority());
+    }
+
+    /**
+     * Normalize a file or HDFS path with the rules configured in the context, e.g. to collapse partitioned directories.
+     * @return the normalized path, or the path as it is if there's no matching rule
+     */
+    protected String normalizePath(AnalysisContext context, String path) {
+        final PathNormalizer pathNormalizer = context.getPathNormalizer();
+        return pathNormalizer != null ? pathNormalizer.normalize(path) : path;
+    }
+
     protected String toQualifiedName(String clusterName, String dataSetName) {
         return dataSetName + "@" + clusterName;
     }
@@ -44,4 +79,53 @@ public abstract class AbstractNiFiProvenanceEventAnalyzer implements NiFiProvena
         return refs;
     }
 
+    /**
+     * Find the component which generated the preceding provenance event of the same FlowFile.
+     * The FlowFile event index is used if available, otherwise lineage is computed with the provenance repository.
+     * @return the component id, or null if the preceding event was not found
+     */
+    protected String findPreviousComponentId(AnalysisContext context, ProvenanceEventRecord event) {
+        final FlowFileEventIndex.Entry indexed = context.findPreviousEvent(event);
+        if (indexed != null) {
+            return indexed.getComponentId();
+        }
+
+        final ProvenanceEventRecord previousEvent = findPreviousProvenanceEvent(context, event);
+        return previousEvent != null ? previousEvent.getComponentId() : null;
+    }
+
+    private ProvenanceEventRecord findPreviousProvenanceEvent(AnalysisContext context, ProvenanceEventRecord event) {
+        final ComputeLineageResult lineage = context.queryLineage(event.getEventId());
+        if (lineage == null) {
+            logger.warn("Lineage was not found: {}", new Object[]{event});
+            return null;
+        }
+
+        // TODO: What if there is no previous node? Expired or remote_output to remote_input direct connection?
+        final LineageNode previousProvenanceNode = traverseLineage(lineage, String.valueOf(event.getEventId()));
+        if (previousProvenanceNode == null) {
+            logger.warn("Traverse lineage could not find any preceding provenance event node: {}", new Object[]{event});
+            return null;
+        }
+
+        final long previousEventId = Long.parseLong(previousProvenanceNode.getIdentifier());
+        return context.getProvenanceEvent(previousEventId);
+    }
+
+    /**
+     * Recursively traverse lineage graph until a preceding provenance event is found.
+     */
+    private LineageNode traverseLineage(ComputeLineageResult lineage, String eventId) {
+        final LineageNode previousNode = lineage.getEdges().stream()
+                .filter(edge -> edge.getDestination().getIdentifier().equals(String.valueOf(eventId)))
+                .findFirst().map(edge -> edge.getSource()).orElse(null);
+        if (previousNode == null) {
+            return null;
+        }
+        if (previousNode.getNodeType().equals(LineageNodeType.PROVENANCE_EVENT_NODE)) {
+            return previousNode;
+        }
+        return traverseLineage(lineage, previousNode.getIdentifier());
+    }
+
 }
@@ -6,13 +6,41 @@ import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.provenance.lineage.ComputeLineageResult;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 public interface AnalysisContext {
     ClusterResolver getClusterResolver();
     List<ConnectionStatus> findConnectionTo(String componentId);
     List<ConnectionStatus> findConnectionFrom(String componentId);
     ComputeLineageResult queryLineage(long eventId);
+
+    /**
+     * Submit a lineage computation without waiting for the result.
+     * @param eventId the event to compute its lineage
+     * @return a future to get the result. The result is null if the computation failed or timed out
+     */
+    default Future<ComputeLineageResult> queryLineageAsync(long eventId) {
+        return CompletableFuture.completedFuture(queryLineage(eventId));
+    }
+
     ProvenanceEventRecord getProvenanceEvent(long eventId);
     String lookupInputPortName (String componentId);
     String lookupOutputPortName (String componentId);
+
+    /**
+     * Find the preceding event of the same FlowFile from the FlowFile event index, without computing lineage.
+     * @param event the event to find its preceding event
+     * @return the preceding event, or null if it is not indexed
+     */
+    default FlowFileEventIndex.Entry findPreviousEvent(ProvenanceEventRecord event) {
+        return null;
+    }
+
+    /**
+     * @return rules to normalize file and HDFS paths before building DataSet names, or null if not configured
+     */
+    default PathNormalizer getPathNormalizer() {
+        return null;
+    }
 }
@@ -12,112 +12,122 @@ import org.apache.nifi.provenance.ProvenanceEventType;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Objects;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.apache.nifi.atlas.NiFiTypes.*;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_PROCESSORS;
 
-public class ByFileLineageStrategy implements LineageEventProcessor {
+public class ByFileLineageStrategy extends AbstractLineageStrategy {
 
-    final ComponentLog logger;
-    final NiFIAtlasHook nifiAtlasHook;
+    static final int CLONE_CHUNK_SIZE = 100;
+
+    private LineageSampler sampler;
+    private int cloneFanOutThreshold = Integer.MAX_VALUE;
 
     public ByFileLineageStrategy (ComponentLog logger, NiFIAtlasHook atlasHook) {
-        this.logger = logger;
-        this.nifiAtlasHook = atlasHook;
+        super(logger, atlasHook);
     }
 
-    private ComponentLog getLogger() {
-        return logger;
+    /**
+     * Report lineage only for FlowFiles sampled by the sampler. If not set, lineage of all FlowFiles are reported.
+     */
+    public void setSampler(LineageSampler sampler) {
+        this.sampler = sampler;
     }
 
-    public void processEvent (ProvenanceEventRecord event, NiFiFlow nifiFlow, AnalysisContext analysisContext) {
-        try {
+    /**
+     * If a CLONE event has more children than the threshold, a single DataSet and a single process stand in for
+     * all children, instead of creating a DataSet and a process per child.
+     */
+    public void setCloneFanOutThreshold(int cloneFanOutThreshold) {
+        this.cloneFanOutThreshold = cloneFanOutThreshold;
+    }
 
-            // If CLONE, publish an Atlas event for a nifi_flow_path with QN for flowFileUUID and all child UUIDs
-            if (event.getEventType() == ProvenanceEventType.CLONE) {
+    @Override
+    protected boolean accept(ProvenanceEventRecord event, NiFiFlow nifiFlow) {
+        return sampler == null || sampler.isSampled(event, nifiFlow);
+    }
+
+    @Override
+    protected boolean isProcessedWithoutAnalyzer(ProvenanceEventRecord event) {
+        return event.getEventType() == ProvenanceEventType.CLONE;
+    }
 
-                createParentProcess (event, nifiFlow);
+    @Override
+    protected void onAnalyzerNotFound(ProvenanceEventRecord event) {
+        eventTracer.countWarning("No analyzer was found for " + event.getComponentType(), event.getComponentId());
+    }
 
-                ProcessorStatus pr = nifiFlow.getProcessors().get(event.getComponentId());
+    @Override
+    protected void processAnalyzedEvent(ProvenanceEventRecord event, DataSetRefs refs, NiFiFlow nifiFlow) {
 
-                Collection<Referenceable> inputs = getNifiDataRefs(event);
+        // If CLONE, publish an Atlas event for a nifi_flow_path with QN for flowFileUUID and all child UUIDs
+        if (event.getEventType() == ProvenanceEventType.CLONE) {
 
-                // Create a new flow path for the Child UUID
-                for ( String childUuid : event.getChildUuids()) {
-                    createProcessForEachChild(event, nifiFlow, pr, childUuid, inputs);
-                }
+            ProcessorStatus pr = nifiFlow.getProcessors().get(event.getComponentId());
 
-            } else {
+            final List<String> childUuids = event.getChildUuids() != null ? event.getChildUuids() : Collections.emptyList();
+            final boolean fanOut = childUuids.size() > cloneFanOutThreshold;
 
-                final NiFiProvenanceEventAnalyzer analyzer = NiFiProvenanceEventAnalyzerFactory.getAnalyzer(event.getComponentType(), event.getTransitUri(), event.getEventType());
-                if (getLogger().isDebugEnabled()) {
-                    getLogger().debug("Analyzer {} is found for event: {}", new Object[]{analyzer, event});
-                }
-                if (analyzer == null) {
-                    getLogger().warn("No analyzer for {}", new Object[]{event.getComponentType()});
-                    return;
-                }
-                final DataSetRefs refs = analyzer.analyze(analysisContext, event);
-                if (refs == null || (refs.isEmpty())) {
-                    return;
+            // Create DataSets only once, then refer them from processes with minimal references.
+            final List<Referenceable> dataSets = fanOut ? Collections.singletonList(getFanOutDataRef(event)) : getNifiDataRefs(event);
+            nifiAtlasHook.addCreateReferenceables(dataSets, CLONE_CHUNK_SIZE);
+            final List<Referenceable> dataSetIds = dataSets.stream().map(ByFileLineageStrategy::toIdRef).collect(Collectors.toList());
+
+            createParentProcess(event, nifiFlow, pr, dataSetIds);
+
+            if (fanOut) {
+                // A single flow path for the collapsed children, its input is the fan-out DataSet.
+                createProcessForClones(event, nifiFlow, pr, dataSetIds);
+            } else {
+                // Create a new flow path for the Child UUID, its input is the child DataSet.
+                for (int i = 0; i < childUuids.size(); i++) {
+                    createProcessForEachChild(event, nifiFlow, pr, childUuids.get(i), Collections.singletonList(dataSetIds.get(i)));
                 }
+            }
+
+        } else {
+
+            final Set<NiFiFlowPath> flowPaths = findFlowPaths(refs, nifiFlow, event);
+
+
+            // create reference to NiFi flow path.
+            for (NiFiFlowPath flowPath : flowPaths) {
+                // TODO: make the reference to NiFiFlow optional?
+                final Referenceable flowRef = new Referenceable(TYPE_NIFI_FLOW);
+                flowRef.set(ATTR_QUALIFIED_NAME, nifiFlow.getId().getUniqueAttributes().get(ATTR_QUALIFIED_NAME));
+
+                String cid = refs.getComponentIds().iterator().next();
+
+                ProcessorStatus pr = nifiFlow.getProcessors().get(cid);
 
-                // TODO: need special logic for remote ports as it may be connected to multiple flow paths.
-                final Set<NiFiFlowPath> flowPaths = refs.getComponentIds().stream()
-                        .map(componentId -> {
-                            final NiFiFlowPath flowPath = nifiFlow.findPath(componentId);
-                            if (flowPath == null) {
-                                getLogger().warn("FlowPath for {} was not found.", new Object[]{event.getComponentId()});
-                            }
-                            return flowPath;
-                        })
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toSet());
-
-
-                // create reference to NiFi flow path.
-                for (NiFiFlowPath flowPath : flowPaths) {
-                    // TODO: make the reference to NiFiFlow optional?
-                    final Referenceable flowRef = new Referenceable(TYPE_NIFI_FLOW);
-                    flowRef.set(ATTR_QUALIFIED_NAME, nifiFlow.getId().getUniqueAttributes().get(ATTR_QUALIFIED_NAME));
-
-                    String cid = refs.getComponentIds().iterator().next();
-
-                    ProcessorStatus pr = nifiFlow.getProcessors().get(cid);
-
-                    final Referenceable flowPathRef = new Referenceable(TYPE_NIFI_FLOW_PATH);
-                    flowPathRef.set(ATTR_NAME, (pr == null ? "UNKNOWN" : pr.getName()));
-                    flowPathRef.set(ATTR_DESCRIPTION, event.getAttribute("filename") + " : " + flowPath.getName());
-                    flowPathRef.set(ATTR_QUALIFIED_NAME, event.getFlowFileUuid());
-                    flowPathRef.set(ATTR_URL, nifiFlow.getUrl());
-
-                    if (event.getAttribute("nifi.params") != null) {
-                        flowPathRef.set(ATTR_NIFI_FLOW_PARAMS, event.getAttribute("nifi.params"));
-                    }
-                    addProcessorToFlowPath(flowPathRef, pr);
-
-                    Collection<Referenceable> addedFlowPath = new ArrayList<>();
-                    addedFlowPath.add(flowPathRef);
-                    flowRef.set(ATTR_FLOW_PATHS, addedFlowPath);
-
-                    nifiAtlasHook.addDataSetRefs(refs, flowPathRef, (event.getEventType() == ProvenanceEventType.RECEIVE));
-                    //nifiAtlasHook.addUpdateReferenceable(flowRef);
+                final Referenceable flowPathRef = new Referenceable(TYPE_NIFI_FLOW_PATH);
+                flowPathRef.set(ATTR_NAME, (pr == null ? "UNKNOWN" : pr.getName()));
+                flowPathRef.set(ATTR_DESCRIPTION, event.getAttribute("filename") + " : " + flowPath.getName());
+                flowPathRef.set(ATTR_QUALIFIED_NAME, event.getFlowFileUuid());
+                flowPathRef.set(ATTR_URL, nifiFlow.getUrl());
+
+                if (event.getAttribute("nifi.params") != null) {
+                    flowPathRef.set(ATTR_NIFI_FLOW_PARAMS, event.getAttribute("nifi.params"));
                 }
+                addProcessorToFlowPath(flowPathRef, pr);
+
+                Collection<Referenceable> addedFlowPath = new ArrayList<>();
+                addedFlowPath.add(flowPathRef);
+                flowRef.set(ATTR_FLOW_PATHS, addedFlowPath);
+
+                nifiAtlasHook.addDataSetRefs(refs, flowPathRef, (event.getEventType() == ProvenanceEventType.RECEIVE));
+                //nifiAtlasHook.addUpdateReferenceable(flowRef);
             }
-        } catch (Exception e) {
-            // If something went wrong, log it and continue with other records.
-            getLogger().error("Skipping failed analyzing event {} due to {}.", new Object[]{event, e}, e);
         }
 
     }
 
 
-    private void createParentProcess (ProvenanceEventRecord event, NiFiFlow nifiFlow) {
-        ProcessorStatus pr = nifiFlow.getProcessors().get(event.getComponentId());
-
+    private void createParentProcess (ProvenanceEventRecord event, NiFiFlow nifiFlow, ProcessorStatus pr, Collection<Referenceable> outputs) {
         // Create a new
         final Referenceable flowPathRef = new Referenceable(TYPE_NIFI_FLOW_PATH);
 
@@ -131,11 +141,9 @@ public class ByFileLineageStrategy implements LineageEventProcessor {
         }
         addProcessorToFlowPath (flowPathRef, pr);
 
-        Collection<Referenceable> outputs = getNifiDataRefs(event);
-
         flowPathRef.set(ATTR_OUTPUTS, outputs);
 
-        nifiAtlasHook.addCreateReferenceable(outputs, flowPathRef);
+        nifiAtlasHook.addCreateReferenceable(null, flowPathRef);
     }
 
     private void createProcessForEachChild(ProvenanceEventRecord event, NiFiFlow nifiFlow, ProcessorStatus pr, String childUuid, Collection<Referenceable> inputs) {
@@ -151,7 +159,22 @@ public class ByFileLineageStrategy implements LineageEventProcessor {
         addProcessorToFlowPath(flowPathRef, pr);
 
         flowPathRef.set(ATTR_INPUTS, inputs);
-        nifiAtlasHook.addCreateReferenceable(inputs, flowPathRef);
+        nifiAtlasHook.addCreateReferenceable(null, flowPathRef);
+    }
+
+    private void createProcessForClones(ProvenanceEventRecord event, NiFiFlow nifiFlow, ProcessorStatus pr, Collection<Referenceable> inputs) {
+        final Referenceable flowPathRef = new Referenceable(TYPE_NIFI_FLOW_PATH);
+        flowPathRef.set(ATTR_NAME, (pr == null ? "UNKNOWN" : pr.getName()));
+        flowPathRef.set(ATTR_DESCRIPTION, event.getAttribute("filename") + " (" + event.getChildUuids().size() + " CLONES)");
+        flowPathRef.set(ATTR_QUALIFIED_NAME, event.getFlowFileUuid() + "-clones");
+        flowPathRef.set(ATTR_URL, nifiFlow.getUrl());
+        if (event.getAttribute("nifi.params") != null) {
+            flowPathRef.set(ATTR_NIFI_FLOW_PARAMS, event.getAttribute("nifi.params"));
+        }
+        addProcessorToFlowPath(flowPathRef, pr);
+
+        flowPathRef.set(ATTR_INPUTS, inputs);
+        nifiAtlasHook.addCreateReferenceable(null, flowPathRef);
     }
 
     private void addProcessorToFlowPath (Referenceable flowPathRef, ProcessorStatus pr) {
@@ -166,8 +189,8 @@ public class ByFileLineageStrategy implements LineageEventProcessor {
 
     }
 
-    private Collection<Referenceable> getNifiDataRefs (ProvenanceEventRecord event) {
-        Collection<Referenceable> list = new ArrayList<>();
+    private List<Referenceable> getNifiDataRefs (ProvenanceEventRecord event) {
+        List<Referenceable> list = new ArrayList<>();
         if (event.getChildUuids() != null) {
             for (String uuid : event.getChildUuids()) {
                 final Referenceable ref = new Referenceable(TYPE_NIFI_DATA);
@@ -179,4 +202,25 @@ public class ByFileLineageStrategy implements LineageEventProcessor {
         }
         return list;
     }
+
+    /**
+     * A DataSet standing in for all children of a CLONE event having more children than the fan-out threshold.
+     */
+    private Referenceable getFanOutDataRef (ProvenanceEventRecord event) {
+        final Referenceable ref = new Referenceable(TYPE_NIFI_DATA);
+        ref.set(ATTR_NAME, event.getChildUuids().size() + " clones of " + event.getFlowFileUuid());
+        ref.set(ATTR_QUALIFIED_NAME, event.getFlowFileUuid() + "-clones");
+        ref.set(ATTR_DESCRIPTION, "Clones of " + event.getFlowFileUuid());
+        return ref;
+    }
+
+    /**
+     * Only unique attributes are needed to refer an existing DataSet.
+     */
+    private static Referenceable toIdRef (Referenceable dataSetRef) {
+        final Referenceable ref = new Referenceable(dataSetRef.getTypeName());
+        ref.set(ATTR_NAME, dataSetRef.get(ATTR_NAME));
+        ref.set(ATTR_QUALIFIED_NAME, dataSetRef.get(ATTR_QUALIFIED_NAME));
+        return ref;
+    }
 }
@@ -1,79 +1,76 @@
 package org.apache.nifi.atlas.provenance;
 
 import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.atlas.DataSetRegistry;
 import org.apache.nifi.atlas.NiFIAtlasHook;
 import org.apache.nifi.atlas.NiFiFlow;
 import org.apache.nifi.atlas.NiFiFlowPath;
 import org.apache.nifi.logging.ComponentLog;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 
-import java.util.Objects;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static org.apache.nifi.atlas.NiFiTypes.*;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_NIFI_FLOW;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_URL;
 
-public class ByPathLineageStrategy implements LineageEventProcessor {
-    ComponentLog logger;
-    NiFIAtlasHook nifiAtlasHook;
+public class ByPathLineageStrategy extends AbstractLineageStrategy {
+
+    private Set<String> sentEdges;
 
     public ByPathLineageStrategy (ComponentLog logger, NiFIAtlasHook atlasHook) {
-        this.logger = logger;
-        this.nifiAtlasHook = atlasHook;
+        super(logger, atlasHook);
     }
 
-    private ComponentLog getLogger() {
-        return logger;
+    /**
+     * Send an edge between a flow path and a DataSet only once until {@link #flush(NiFiFlow)} is called,
+     * instead of sending it for every event.
+     */
+    public void setEdgeDedupe(boolean edgeDedupe) {
+        sentEdges = edgeDedupe ? new HashSet<>() : null;
     }
 
-    public void processEvent (ProvenanceEventRecord event, NiFiFlow nifiFlow, AnalysisContext analysisContext) {
-        try {
-            final NiFiProvenanceEventAnalyzer analyzer = NiFiProvenanceEventAnalyzerFactory.getAnalyzer(event.getComponentType(), event.getTransitUri(), event.getEventType());
-            if (getLogger().isDebugEnabled()) {
-                getLogger().debug("Analyzer {} is found for event: {}", new Object[]{analyzer, event});
-            }
-            if (analyzer == null) {
-                return;
-            }
-            final DataSetRefs refs = analyzer.analyze(analysisContext, event);
-            if (refs == null || (refs.isEmpty())) {
-                return;
-            }
-
-            // TODO: need special logic for remote ports as it may be connected to multiple flow paths.
-            final Set<NiFiFlowPath> flowPaths = refs.getComponentIds().stream()
-                    .map(componentId -> {
-                        final NiFiFlowPath flowPath = nifiFlow.findPath(componentId);
-                        if (flowPath == null) {
-                            getLogger().warn("FlowPath for {} was not found.", new Object[]{event.getComponentId()});
-                        }
-                        return flowPath;
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toSet());
+    private DataSetRefs removeSentEdges(DataSetRefs refs, NiFiFlowPath flowPath) {
+        final DataSetRefs newRefs = new DataSetRefs(refs.getComponentIds());
+        refs.getInputs().stream().filter(ref -> sentEdges.add(DataSetRegistry.toEdgeKey(flowPath.getId(), ref, true)))
+                .forEach(newRefs::addInput);
+        refs.getOutputs().stream().filter(ref -> sentEdges.add(DataSetRegistry.toEdgeKey(flowPath.getId(), ref, false)))
+                .forEach(newRefs::addOutput);
+        return newRefs;
+    }
 
-            // create reference to NiFi flow path.
-            for (NiFiFlowPath flowPath : flowPaths) {
-                // TODO: make the reference to NiFiFlow optional?
-                final Referenceable flowRef = new Referenceable(TYPE_NIFI_FLOW);
-                flowRef.set(ATTR_NAME, nifiFlow.getFlowName());
-                flowRef.set(ATTR_QUALIFIED_NAME, nifiFlow.getId().getUniqueAttributes().get(ATTR_QUALIFIED_NAME));
-                flowRef.set(ATTR_URL, nifiFlow.getUrl());
+    @Override
+    public void flush(NiFiFlow nifiFlow) {
+        if (sentEdges != null) {
+            sentEdges.clear();
+        }
+    }
 
-                final Referenceable flowPathRef = new Referenceable(TYPE_NIFI_FLOW_PATH);
-                flowPathRef.set(ATTR_NAME, flowPath.getName());
-                flowPathRef.set(ATTR_QUALIFIED_NAME, flowPath.getId());
-                flowPathRef.set(ATTR_NIFI_FLOW, flowRef);
-                flowPathRef.set(ATTR_URL, nifiFlow.getUrl());
+    @Override
+    protected void processAnalyzedEvent(ProvenanceEventRecord event, DataSetRefs refs, NiFiFlow nifiFlow) {
+        final Set<NiFiFlowPath> flowPaths = findFlowPaths(refs, nifiFlow, event);
 
-                nifiAtlasHook.addDataSetRefs(refs, flowPathRef, false);
+        // create reference to NiFi flow path.
+        for (NiFiFlowPath flowPath : flowPaths) {
+            final DataSetRefs flowPathRefs = sentEdges != null ? removeSentEdges(refs, flowPath) : refs;
+            if (flowPathRefs.isEmpty()) {
+                continue;
             }
 
-        } catch (Exception e) {
-            // If something went wrong, log it and continue with other records.
-            getLogger().error("Skipping failed analyzing event {} due to {}.", new Object[]{event, e}, e);
+            // TODO: make the reference to NiFiFlow optional?
+            final Referenceable flowRef = new Referenceable(TYPE_NIFI_FLOW);
+            flowRef.set(ATTR_NAME, nifiFlow.getFlowName());
+            flowRef.set(ATTR_QUALIFIED_NAME, nifiFlow.getId().getUniqueAttributes().get(ATTR_QUALIFIED_NAME));
+            flowRef.set(ATTR_URL, nifiFlow.getUrl());
+
+            final Referenceable flowPathRef = new Referenceable(TYPE_NIFI_FLOW_PATH);
+            flowPathRef.set(ATTR_NAME, flowPath.getName());
+            flowPathRef.set(ATTR_QUALIFIED_NAME, flowPath.getId());
+            flowPathRef.set(ATTR_NIFI_FLOW, flowRef);
+            flowPathRef.set(ATTR_URL, nifiFlow.getUrl());
+
+            nifiAtlasHook.addDataSetRefs(flowPathRefs, flowPathRef, false);
         }
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.atlas.NiFIAtlasHook;
+import org.apache.nifi.atlas.NiFiFlow;
+import org.apache.nifi.atlas.NiFiFlowPath;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_BYTE_COUNT;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_EVENT_COUNT;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_INPUTS;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_NIFI_FLOW_PATH;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_OUTPUTS;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_URL;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_WINDOW_END;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_WINDOW_START;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW_PATH;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_LINEAGE_WINDOW;
+
+/**
+ * Aggregates analyzed provenance events per flow path into fixed time windows based on event time.
+ * Each window is reported as a 'nifi_lineage_window' process entity, having the input and output DataSets
+ * seen within the window, number of events and total bytes.
+ * <p>A window is (re)sent with cumulative values when {@link #flush(NiFiFlow)} is called after it is updated,
+ * and it is evicted from memory once event time passes the end of the following window.
+ * Only DataSets those have not been sent with the window are created again, and the flow path is referred by its
+ * qualifiedName, so that sending a window does not overwrite the flow path entity.</p>
+ * <p>Each node aggregates only its own events, and a window is aggregated again from zero if an event arrives
+ * after the window has been evicted, or after the reporting task is restarted. So that such partial aggregations
+ * do not overwrite each other, every in-memory window has its own qualifiedName consisting of
+ * the flow path id, window start, node id and a unique id. Totals of a flow path within a window are the sum of
+ * entities having the same flow path and window start.</p>
+ * <p>This instance is stateful and has to be kept while the reporting task is scheduled.
+ * This class is not thread-safe.</p>
+ */
+public class ByWindowLineageStrategy extends AbstractLineageStrategy {
+
+    private final long windowMillis;
+    private final Map<String, Window> windows = new LinkedHashMap<>();
+    private long latestEventTime;
+    private String nodeId = "standalone";
+
+    private static class Window {
+        private final String qualifiedName;
+        private final NiFiFlowPath flowPath;
+        private final long start;
+        private final Map<String, Referenceable> inputs = new LinkedHashMap<>();
+        private final Map<String, Referenceable> outputs = new LinkedHashMap<>();
+        private final Set<String> sentDataSets = new HashSet<>();
+        private long eventCount;
+        private long byteCount;
+        private boolean updated;
+
+        private Window(String qualifiedName, NiFiFlowPath flowPath, long start) {
+            this.qualifiedName = qualifiedName;
+            this.flowPath = flowPath;
+            this.start = start;
+        }
+    }
+
+    public ByWindowLineageStrategy(ComponentLog logger, NiFIAtlasHook atlasHook, long windowMillis) {
+        super(logger, atlasHook);
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Set the id of the cluster node running this reporting task, to be included in window qualifiedNames.
+     */
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    protected void processAnalyzedEvent(ProvenanceEventRecord event, DataSetRefs refs, NiFiFlow nifiFlow) {
+        final long eventTime = event.getEventTime();
+        latestEventTime = Math.max(latestEventTime, eventTime);
+        final long windowStart = eventTime - (eventTime % windowMillis);
+
+        final Set<NiFiFlowPath> flowPaths = findFlowPaths(refs, nifiFlow, event);
+        for (NiFiFlowPath flowPath : flowPaths) {
+            final Window window = windows.computeIfAbsent(flowPath.getId() + "@" + windowStart,
+                    k -> new Window(k + "@" + nodeId + "@" + UUID.randomUUID(), flowPath, windowStart));
+            refs.getInputs().forEach(ref -> window.inputs.putIfAbsent(toKey(ref), ref));
+            refs.getOutputs().forEach(ref -> window.outputs.putIfAbsent(toKey(ref), ref));
+            window.eventCount++;
+            window.byteCount += Math.max(0, event.getFileSize());
+            window.updated = true;
+        }
+    }
+
+    @Override
+    public void flush(NiFiFlow nifiFlow) {
+        for (Iterator<Map.Entry<String, Window>> iterator = windows.entrySet().iterator(); iterator.hasNext();) {
+            final Map.Entry<String, Window> entry = iterator.next();
+            final Window window = entry.getValue();
+            if (window.updated) {
+                addWindow(window, nifiFlow);
+                window.updated = false;
+            }
+            // Keep the window for a while, as events can arrive slightly out of order.
+            if (window.start + windowMillis * 2 <= latestEventTime) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int getWindowCount() {
+        return windows.size();
+    }
+
+    private void addWindow(Window window, NiFiFlow nifiFlow) {
+        // The flow path is registered with the flow structure, only refer it by qualifiedName.
+        final Referenceable flowPathRef = new Referenceable(TYPE_NIFI_FLOW_PATH);
+        flowPathRef.set(ATTR_QUALIFIED_NAME, window.flowPath.getId());
+
+        final Date start = new Date(window.start);
+        final Referenceable windowRef = new Referenceable(TYPE_NIFI_LINEAGE_WINDOW);
+        windowRef.set(ATTR_NAME, window.flowPath.getName() + " " + start);
+        windowRef.set(ATTR_QUALIFIED_NAME, window.qualifiedName);
+        windowRef.set(ATTR_URL, nifiFlow.getUrl());
+        windowRef.set(ATTR_NIFI_FLOW_PATH, flowPathRef);
+        windowRef.set(ATTR_WINDOW_START, start);
+        windowRef.set(ATTR_WINDOW_END, new Date(window.start + windowMillis));
+        windowRef.set(ATTR_EVENT_COUNT, window.eventCount);
+        windowRef.set(ATTR_BYTE_COUNT, window.byteCount);
+
+        // DataSets sent with former flushes are referred by qualifiedName.
+        final List<Referenceable> dataSets = new ArrayList<>();
+        windowRef.set(ATTR_INPUTS, toWindowDataSetRefs(window, window.inputs, dataSets));
+        windowRef.set(ATTR_OUTPUTS, toWindowDataSetRefs(window, window.outputs, dataSets));
+        nifiAtlasHook.addCreateReferenceable(dataSets, windowRef);
+    }
+
+    private static List<Referenceable> toWindowDataSetRefs(Window window, Map<String, Referenceable> refs, List<Referenceable> newDataSets) {
+        final List<Referenceable> windowRefs = new ArrayList<>(refs.size());
+        refs.forEach((key, ref) -> {
+            if (window.sentDataSets.add(key)) {
+                newDataSets.add(ref);
+                windowRefs.add(ref);
+            } else {
+                final Referenceable sentRef = new Referenceable(ref.getTypeName());
+                sentRef.set(ATTR_QUALIFIED_NAME, ref.get(ATTR_QUALIFIED_NAME));
+                windowRefs.add(sentRef);
+            }
+        });
+        return windowRefs;
+    }
+
+    private static String toKey(Referenceable ref) {
+        return ref.getTypeName() + "::" + ref.get(ATTR_QUALIFIED_NAME);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.atlas.resolver.ClusterResolver;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A bounded cache of DataSets analyzed from provenance events, so that events having the same transit URI,
+ * such as ones sent to the same Kafka topic, are analyzed only once.
+ * <p>Only analyzers returning {@link NiFiProvenanceEventAnalyzer#cacheKeyAttributes()} are cached.
+ * Results are keyed by the analyzer, event type, transit URI and values of the attributes,
+ * and are bound to the event component id when returned.</p>
+ * <p>Entries are evicted in LRU order when the cache is full, or when they are older than the TTL.
+ * The whole cache is invalidated when a different cluster resolver is used, as cluster names can change.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class DataSetRefsCache {
+
+    private static class Entry {
+        private final Set<Referenceable> inputs;
+        private final Set<Referenceable> outputs;
+        private final long expiresAt;
+
+        private Entry(DataSetRefs refs, long expiresAt) {
+            this.inputs = refs != null ? new LinkedHashSet<>(refs.getInputs()) : null;
+            this.outputs = refs != null ? new LinkedHashSet<>(refs.getOutputs()) : null;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    private ClusterResolver clusterResolver;
+    private long hitCount;
+    private long missCount;
+
+    public DataSetRefsCache(int maxSize, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Analyze the event with the analyzer, or return the cached result of the same DataSets.
+     * @return DataSetRefs for the event component, or null if the analyzer didn't find any DataSet
+     */
+    public DataSetRefs analyze(NiFiProvenanceEventAnalyzer analyzer, AnalysisContext context, ProvenanceEventRecord event) {
+        final List<String> attributeNames = analyzer.cacheKeyAttributes();
+        if (attributeNames == null) {
+            return analyzer.analyze(context, event);
+        }
+
+        resetIfResolverChanged(context);
+        final String key = toKey(analyzer, event, attributeNames);
+
+        final long now = System.currentTimeMillis();
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            hitCount++;
+            return toDataSetRefs(entry, event.getComponentId());
+        }
+
+        missCount++;
+        final DataSetRefs refs = analyzer.analyze(context, event);
+        entries.put(key, new Entry(refs, now + ttlMillis));
+        return refs;
+    }
+
+    /**
+     * Analyze events routed to the analyzer with {@link NiFiProvenanceEventAnalyzer#analyze(AnalysisContext, List)}.
+     * Only one event is passed to the analyzer for the same cache key, others reuse the cached result.
+     * @return DataSetRefs of each event at the same index as the event, an element can be null if no DataSet is found
+     */
+    public List<DataSetRefs> analyze(NiFiProvenanceEventAnalyzer analyzer, AnalysisContext context, List<ProvenanceEventRecord> events) {
+        final List<String> attributeNames = analyzer.cacheKeyAttributes();
+        if (attributeNames == null) {
+            return analyzer.analyze(context, events);
+        }
+
+        resetIfResolverChanged(context);
+        final long now = System.currentTimeMillis();
+        final List<DataSetRefs> results = new ArrayList<>(Collections.nCopies(events.size(), null));
+
+        // Indices of events those are not cached, grouped by key.
+        final Map<String, List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            final ProvenanceEventRecord event = events.get(i);
+            final String key = toKey(analyzer, event, attributeNames);
+            final Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hitCount++;
+                results.set(i, toDataSetRefs(entry, event.getComponentId()));
+            } else {
+                misses.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return results;
+        }
+
+        final List<ProvenanceEventRecord> missedEvents = misses.values().stream()
+                .map(indices -> events.get(indices.get(0))).collect(Collectors.toList());
+        final List<DataSetRefs> analyzed = analyzer.analyze(context, missedEvents);
+        if (analyzed == null || analyzed.size() != missedEvents.size()) {
+            throw new IllegalStateException(String.format("%s returned %s results for %d events.",
+                    analyzer, analyzed == null ? null : analyzed.size(), missedEvents.size()));
+        }
+
+        int analyzedIndex = 0;
+        for (Map.Entry<String, List<Integer>> miss : misses.entrySet()) {
+            final DataSetRefs refs = analyzed.get(analyzedIndex++);
+            final Entry entry = new Entry(refs, now + ttlMillis);
+            entries.put(miss.getKey(), entry);
+
+            final List<Integer> indices = miss.getValue();
+            missCount++;
+            results.set(indices.get(0), refs);
+            for (int i = 1; i < indices.size(); i++) {
+                hitCount++;
+                final int index = indices.get(i);
+                results.set(index, toDataSetRefs(entry, events.get(index).getComponentId()));
+            }
+        }
+        return results;
+    }
+
+    private void resetIfResolverChanged(AnalysisContext context) {
+        if (clusterResolver != context.getClusterResolver()) {
+            entries.clear();
+            clusterResolver = context.getClusterResolver();
+        }
+    }
+
+    private static String toKey(NiFiProvenanceEventAnalyzer analyzer, ProvenanceEventRecord event, List<String> attributeNames) {
+        final StringBuilder keyBuilder = new StringBuilder(analyzer.getClass().getName())
+                .append('\n').append(event.getEventType())
+                .append('\n').append(event.getTransitUri());
+        for (String attributeName : attributeNames) {
+            keyBuilder.append('\n').append(event.getAttribute(attributeName));
+        }
+        return keyBuilder.toString();
+    }
+
+    private DataSetRefs toDataSetRefs(Entry entry, String componentId) {
+        if (entry.inputs == null) {
+            return null;
+        }
+        // Referenceables are shared among events, they should not be modified.
+        final DataSetRefs refs = new DataSetRefs(componentId);
+        entry.inputs.forEach(refs::addInput);
+        entry.outputs.forEach(refs::addOutput);
+        return refs;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+}
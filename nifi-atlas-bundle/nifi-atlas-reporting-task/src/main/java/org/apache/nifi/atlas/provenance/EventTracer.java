@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Traces analyzed provenance events and aggregates warnings per batch, instead of logging each event and warning.
+ * <p>Events are traced only if DEBUG level is enabled for this class, and only one out of every N events is traced
+ * based on the sampling rate. Traced events are logged and kept in a fixed size ring buffer,
+ * which can be retrieved with {@link #getRecentTraces()} for diagnostics.
+ * Nothing is allocated per event while tracing is disabled.</p>
+ * <p>Warnings counted with {@link #countWarning(String, String)} are logged once per batch
+ * by {@link #logBatchSummary(ComponentLog)}, with the number of occurrences per component.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class EventTracer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventTracer.class);
+
+    private final long sampleInterval;
+    private final long[] eventIds;
+    private final ProvenanceEventType[] eventTypes;
+    private final String[] componentTypes;
+    private final String[] componentIds;
+    private final String[] flowFileUuids;
+    private final String[] transitUris;
+    private int nextSlot;
+    private int tracedCount;
+
+    private long eventCount;
+    private long batchEventCount;
+    private long batchTracedCount;
+    private final Map<String, Map<String, Integer>> warningCounts = new LinkedHashMap<>();
+
+    /**
+     * @param samplingRate a rate between 0.0 and 1.0 of events to trace, 0.0 disables tracing
+     * @param ringBufferSize number of recent traces to keep in memory
+     */
+    public EventTracer(double samplingRate, int ringBufferSize) {
+        this.sampleInterval = samplingRate > 0 ? Math.max(1, Math.round(1 / samplingRate)) : 0;
+        this.eventIds = new long[ringBufferSize];
+        this.eventTypes = new ProvenanceEventType[ringBufferSize];
+        this.componentTypes = new String[ringBufferSize];
+        this.componentIds = new String[ringBufferSize];
+        this.flowFileUuids = new String[ringBufferSize];
+        this.transitUris = new String[ringBufferSize];
+    }
+
+    public void trace(ProvenanceEventRecord event) {
+        batchEventCount++;
+        if (sampleInterval == 0 || eventCount++ % sampleInterval != 0 || !logger.isDebugEnabled()) {
+            return;
+        }
+
+        batchTracedCount++;
+        if (eventIds.length > 0) {
+            eventIds[nextSlot] = event.getEventId();
+            eventTypes[nextSlot] = event.getEventType();
+            componentTypes[nextSlot] = event.getComponentType();
+            componentIds[nextSlot] = event.getComponentId();
+            flowFileUuids[nextSlot] = event.getFlowFileUuid();
+            transitUris[nextSlot] = event.getTransitUri();
+            nextSlot = (nextSlot + 1) % eventIds.length;
+            tracedCount = Math.min(tracedCount + 1, eventIds.length);
+        }
+
+        logger.debug("ProvenanceEvent id={}, type={}, componentType={}, componentId={}, flowFileUuid={}, transitUri={}",
+                event.getEventId(), event.getEventType(), event.getComponentType(), event.getComponentId(),
+                event.getFlowFileUuid(), event.getTransitUri());
+    }
+
+    /**
+     * @return recently traced events, from the oldest to the newest
+     */
+    public List<String> getRecentTraces() {
+        final List<String> traces = new ArrayList<>(tracedCount);
+        for (int i = 0; i < tracedCount; i++) {
+            final int slot = (nextSlot - tracedCount + i + eventIds.length) % eventIds.length;
+            traces.add(String.format("id=%d, type=%s, componentType=%s, componentId=%s, flowFileUuid=%s, transitUri=%s",
+                    eventIds[slot], eventTypes[slot], componentTypes[slot], componentIds[slot],
+                    flowFileUuids[slot], transitUris[slot]));
+        }
+        return traces;
+    }
+
+    /**
+     * Count a warning to be logged by {@link #logBatchSummary(ComponentLog)}.
+     * @param message warning message, used to aggregate occurrences
+     * @param componentId the component which caused the warning
+     */
+    public void countWarning(String message, String componentId) {
+        warningCounts.computeIfAbsent(message, k -> new LinkedHashMap<>()).merge(componentId, 1, Integer::sum);
+    }
+
+    /**
+     * Log warnings counted within the current batch and reset counts.
+     */
+    public void logBatchSummary(ComponentLog componentLog) {
+        warningCounts.forEach((message, counts) -> {
+            final int total = counts.values().stream().mapToInt(Integer::intValue).sum();
+            componentLog.warn("{} {} times in the last {} events. Occurrences by component: {}",
+                    new Object[]{message, total, batchEventCount, counts});
+        });
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Traced {} of {} provenance events in the batch.", batchTracedCount, batchEventCount);
+            if (!warningCounts.isEmpty()) {
+                logger.debug("Recently traced provenance events: {}", getRecentTraces());
+            }
+        }
+
+        warningCounts.clear();
+        batchEventCount = 0;
+        batchTracedCount = 0;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded index of FlowFile UUID to the most recent provenance event of the FlowFile,
+ * used to find a preceding event without computing lineage with the provenance repository.
+ * <p>Every consumed event should be recorded with {@link #record(ProvenanceEventRecord)} after it is analyzed,
+ * so that while analyzing an event, the index holds the preceding event of the FlowFile.
+ * Events can also be recorded after a whole batch is analyzed, if preceding events within the batch are resolved
+ * with {@link StandardAnalysisContext#prepareBatch(List, java.util.Set)}.
+ * Children of CLONE, FORK and JOIN events are indexed with the parent event.</p>
+ * <p>Events do not have to be recorded in event id order. An entry is only replaced by an event having a greater
+ * event id, so that back-filling older events does not hide newer ones.</p>
+ * <p>The least recently used entries are evicted when the index reaches its max size.
+ * The index can be saved to and loaded from a file to survive restarts.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class FlowFileEventIndex {
+
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    public static class Entry {
+        private final String componentId;
+        private final long eventId;
+
+        Entry(String componentId, long eventId) {
+            this.componentId = componentId;
+            this.eventId = eventId;
+        }
+
+        public String getComponentId() {
+            return componentId;
+        }
+
+        public long getEventId() {
+            return eventId;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+    // Share the same component id instance among entries to reduce memory usage.
+    private final Map<String, String> componentIds = new HashMap<>();
+
+    public FlowFileEventIndex(int maxSize) {
+        entries = new LinkedHashMap<String, Entry>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Record the event, unless a newer event of the FlowFile is indexed already,
+     * e.g. when older events are back-filled after newer events.
+     */
+    public void record(ProvenanceEventRecord event) {
+        final Entry entry = new Entry(internComponentId(event.getComponentId()), event.getEventId());
+        put(event.getFlowFileUuid(), entry);
+
+        final List<String> childUuids = event.getChildUuids();
+        if (childUuids != null) {
+            for (String childUuid : childUuids) {
+                put(childUuid, entry);
+            }
+        }
+    }
+
+    private void put(String flowFileUuid, Entry entry) {
+        final Entry existing = entries.get(flowFileUuid);
+        if (existing == null || existing.eventId < entry.eventId) {
+            entries.put(flowFileUuid, entry);
+        }
+    }
+
+    /**
+     * @param event the event to find its preceding event
+     * @return the most recent event of the same FlowFile prior to the given event, or null if not indexed
+     */
+    public Entry findPrevious(ProvenanceEventRecord event) {
+        final Entry entry = entries.get(event.getFlowFileUuid());
+        // The event itself can be indexed already if the same events are consumed again, e.g. after a failure.
+        if (entry == null || entry.eventId >= event.getEventId()) {
+            return null;
+        }
+        return entry;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private String internComponentId(String componentId) {
+        final String existing = componentIds.putIfAbsent(componentId, componentId);
+        return existing != null ? existing : componentId;
+    }
+
+    public void save(File file) throws IOException {
+        final File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().componentId);
+                out.writeLong(entry.getValue().eventId);
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Load entries saved by {@link #save(File)}. Loaded entries are added in the order of their last access.
+     * Does nothing if the file doesn't exist.
+     */
+    public void load(File file) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final int version = in.readInt();
+            if (version != FILE_FORMAT_VERSION) {
+                throw new IOException(String.format("Unsupported FlowFile event index file version %d in %s", version, file));
+            }
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final String flowFileUuid = in.readUTF();
+                final String componentId = internComponentId(in.readUTF());
+                entries.put(flowFileUuid, new Entry(componentId, in.readLong()));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+/**
+ * Decides how much lineage fidelity to give up, so that lineage is kept current when provenance consumption falls behind.
+ * <p>Lag is measured as the number of events between the oldest unprocessed event and the latest event,
+ * and the age of the oldest unprocessed event. Its severity is the larger ratio of those to their thresholds.
+ * A severity of 1, 2 and 4 or higher degrades lineage to {@link Tier#SAMPLED}, {@link Tier#BY_PATH}
+ * and {@link Tier#FLOW_STRUCTURE_ONLY} respectively.</p>
+ * <p>Lineage is degraded as soon as the severity reaches the tier, but restored by one tier at a time
+ * only after the severity drops below {@value #RESTORE_RATIO} of the threshold of the current tier,
+ * so that the tier does not flap around a threshold.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class LineageDegradationPolicy {
+
+    static final double RESTORE_RATIO = 0.5;
+
+    public enum Tier {
+        FULL("Full lineage", 0),
+        SAMPLED("Sampled lineage", 1),
+        BY_PATH("Lineage by flow path", 2),
+        FLOW_STRUCTURE_ONLY("Flow structure only", 4);
+
+        private final String description;
+        private final double severity;
+
+        Tier(String description, double severity) {
+            this.description = description;
+            this.severity = severity;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final long eventLagThreshold;
+    private final long eventAgeThresholdMillis;
+    private Tier tier = Tier.FULL;
+
+    /**
+     * @param eventLagThreshold number of events behind to start degrading lineage, or 0 not to use event lag
+     * @param eventAgeThresholdMillis age of the oldest unprocessed event to start degrading lineage, or 0 not to use event age
+     */
+    public LineageDegradationPolicy(long eventLagThreshold, long eventAgeThresholdMillis) {
+        this.eventLagThreshold = eventLagThreshold;
+        this.eventAgeThresholdMillis = eventAgeThresholdMillis;
+    }
+
+    double getSeverity(long eventLag, long eventAgeMillis) {
+        final double lagSeverity = eventLagThreshold > 0 ? (double) eventLag / eventLagThreshold : 0;
+        final double ageSeverity = eventAgeThresholdMillis > 0 ? (double) eventAgeMillis / eventAgeThresholdMillis : 0;
+        return Math.max(lagSeverity, ageSeverity);
+    }
+
+    /**
+     * Update the tier with the current lag.
+     * @param eventLag number of events between the oldest unprocessed event and the latest event
+     * @param eventAgeMillis age of the oldest unprocessed event
+     * @return true if the tier has changed
+     */
+    public boolean update(long eventLag, long eventAgeMillis) {
+        final double severity = getSeverity(eventLag, eventAgeMillis);
+
+        Tier target = Tier.FULL;
+        for (Tier t : Tier.values()) {
+            if (severity >= t.severity) {
+                target = t;
+            }
+        }
+
+        final Tier previous = tier;
+        if (target.ordinal() > tier.ordinal()) {
+            tier = target;
+        } else if (target.ordinal() < tier.ordinal() && severity < tier.severity * RESTORE_RATIO) {
+            tier = Tier.values()[tier.ordinal() - 1];
+        }
+        return tier != previous;
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+}
@@ -3,6 +3,25 @@ package org.apache.nifi.atlas.provenance;
 import org.apache.nifi.atlas.NiFiFlow;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 
+import java.util.List;
+
 public interface LineageEventProcessor {
     void processEvent (ProvenanceEventRecord event, NiFiFlow nifiFlow, AnalysisContext analysisContext);
+
+    /**
+     * Process events of a batch, in event id order. Implementations can analyze events together,
+     * but lineage has to be reported in the same order as processing each event with {@link #processEvent}.
+     */
+    default void processEvents (List<ProvenanceEventRecord> events, NiFiFlow nifiFlow, AnalysisContext analysisContext) {
+        for (ProvenanceEventRecord event : events) {
+            processEvent(event, nifiFlow, analysisContext);
+        }
+    }
+
+    /**
+     * Called after a batch of provenance events is processed, before hook messages are committed.
+     * Strategies those aggregate multiple events can add the aggregated messages here.
+     */
+    default void flush (NiFiFlow nifiFlow) {
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.atlas.NiFiFlow;
+import org.apache.nifi.atlas.NiFiFlowPath;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
+import org.apache.nifi.controller.status.ProcessorStatus;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Decides whether lineage of a FlowFile should be reported, by hashing the UUID of its lineage root FlowFile.
+ * <p>The decision for a FlowFile UUID is deterministic, so the same FlowFile is sampled or skipped consistently
+ * across restarts and nodes.
+ * Children created by CLONE events share the decision with their root FlowFile, so that a chain is kept together,
+ * but only while the child is tracked in memory: roots of the latest cloned children are remembered when this sampler
+ * sees the CLONE event, up to a max number of children. After a restart, once a child is evicted,
+ * or if the CLONE event was reported by another node, a child is sampled by its own UUID and the chain can be split.
+ * Samplers created with {@link #LineageSampler(double, Map, LineageSampler)} share the tracked children.
+ * Because a FlowFile is sampled if its hash is lower than the rate, a FlowFile sampled at a lower rate
+ * is also sampled at components having higher rates.</p>
+ * <p>Sampling rate can be overridden per processor, flow path or process group ID with
+ * '{@value #RATE_PROPERTY_PREFIX}&lt;ID&gt;' dynamic properties. Set 1.0 to keep full-fidelity lineage.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class LineageSampler {
+
+    public static final String RATE_PROPERTY_PREFIX = "lineageSamplingRate.";
+    public static final String RATE_PROPERTY_PREFIX_DESC = "Sampling rate between 0.0 and 1.0 for a processor, flow path or process group ID," +
+            " overriding the default sampling rate. Set 1.0 to report full-fidelity lineage for the component.";
+
+    public static final Validator RATE_VALIDATOR = (subject, input, context) -> {
+        final ValidationResult.Builder builder = new ValidationResult.Builder().subject(subject).input(input);
+        try {
+            final double rate = Double.parseDouble(input);
+            if (rate < 0 || rate > 1) {
+                return builder.explanation("Sampling rate should be between 0.0 and 1.0").valid(false).build();
+            }
+            return builder.valid(true).build();
+        } catch (NumberFormatException | NullPointerException e) {
+            return builder.explanation("Not a valid sampling rate: " + e).valid(false).build();
+        }
+    };
+
+    private final double defaultRate;
+    private final Map<String, Double> rates;
+    // Roots of cloned children, shared among samplers.
+    private final Map<String, String> rootUuids;
+    private final Map<String, Double> resolvedRates = new HashMap<>();
+    private NiFiFlow resolvedFlow;
+
+    /**
+     * @param defaultRate sampling rate used if there is no rate configured for the component
+     * @param rates sampling rates keyed by processor, flow path or process group ID
+     * @param maxTrackedChildren max number of cloned children to remember their root FlowFile UUIDs
+     */
+    public LineageSampler(double defaultRate, Map<String, Double> rates, int maxTrackedChildren) {
+        this.defaultRate = defaultRate;
+        this.rates = rates;
+        this.rootUuids = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxTrackedChildren;
+            }
+        };
+    }
+
+    /**
+     * Create a sampler sharing tracked cloned children with another sampler,
+     * so that chains are kept together when samplers are switched.
+     * @param defaultRate sampling rate used if there is no rate configured for the component
+     * @param rates sampling rates keyed by processor, flow path or process group ID
+     * @param shareChildrenWith the sampler to share tracked cloned children with
+     */
+    public LineageSampler(double defaultRate, Map<String, Double> rates, LineageSampler shareChildrenWith) {
+        this.defaultRate = defaultRate;
+        this.rates = rates;
+        this.rootUuids = shareChildrenWith.rootUuids;
+    }
+
+    public static LineageSampler fromProperties(double defaultRate, Map<String, String> allProperties, int maxTrackedChildren) {
+        final Map<String, Double> rates = new HashMap<>();
+        allProperties.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(RATE_PROPERTY_PREFIX) && entry.getValue() != null)
+                .forEach(entry -> rates.put(entry.getKey().substring(RATE_PROPERTY_PREFIX.length()), Double.parseDouble(entry.getValue())));
+        return new LineageSampler(defaultRate, rates, maxTrackedChildren);
+    }
+
+    /**
+     * @return false if all FlowFiles are sampled with this configuration
+     */
+    public boolean isEnabled() {
+        return defaultRate < 1 || rates.values().stream().anyMatch(rate -> rate < 1);
+    }
+
+    public boolean isSampled(ProvenanceEventRecord event, NiFiFlow nifiFlow) {
+        final String rootUuid = getRootUuid(event.getFlowFileUuid());
+        if (event.getEventType() == ProvenanceEventType.CLONE && event.getChildUuids() != null) {
+            event.getChildUuids().forEach(childUuid -> rootUuids.put(childUuid, rootUuid));
+        }
+
+        final double rate = getRate(event.getComponentId(), nifiFlow);
+        if (rate >= 1) {
+            return true;
+        }
+        return rate > 0 && toUnitInterval(rootUuid) < rate;
+    }
+
+    private String getRootUuid(String flowFileUuid) {
+        final String rootUuid = rootUuids.get(flowFileUuid);
+        return rootUuid != null ? rootUuid : flowFileUuid;
+    }
+
+    private double getRate(String componentId, NiFiFlow nifiFlow) {
+        if (rates.isEmpty()) {
+            return defaultRate;
+        }
+
+        // Flow paths and process groups can change when NiFi flow is updated.
+        if (resolvedFlow != nifiFlow) {
+            resolvedRates.clear();
+            resolvedFlow = nifiFlow;
+        }
+
+        return resolvedRates.computeIfAbsent(componentId, id -> {
+            Double rate = rates.get(id);
+            if (rate == null) {
+                final NiFiFlowPath flowPath = nifiFlow.findPath(id);
+                rate = flowPath != null ? rates.get(flowPath.getId()) : null;
+            }
+            if (rate == null) {
+                final ProcessorStatus processor = nifiFlow.getProcessors().get(id);
+                rate = processor != null ? rates.get(processor.getGroupId()) : null;
+            }
+            return rate != null ? rate : defaultRate;
+        });
+    }
+
+    /**
+     * Map a FlowFile UUID to [0.0, 1.0) uniformly.
+     */
+    static double toUnitInterval(String uuid) {
+        long hash;
+        try {
+            final UUID parsed = UUID.fromString(uuid);
+            hash = parsed.getMostSignificantBits() ^ Long.rotateLeft(parsed.getLeastSignificantBits(), 31);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            hash = uuid == null ? 0 : uuid.hashCode();
+        }
+
+        // MurmurHash3 finalizer to spread bits.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+}
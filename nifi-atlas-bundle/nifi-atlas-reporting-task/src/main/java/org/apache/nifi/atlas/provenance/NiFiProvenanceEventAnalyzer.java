@@ -3,6 +3,9 @@ package org.apache.nifi.atlas.provenance;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.provenance.ProvenanceEventType;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Responsible for analyzing NiFi provenance event data to generate Atlas DataSet reference.
  * Implementations of this interface should be thread safe.
@@ -11,6 +14,22 @@ public interface NiFiProvenanceEventAnalyzer {
 
     DataSetRefs analyze(AnalysisContext context, ProvenanceEventRecord event);
 
+    /**
+     * Analyze events of a batch those are routed to this Analyzer together.
+     * Override this to share work among the events, such as resolving the same hosts or de-duplicating identical transit URIs.
+     * By default, each event is analyzed with {@link #analyze(AnalysisContext, ProvenanceEventRecord)}.
+     * @param context the analysis context
+     * @param events events routed to this Analyzer, in event id order
+     * @return DataSetRefs of each event at the same index as the event, an element can be null if no DataSet is found
+     */
+    default List<DataSetRefs> analyze(AnalysisContext context, List<ProvenanceEventRecord> events) {
+        final List<DataSetRefs> refs = new ArrayList<>(events.size());
+        for (ProvenanceEventRecord event : events) {
+            refs.add(analyze(context, event));
+        }
+        return refs;
+    }
+
     /**
      * Returns target component type pattern that this Analyzer supports.
      * Note that a component type of NiFi provenance event only has processor type name without package name.
@@ -36,4 +55,26 @@ public interface NiFiProvenanceEventAnalyzer {
         return null;
     }
 
+    /**
+     * Returns whether this Analyzer needs the preceding provenance event of the FlowFile to analyze the event.
+     * If true and the preceding event is not indexed, lineage of the event is computed in advance with other events in the same batch.
+     * @param event A provenance event to be analyzed
+     * @return true if {@link AnalysisContext#queryLineage(long)} can be called to analyze the event
+     */
+    default boolean requiresPreviousEvent(ProvenanceEventRecord event) {
+        return false;
+    }
+
+    /**
+     * Returns names of attributes those affect the result of {@link #analyze(AnalysisContext, ProvenanceEventRecord)},
+     * in addition to the transit URI and the event type.
+     * If not null, DataSets analyzed from an event are reused for following events having the same values,
+     * with the component id of each event. Return null if the result depends on anything else.
+     * @return attribute names, an empty list if the result depends only on the transit URI and the event type,
+     * or null if the result can not be cached
+     */
+    default List<String> cacheKeyAttributes() {
+        return null;
+    }
+
 }
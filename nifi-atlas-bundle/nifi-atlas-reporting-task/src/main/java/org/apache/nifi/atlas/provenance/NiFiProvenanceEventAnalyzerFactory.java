@@ -4,18 +4,49 @@ import org.apache.nifi.provenance.ProvenanceEventType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class NiFiProvenanceEventAnalyzerFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(NiFiProvenanceEventAnalyzerFactory.class);
-    private static final Map<Pattern, NiFiProvenanceEventAnalyzer> analyzersForComponentType = new ConcurrentHashMap<>();
-    private static final Map<Pattern, NiFiProvenanceEventAnalyzer> analyzersForTransitUri = new ConcurrentHashMap<>();
+    private static final int MAX_DISPATCH_CACHE_SIZE = 1_000;
+    // Analyzers are evaluated in the order they are listed in the service file.
+    private static final Map<Pattern, NiFiProvenanceEventAnalyzer> analyzersForComponentType = new LinkedHashMap<>();
+    private static final Map<Pattern, NiFiProvenanceEventAnalyzer> analyzersForTransitUri = new LinkedHashMap<>();
     private static final Map<ProvenanceEventType, NiFiProvenanceEventAnalyzer> analyzersForProvenanceEventType = new ConcurrentHashMap<>();
-    private static boolean loaded = false;
+    private static final Map<String, Dispatch> dispatchCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, Dispatch>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Dispatch> eldest) {
+                    return size() > MAX_DISPATCH_CACHE_SIZE;
+                }
+            });
+    private static volatile boolean loaded = false;
+
+    /**
+     * Analyzers which can be used for a combination of component type, transit URI prefix and event type.
+     */
+    private static class Dispatch {
+        private final NiFiProvenanceEventAnalyzer componentTypeAnalyzer;
+        private final List<Map.Entry<Pattern, NiFiProvenanceEventAnalyzer>> transitUriCandidates;
+        private final NiFiProvenanceEventAnalyzer eventTypeAnalyzer;
+
+        private Dispatch(NiFiProvenanceEventAnalyzer componentTypeAnalyzer,
+                         List<Map.Entry<Pattern, NiFiProvenanceEventAnalyzer>> transitUriCandidates,
+                         NiFiProvenanceEventAnalyzer eventTypeAnalyzer) {
+            this.componentTypeAnalyzer = componentTypeAnalyzer;
+            this.transitUriCandidates = transitUriCandidates;
+            this.eventTypeAnalyzer = eventTypeAnalyzer;
+        }
+    }
 
     private static void loadAnalyzers() {
         logger.debug("Loading NiFiProvenanceEventAnalyzer ...");
@@ -30,6 +61,7 @@ public class NiFiProvenanceEventAnalyzerFactory {
                     logger.warn("Fo ProvenanceEventType {}, an Analyzer {} is already assigned." +
                             " Only one analyzer for a type can be registered. Ignoring {}",
                             eventType, analyzersForProvenanceEventType.get(eventType), analyzer);
+                    return;
                 }
                 analyzersForProvenanceEventType.put(eventType, analyzer);
             }
@@ -53,6 +85,9 @@ public class NiFiProvenanceEventAnalyzerFactory {
      * <li>TransitUri. Use an analyzer supporting the TransitUri with its {@link NiFiProvenanceEventAnalyzer#targetTransitUriPattern()}.
      * <li>Provenance Event Type. Use an analyzer supporting the Provenance Event Type with its {@link NiFiProvenanceEventAnalyzer#targetProvenanceEventType()}.
      * </ol>
+     * If multiple analyzers match at the same step, the one listed first in the service file is used.
+     * <p>Matching results are cached by component type, transit URI prefix (e.g. 'hdfs://') and event type,
+     * so that only transit URI patterns those can match the prefix are evaluated for subsequent events.</p>
      * @param typeName NiFi component type name.
      * @param transitUri Transit URI.
      * @param eventType Provenance event type.
@@ -69,23 +104,58 @@ public class NiFiProvenanceEventAnalyzerFactory {
             }
         }
 
-        // TODO: implement a simple limited size cache mechanism here? If performance becomes a problem.
+        final String transitUriPrefix = getTransitUriPrefix(transitUri);
+        final String cacheKey = typeName + '\n' + transitUriPrefix + '\n' + eventType;
+        Dispatch dispatch = dispatchCache.get(cacheKey);
+        if (dispatch == null) {
+            dispatch = createDispatch(typeName, transitUriPrefix, eventType);
+            dispatchCache.put(cacheKey, dispatch);
+        }
+
+        if (dispatch.componentTypeAnalyzer != null) {
+            return dispatch.componentTypeAnalyzer;
+        }
+
+        for (Map.Entry<Pattern, NiFiProvenanceEventAnalyzer> entry : dispatch.transitUriCandidates) {
+            if (entry.getKey().matcher(transitUri).matches()) {
+                return entry.getValue();
+            }
+        }
+
+        // If there's no specific implementation, just use generic analyzer.
+        return dispatch.eventTypeAnalyzer;
+    }
 
+    private static Dispatch createDispatch(String typeName, String transitUriPrefix, ProvenanceEventType eventType) {
         for (Map.Entry<Pattern, NiFiProvenanceEventAnalyzer> entry : analyzersForComponentType.entrySet()) {
             if (entry.getKey().matcher(typeName).matches()) {
-                return entry.getValue();
+                return new Dispatch(entry.getValue(), Collections.emptyList(), null);
             }
         }
 
-        if (transitUri != null) {
+        final List<Map.Entry<Pattern, NiFiProvenanceEventAnalyzer>> transitUriCandidates = new ArrayList<>();
+        if (transitUriPrefix != null) {
             for (Map.Entry<Pattern, NiFiProvenanceEventAnalyzer> entry : analyzersForTransitUri.entrySet()) {
-                if (entry.getKey().matcher(transitUri).matches()) {
-                    return entry.getValue();
+                // If the matcher didn't reach the end of the prefix, no transit URI starting with the prefix can match.
+                final Matcher matcher = entry.getKey().matcher(transitUriPrefix);
+                if (matcher.matches() || matcher.hitEnd()) {
+                    transitUriCandidates.add(entry);
                 }
             }
         }
 
-        // If there's no specific implementation, just use generic analyzer.
-        return analyzersForProvenanceEventType.get(eventType);
+        return new Dispatch(null, transitUriCandidates, analyzersForProvenanceEventType.get(eventType));
+    }
+
+    /**
+     * @return the scheme part of the transit URI including '://', such as 'hdfs://' or 'jdbc:hive2://',
+     * or an empty string if the URI doesn't have it, or null if the transit URI is null
+     */
+    static String getTransitUriPrefix(String transitUri) {
+        if (transitUri == null) {
+            return null;
+        }
+        final int index = transitUri.indexOf("://");
+        return index < 0 ? "" : transitUri.substring(0, index + 3);
     }
 }
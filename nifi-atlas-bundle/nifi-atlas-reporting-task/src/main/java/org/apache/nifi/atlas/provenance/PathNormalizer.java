@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes file and HDFS paths with configured rules, so that partitioned directories or per-file names
+ * are represented as a single DataSet.
+ * <p>Each line of the rules is '&lt;pattern&gt; =&gt; &lt;template&gt;'. The pattern is a regular expression,
+ * or a glob if prefixed with 'glob:', where '**' matches any characters, '*' any characters except '/'
+ * and '?' a character except '/'. Each wildcard of a glob is a capturing group.
+ * The template can refer to captured groups with '$1', '$2' ..., or to named groups of a regular expression
+ * such as '(?&lt;table&gt;[^/]+)' with '${table}'.
+ * Blank lines and lines starting with '#' are ignored.</p>
+ * <p>The first rule whose pattern matches the whole path is applied. If no rule matches, the path is not changed.
+ * For example, '^(/data/events)/dt=[^/]+/.*$ =&gt; $1' or 'glob:/data/*&#47;dt=*&#47;** =&gt; /data/$1'
+ * normalizes '/data/events/dt=2026-10-17/part-0001' to '/data/events'.</p>
+ */
+public class PathNormalizer {
+
+    private static final String SEPARATOR = "=>";
+    private static final String GLOB_PREFIX = "glob:";
+
+    public static final Validator RULES_VALIDATOR = (subject, input, context) -> {
+        final ValidationResult.Builder builder = new ValidationResult.Builder().subject(subject).input(input);
+        try {
+            parse(input);
+            return builder.valid(true).build();
+        } catch (IllegalArgumentException e) {
+            return builder.explanation(e.getMessage()).valid(false).build();
+        }
+    };
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final String template;
+
+        private Rule(Pattern pattern, String template) {
+            this.pattern = pattern;
+            this.template = template;
+        }
+    }
+
+    private final List<Rule> rules;
+
+    private PathNormalizer(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @param rulesStr rules separated by line breaks
+     * @return parsed rules
+     * @throws IllegalArgumentException if a rule is not valid
+     */
+    public static PathNormalizer parse(String rulesStr) {
+        final List<Rule> rules = new ArrayList<>();
+        if (rulesStr == null) {
+            return new PathNormalizer(rules);
+        }
+
+        final String[] lines = rulesStr.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            final String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final int separator = line.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Line %d '%s' should be '<pattern> %s <template>'", i + 1, line, SEPARATOR));
+            }
+            final String patternStr = line.substring(0, separator).trim();
+            final String template = line.substring(separator + SEPARATOR.length()).trim();
+            try {
+                final Pattern pattern = patternStr.startsWith(GLOB_PREFIX)
+                        ? Pattern.compile(globToRegex(patternStr.substring(GLOB_PREFIX.length())))
+                        : Pattern.compile(patternStr);
+                verifyGroupReferences(template, pattern.matcher("").groupCount(), getGroupNames(pattern.pattern()));
+                rules.add(new Rule(pattern, template));
+            } catch (IllegalArgumentException e) {
+                // Including PatternSyntaxException.
+                throw new IllegalArgumentException(String.format("Line %d '%s' is not a valid rule due to %s", i + 1, line, e), e);
+            }
+        }
+        return new PathNormalizer(rules);
+    }
+
+    /**
+     * @return names of the named capturing groups in a regular expression
+     */
+    static Set<String> getGroupNames(String regex) {
+        final Set<String> names = new HashSet<>();
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '(' && regex.startsWith("?<", i + 1)) {
+                // Exclude look-behinds, '(?<=' and '(?<!'.
+                int end = i + 3;
+                while (end < regex.length() && Character.isLetterOrDigit(regex.charAt(end))) {
+                    end++;
+                }
+                if (end > i + 3 && end < regex.length() && regex.charAt(end) == '>') {
+                    names.add(regex.substring(i + 3, end));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static void verifyGroupReferences(String template, int groupCount, Set<String> groupNames) {
+        for (int i = 0; i < template.length(); i++) {
+            final char c = template.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '$' && i + 1 < template.length() && template.charAt(i + 1) == '{') {
+                final int end = template.indexOf('}', i + 2);
+                if (end < 0 || !groupNames.contains(template.substring(i + 2, end))) {
+                    throw new IllegalArgumentException(String.format("Template '%s' refers to a group that doesn't exist", template));
+                }
+                i = end;
+            } else if (c == '$') {
+                int group = 0;
+                int digits = 0;
+                while (i + 1 < template.length() && Character.isDigit(template.charAt(i + 1))) {
+                    group = group * 10 + (template.charAt(++i) - '0');
+                    digits++;
+                }
+                if (digits == 0 || group > groupCount) {
+                    throw new IllegalArgumentException(String.format("Template '%s' refers to a group that doesn't exist", template));
+                }
+            }
+        }
+    }
+
+    static String globToRegex(String glob) {
+        final StringBuilder regex = new StringBuilder("^");
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append("(.*)");
+                i++;
+            } else if (c == '*') {
+                regex.append("([^/]*)");
+            } else if (c == '?') {
+                regex.append("([^/])");
+            } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return regex.append('$').toString();
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @param path a path to normalize
+     * @return the path normalized by the first matching rule, or the path as it is if no rule matches
+     */
+    public String normalize(String path) {
+        if (path == null) {
+            return null;
+        }
+        for (Rule rule : rules) {
+            final Matcher matcher = rule.pattern.matcher(path);
+            if (matcher.matches()) {
+                // Replace the whole match, instead of finding a match again that can be shorter than the whole path.
+                final StringBuffer normalized = new StringBuffer(path.length());
+                matcher.appendReplacement(normalized, rule.template);
+                matcher.appendTail(normalized);
+                return normalized.toString();
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A persistent set of provenance event ids those have been published to Atlas, so that events replayed after a crash,
+ * between publishing a batch and storing the last event id, are not published again.
+ * <p>Ids are stored in a memory-mapped bitmap, used as a ring covering the latest 'capacity' event ids.
+ * Adding an id beyond the window moves the window forward and forgets the oldest ids.
+ * Ids older than the window are reported as not published.</p>
+ * <p>The file starts with a header of the format version, the capacity and the first event id of the window,
+ * followed by the bitmap. A file with a different format or capacity is cleared.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public class PublishedEventIds implements Closeable {
+
+    /**
+     * 16M event ids in a 2 MB bitmap.
+     */
+    public static final long DEFAULT_CAPACITY = 1L << 24;
+
+    private static final int FILE_FORMAT_VERSION = 1;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int BASE_OFFSET = 12;
+    private static final int HEADER_SIZE = 20;
+
+    private final long capacity;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private long base;
+
+    /**
+     * @param file a file to store the ids, created if it doesn't exist
+     * @param capacity number of the latest event ids to keep, has to be a multiple of 8
+     */
+    public PublishedEventIds(File file, long capacity) throws IOException {
+        if (capacity <= 0 || capacity % 8 != 0 || HEADER_SIZE + capacity / 8 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity has to be a positive multiple of 8 but was " + capacity);
+        }
+        this.capacity = capacity;
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            final long size = HEADER_SIZE + capacity / 8;
+            final boolean compatible = this.file.length() == size
+                    && this.file.readInt() == FILE_FORMAT_VERSION
+                    && this.file.readLong() == capacity;
+            this.file.setLength(size);
+            buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (compatible) {
+                base = buffer.getLong(BASE_OFFSET);
+            } else {
+                buffer.putInt(0, FILE_FORMAT_VERSION);
+                buffer.putLong(CAPACITY_OFFSET, capacity);
+                clear(0);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Forget all ids, and start the window from the event id.
+     * This has to be called when the provenance repository restarts its event ids,
+     * otherwise new events having the ids of published events are reported as published.
+     */
+    public void clear(long newBase) {
+        for (int i = HEADER_SIZE; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        setBase(newBase);
+    }
+
+    private void setBase(long newBase) {
+        base = newBase;
+        buffer.putLong(BASE_OFFSET, base);
+    }
+
+    private int byteIndex(long eventId) {
+        return HEADER_SIZE + (int) (Math.floorMod(eventId, capacity) >>> 3);
+    }
+
+    private static byte bit(long eventId) {
+        return (byte) (1 << (eventId & 7));
+    }
+
+    /**
+     * @return true if the event has been published and it is within the window
+     */
+    public boolean contains(long eventId) {
+        if (eventId < base || eventId >= base + capacity) {
+            return false;
+        }
+        return (buffer.get(byteIndex(eventId)) & bit(eventId)) != 0;
+    }
+
+    public void add(long eventId) {
+        if (eventId < base) {
+            return;
+        }
+        if (eventId >= base + capacity) {
+            advance(eventId - capacity + 1);
+        }
+        final int index = byteIndex(eventId);
+        buffer.put(index, (byte) (buffer.get(index) | bit(eventId)));
+    }
+
+    private void advance(long newBase) {
+        if (newBase - base >= capacity) {
+            clear(newBase);
+            return;
+        }
+        // Slots of ids leaving the window are reused by ids entering the window.
+        for (long eventId = base; eventId < newBase; eventId++) {
+            final int index = byteIndex(eventId);
+            buffer.put(index, (byte) (buffer.get(index) & ~bit(eventId)));
+        }
+        setBase(newBase);
+    }
+
+    /**
+     * Write added ids to the file. Ids added before this method returns survive a crash.
+     */
+    public void sync() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        file.close();
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateManager;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventRepository;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.provenance.ProvenanceRepository;
+import org.apache.nifi.provenance.search.Query;
+import org.apache.nifi.provenance.search.QueryResult;
+import org.apache.nifi.provenance.search.QuerySubmission;
+import org.apache.nifi.provenance.search.SearchTerms;
+import org.apache.nifi.provenance.search.SearchableField;
+import org.apache.nifi.provenance.search.SearchableFieldType;
+import org.apache.nifi.reporting.EventAccess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import static org.apache.nifi.reporting.util.provenance.ProvenanceEventConsumer.END_OF_STREAM;
+
+/**
+ * Consumes provenance events in batches, and stores the id of the last consumed event in LOCAL state
+ * with the same key as ProvenanceEventConsumer does, so that either can resume from the other's position.
+ * <p>Unlike ProvenanceEventConsumer, the callback can consume only leading events of a batch.
+ * The position is stored at the last consumed event and consumption yields once a deadline has passed,
+ * so that the rest is consumed when {@link #consumeEvents(EventAccess, StateManager, long, BatchConsumer)} is called next time.</p>
+ * <p>If catch-up threshold is set and the position is further behind the latest event than that,
+ * the position jumps to the latest event so that current lineage is reported first.
+ * The skipped range is stored in LOCAL state as a gap, and back-filled by
+ * {@link #consumeGap(EventAccess, StateManager, long, int, BatchConsumer)} with its own position.
+ * Only one gap is kept at a time, the position does not jump again until the gap is back-filled.</p>
+ * <p>Other LOCAL state entries are kept when the position is stored.</p>
+ * <p>If indexed search is enabled, only events of the specified types are read, by searching the provenance repository index
+ * for each range of event ids, instead of reading all events. The index does not support searching by event id,
+ * so events are searched between the event times of both ends of a range with a margin of {@value #EVENT_TIME_MARGIN_MILLIS} ms,
+ * then filtered by event id. The max results of a search is estimated from the event rate within the range, up to {@value #MAX_SEARCH_RESULTS}.
+ * The range is read entirely instead if it contains events recorded within {@value #INDEX_LATENCY_MILLIS} ms,
+ * those may not have been indexed yet, if a search fails, or if a search has more hits than the max results.
+ * An event recorded more than the margin before it was stored in the repository can be missed by searches.</p>
+ */
+public class ResumableEventConsumer {
+
+    public static final String LAST_EVENT_ID_KEY = "last_event_id";
+    /**
+     * The id of the next event to back-fill.
+     */
+    public static final String GAP_START_KEY = "gap_start_event_id";
+    /**
+     * The id of the event that the position has jumped to, exclusive end of the gap.
+     */
+    public static final String GAP_END_KEY = "gap_end_event_id";
+
+    static final long EVENT_TIME_MARGIN_MILLIS = 30_000;
+    static final long INDEX_LATENCY_MILLIS = 60_000;
+    /**
+     * Max number of hits per search, the range is read entirely if a search has more hits.
+     */
+    static final int MAX_SEARCH_RESULTS = 10_000;
+
+    /**
+     * The 'EventType' field, equivalent to SearchableFields.EventType of the provenance repository.
+     */
+    private static final SearchableField EVENT_TYPE_FIELD = new SearchableField() {
+        @Override
+        public String getIdentifier() {
+            return "EventType";
+        }
+
+        @Override
+        public String getSearchableFieldName() {
+            return "eventType";
+        }
+
+        @Override
+        public String getFriendlyName() {
+            return "Event Type";
+        }
+
+        @Override
+        public boolean isAttribute() {
+            return false;
+        }
+
+        @Override
+        public SearchableFieldType getFieldType() {
+            return SearchableFieldType.STRING;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SearchableField
+                    && getSearchableFieldName().equals(((SearchableField) obj).getSearchableFieldName())
+                    && !((SearchableField) obj).isAttribute();
+        }
+
+        @Override
+        public int hashCode() {
+            return getSearchableFieldName().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getFriendlyName();
+        }
+    };
+
+    /**
+     * Events in a range of event ids.
+     */
+    private static class Range {
+        private final List<ProvenanceEventRecord> events;
+        /**
+         * The id of the first event after the range.
+         */
+        private final long next;
+
+        private Range(List<ProvenanceEventRecord> events, long next) {
+            this.events = events;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A callback to consume a batch of events.
+     */
+    @FunctionalInterface
+    public interface BatchConsumer {
+        /**
+         * @param events events in the order of event id
+         * @return number of leading events those are fully consumed, the rest are passed again next time
+         */
+        int accept(List<ProvenanceEventRecord> events);
+    }
+
+    private String startPositionValue;
+    private int batchSize;
+    private ComponentLog logger;
+    private volatile boolean scheduled;
+    private long catchUpThreshold;
+    private Set<ProvenanceEventType> searchEventTypes;
+    private long searchTimeoutMillis;
+    private LongConsumer resetListener;
+
+    private long searchCount;
+    private long searchFallbackCount;
+
+    private long firstEventId = -1;
+    private long gapStart = -1;
+    private long gapEnd = -1;
+
+    public void setStartPositionValue(String startPositionValue) {
+        this.startPositionValue = startPositionValue;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setLogger(ComponentLog logger) {
+        this.logger = logger;
+    }
+
+    public void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
+    }
+
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * @param catchUpThreshold number of events behind the latest event to jump to the latest event, or 0 not to jump
+     */
+    public void setCatchUpThreshold(long catchUpThreshold) {
+        this.catchUpThreshold = catchUpThreshold;
+    }
+
+    /**
+     * Read only events of the types by searching the provenance repository index, instead of reading all events.
+     * @param eventTypes event types to read, or null to read all events
+     * @param timeoutMillis max time to wait for a search
+     */
+    public void setIndexedSearch(Set<ProvenanceEventType> eventTypes, long timeoutMillis) {
+        this.searchEventTypes = eventTypes;
+        this.searchTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param resetListener called with the id of the event to restart from, when the provenance repository
+     *                      is found to have restarted its event ids
+     */
+    public void setResetListener(LongConsumer resetListener) {
+        this.resetListener = resetListener;
+    }
+
+    /**
+     * Consume events in batches until there is no more event, the consumer is unscheduled,
+     * the callback consumes only a part of a batch, or the deadline has passed.
+     * @param deadline the time in milliseconds not to fetch a batch after, or Long.MAX_VALUE to consume all events
+     * @return true if all available events have been consumed
+     */
+    public boolean consumeEvents(EventAccess eventAccess, StateManager stateManager, long deadline, BatchConsumer batchConsumer) {
+        final Long currMaxId = eventAccess.getProvenanceRepository().getMaxEventId();
+        if (currMaxId == null) {
+            logger.debug("No events to send because no events have been created yet.");
+            return true;
+        }
+
+        if (firstEventId < 0) {
+            final Map<String, String> state;
+            try {
+                state = stateManager.getState(Scope.LOCAL).toMap();
+            } catch (IOException e) {
+                logger.error("Failed to get state at start up due to {}", new Object[]{e}, e);
+                return false;
+            }
+
+            final String lastEventId = state.get(LAST_EVENT_ID_KEY);
+            if (lastEventId != null) {
+                firstEventId = Long.parseLong(lastEventId) + 1;
+            } else if (END_OF_STREAM.getValue().equals(startPositionValue)) {
+                firstEventId = currMaxId;
+            } else {
+                firstEventId = 0;
+            }
+
+            final String storedGapStart = state.get(GAP_START_KEY);
+            final String storedGapEnd = state.get(GAP_END_KEY);
+            if (storedGapStart != null && storedGapEnd != null) {
+                gapStart = Long.parseLong(storedGapStart);
+                gapEnd = Long.parseLong(storedGapEnd);
+            }
+
+            if (currMaxId < firstEventId - 1) {
+                // The provenance repository has been reset.
+                logger.warn("Current provenance max id is {} which is less than what was stored in state as the last queried event, which was {}." +
+                        " This means the provenance restarted its ids. Restarting querying from the {}.",
+                        new Object[]{currMaxId, firstEventId - 1, END_OF_STREAM.getValue().equals(startPositionValue) ? "latest event" : "beginning"});
+                firstEventId = END_OF_STREAM.getValue().equals(startPositionValue) ? currMaxId : 0;
+                // The gap no longer exists in the repository.
+                gapStart = -1;
+                gapEnd = -1;
+                if (resetListener != null) {
+                    resetListener.accept(firstEventId);
+                }
+            }
+        }
+
+        if (catchUpThreshold > 0 && !hasGap() && currMaxId - firstEventId + 1 > catchUpThreshold) {
+            logger.info("Provenance events are {} events behind the latest event {}. Jumping to the latest event," +
+                    " and events from {} to {} will be back-filled.", new Object[]{currMaxId - firstEventId + 1, currMaxId, firstEventId, currMaxId - 1});
+            gapStart = firstEventId;
+            gapEnd = currMaxId;
+            checkpoint(stateManager, currMaxId - 1);
+        }
+
+        while (isScheduled()) {
+            if (System.currentTimeMillis() >= deadline) {
+                logger.debug("Yielding at event id {} as the time budget has been exceeded.", new Object[]{firstEventId});
+                return false;
+            }
+
+            final Range range;
+            try {
+                range = fetch(eventAccess, firstEventId, Long.MAX_VALUE);
+            } catch (IOException e) {
+                logger.error("Failed to retrieve Provenance Events from repository due to: " + e.getMessage(), e);
+                return false;
+            }
+            if (range.next == firstEventId) {
+                return true;
+            }
+
+            final List<ProvenanceEventRecord> events = range.events;
+            final int consumed = events.isEmpty() ? 0 : batchConsumer.accept(events);
+            if (consumed < events.size()) {
+                if (consumed > 0) {
+                    checkpoint(stateManager, events.get(consumed - 1).getEventId());
+                }
+                logger.debug("Yielding at event id {} after consuming {} of {} events.", new Object[]{firstEventId, consumed, events.size()});
+                return false;
+            }
+            checkpoint(stateManager, range.next - 1);
+        }
+        return false;
+    }
+
+    /**
+     * Back-fill events in the gap left by jumping to the latest event, in batches with its own position.
+     * Does nothing if there is no gap. The first batch is fetched even if the deadline has passed,
+     * so that the gap is back-filled while new events use up the time.
+     * @param deadline the time in milliseconds not to fetch a batch after, except the first batch
+     * @param maxBatches max number of batches to consume
+     */
+    public void consumeGap(EventAccess eventAccess, StateManager stateManager, long deadline, int maxBatches, BatchConsumer batchConsumer) {
+        for (int i = 0; i < maxBatches && hasGap() && isScheduled(); i++) {
+            if (i > 0 && System.currentTimeMillis() >= deadline) {
+                logger.debug("Yielding back-fill at event id {} as the time budget has been exceeded.", new Object[]{gapStart});
+                return;
+            }
+
+            final Range range;
+            try {
+                range = fetch(eventAccess, gapStart, gapEnd);
+            } catch (IOException e) {
+                logger.error("Failed to retrieve Provenance Events to back-fill from repository due to: " + e.getMessage(), e);
+                return;
+            }
+            if (range.next == gapStart) {
+                logger.warn("Events from {} to {} are no longer available in the provenance repository, and will not be back-filled.",
+                        new Object[]{gapStart, gapEnd - 1});
+                checkpointGap(stateManager, gapEnd);
+                return;
+            }
+
+            final List<ProvenanceEventRecord> events = range.events;
+            final int consumed = events.isEmpty() ? 0 : batchConsumer.accept(events);
+            if (consumed < events.size()) {
+                if (consumed > 0) {
+                    checkpointGap(stateManager, events.get(consumed - 1).getEventId() + 1);
+                }
+                logger.debug("Yielding back-fill at event id {} after consuming {} of {} events.", new Object[]{gapStart, consumed, events.size()});
+                return;
+            }
+            checkpointGap(stateManager, range.next);
+        }
+    }
+
+    /**
+     * Read events from the event id up to a batch size, before the end.
+     * @param end the id of the event not to read from, exclusive
+     * @return a range whose next id is the same as the specified event id if there's no more event to read
+     */
+    private Range fetch(EventAccess eventAccess, long from, long end) throws IOException {
+        if (searchEventTypes != null) {
+            final Range range = search(eventAccess, from, end);
+            if (range != null) {
+                return range;
+            }
+        }
+
+        final List<ProvenanceEventRecord> fetched = eventAccess.getProvenanceEvents(from, (int) Math.min(batchSize, end - from));
+        // Event ids are not necessarily contiguous, events after the end can be returned.
+        final List<ProvenanceEventRecord> events = new ArrayList<>(fetched != null ? fetched.size() : 0);
+        if (fetched != null) {
+            fetched.stream().filter(event -> event.getEventId() < end).forEach(events::add);
+        }
+        return new Range(events, events.isEmpty() ? from : events.get(events.size() - 1).getEventId() + 1);
+    }
+
+    /**
+     * Search events of the target types in a range of event ids up to a batch size.
+     * @return the found events, or null if the range should be read entirely
+     */
+    private Range search(EventAccess eventAccess, long from, long end) throws IOException {
+        final ProvenanceEventRepository repository = eventAccess.getProvenanceRepository();
+        final Long maxEventId = repository.getMaxEventId();
+        if (!(repository instanceof ProvenanceRepository) || maxEventId == null) {
+            return null;
+        }
+
+        final long to = Math.min(Math.min(from + batchSize, end), maxEventId + 1);
+        if (to <= from) {
+            return new Range(Collections.emptyList(), from);
+        }
+
+        final List<ProvenanceEventRecord> first = eventAccess.getProvenanceEvents(from, 1);
+        final List<ProvenanceEventRecord> last = eventAccess.getProvenanceEvents(to - 1, 1);
+        if (first == null || first.isEmpty() || last == null || last.isEmpty()) {
+            return null;
+        }
+        final long startTime = first.get(0).getEventTime() - EVENT_TIME_MARGIN_MILLIS;
+        final long endTime = last.get(0).getEventTime() + EVENT_TIME_MARGIN_MILLIS;
+        if (endTime > System.currentTimeMillis() - INDEX_LATENCY_MILLIS) {
+            logger.debug("Reading events from {} to {} as recent events may not have been indexed yet.", new Object[]{from, to - 1});
+            return null;
+        }
+
+        // Hits include events out of the range but within the margins. Assuming the same event rate as within the range,
+        // the window can have as many events as the range multiplied by the ratio of the window to the range.
+        final long rangeMillis = Math.max(1, last.get(0).getEventTime() - first.get(0).getEventTime());
+        final long estimatedEvents = (to - from) * (endTime - startTime) / rangeMillis + (to - from);
+        final int maxResults = (int) Math.min(MAX_SEARCH_RESULTS, estimatedEvents);
+
+        final List<ProvenanceEventRecord> events = new ArrayList<>();
+        for (ProvenanceEventType eventType : searchEventTypes) {
+            final List<ProvenanceEventRecord> found = search((ProvenanceRepository) repository, eventType, startTime, endTime, maxResults);
+            if (found == null) {
+                searchFallbackCount++;
+                logger.debug("Reading events from {} to {} entirely. {} of {} searched ranges have been read entirely.",
+                        new Object[]{from, to - 1, searchFallbackCount, searchCount + searchFallbackCount});
+                return null;
+            }
+            found.stream().filter(event -> event.getEventId() >= from && event.getEventId() < to).forEach(events::add);
+        }
+        searchCount++;
+        events.sort(Comparator.comparingLong(ProvenanceEventRecord::getEventId));
+        logger.debug("Found {} events from {} to {} by indexed search.", new Object[]{events.size(), from, to - 1});
+        return new Range(events, to);
+    }
+
+    private List<ProvenanceEventRecord> search(ProvenanceRepository repository, ProvenanceEventType eventType,
+                                               long startTime, long endTime, int maxResults) {
+        final Query query = new Query(UUID.randomUUID().toString());
+        query.addSearchTerm(SearchTerms.newSearchTerm(EVENT_TYPE_FIELD, eventType.name()));
+        query.setStartDate(new Date(startTime));
+        query.setEndDate(new Date(endTime));
+        query.setMaxResults(maxResults);
+
+        final QuerySubmission submission;
+        try {
+            submission = repository.submitQuery(query, StandardAnalysisContext.NIFI_USER);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to search {} events due to {}. Reading all events instead.", new Object[]{eventType, e}, e);
+            return null;
+        }
+
+        try {
+            final QueryResult result = submission.getResult();
+            if (!result.awaitCompletion(searchTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("Search for {} events timed out. Reading all events instead.", new Object[]{eventType});
+                return null;
+            }
+            if (result.getError() != null) {
+                logger.warn("Failed to search {} events due to {}. Reading all events instead.", new Object[]{eventType, result.getError()});
+                return null;
+            }
+            if (result.getTotalHitCount() > result.getMatchingEvents().size()) {
+                logger.debug("Search for {} events had {} hits more than {}. Reading all events instead.",
+                        new Object[]{eventType, result.getTotalHitCount(), maxResults});
+                return null;
+            }
+            return result.getMatchingEvents();
+        } catch (InterruptedException e) {
+            logger.warn("Search for {} events was interrupted due to {}.", new Object[]{eventType, e}, e);
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            submission.cancel();
+        }
+    }
+
+    private void checkpoint(StateManager stateManager, long lastEventId) {
+        firstEventId = lastEventId + 1;
+        storeState(stateManager);
+    }
+
+    private void checkpointGap(StateManager stateManager, long nextGapStart) {
+        gapStart = nextGapStart;
+        if (gapStart >= gapEnd) {
+            logger.info("Back-filled provenance events up to {}.", new Object[]{gapEnd - 1});
+            gapStart = -1;
+            gapEnd = -1;
+        }
+        storeState(stateManager);
+    }
+
+    private void storeState(StateManager stateManager) {
+        try {
+            final Map<String, String> state = new HashMap<>(stateManager.getState(Scope.LOCAL).toMap());
+            state.put(LAST_EVENT_ID_KEY, String.valueOf(firstEventId - 1));
+            if (hasGap()) {
+                state.put(GAP_START_KEY, String.valueOf(gapStart));
+                state.put(GAP_END_KEY, String.valueOf(gapEnd));
+            } else {
+                state.remove(GAP_START_KEY);
+                state.remove(GAP_END_KEY);
+            }
+            stateManager.setState(state, Scope.LOCAL);
+        } catch (IOException e) {
+            logger.error("Failed to update state to {} due to {}; this could result in events being re-sent after a restart.",
+                    new Object[]{firstEventId - 1, e}, e);
+        }
+    }
+
+    /**
+     * @return true if there are events to back-fill
+     */
+    public boolean hasGap() {
+        return gapStart >= 0 && gapStart < gapEnd;
+    }
+
+    /**
+     * @return the id of the next event to back-fill, or -1 if there is no gap
+     */
+    public long getGapStart() {
+        return gapStart;
+    }
+
+    /**
+     * @return the id of the event to consume next, or -1 if not started yet
+     */
+    public long getFirstEventId() {
+        return firstEventId;
+    }
+
+    /**
+     * @return number of ranges read by indexed search
+     */
+    public long getSearchCount() {
+        return searchCount;
+    }
+
+    /**
+     * @return number of ranges read entirely as searches failed, timed out or had more hits than the max results
+     */
+    public long getSearchFallbackCount() {
+        return searchFallbackCount;
+    }
+}
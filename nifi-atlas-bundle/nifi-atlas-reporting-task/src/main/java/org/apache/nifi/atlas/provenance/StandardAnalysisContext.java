@@ -7,6 +7,7 @@ import org.apache.nifi.atlas.resolver.ClusterResolver;
 import org.apache.nifi.authorization.user.NiFiUser;
 import org.apache.nifi.controller.status.ConnectionStatus;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
 import org.apache.nifi.provenance.ProvenanceRepository;
 import org.apache.nifi.provenance.lineage.ComputeLineageResult;
 import org.apache.nifi.provenance.lineage.ComputeLineageSubmission;
@@ -15,9 +16,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
 import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_INPUT_PORT;
@@ -29,12 +37,55 @@ public class StandardAnalysisContext implements AnalysisContext {
     private final NiFiFlow nifiFlow;
     private final ClusterResolver clusterResolver;
     private final ProvenanceRepository provenanceRepository;
+    private final FlowFileEventIndex flowFileEventIndex;
+    private PathNormalizer pathNormalizer;
+    private final Map<Long, Future<ComputeLineageResult>> lineageQueries = new HashMap<>();
+    private final Map<Long, FlowFileEventIndex.Entry> previousEventsInBatch = new HashMap<>();
+    private ExecutorService lineageQueryExecutor;
+    private long queryTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+    private long batchTimeoutMillis = TimeUnit.MINUTES.toMillis(1);
+    private long batchDeadlineNanos;
+    private boolean contiguousBatches = true;
 
     public StandardAnalysisContext(NiFiFlow nifiFlow, ClusterResolver clusterResolver,
                                    ProvenanceRepository provenanceRepository) {
+        this(nifiFlow, clusterResolver, provenanceRepository, null);
+    }
+
+    public StandardAnalysisContext(NiFiFlow nifiFlow, ClusterResolver clusterResolver,
+                                   ProvenanceRepository provenanceRepository, FlowFileEventIndex flowFileEventIndex) {
         this.nifiFlow = nifiFlow;
         this.clusterResolver = clusterResolver;
         this.provenanceRepository = provenanceRepository;
+        this.flowFileEventIndex = flowFileEventIndex;
+    }
+
+    public void setPathNormalizer(PathNormalizer pathNormalizer) {
+        this.pathNormalizer = pathNormalizer;
+    }
+
+    @Override
+    public PathNormalizer getPathNormalizer() {
+        return pathNormalizer;
+    }
+
+    /**
+     * @param contiguousBatches false if batches contain only some of the events in their event id range,
+     *                          e.g. only target event types read by indexed search. Then events of a FlowFile in a batch
+     *                          are not taken as preceding each other, as events between them may be missing,
+     *                          and lineage is computed instead
+     */
+    public void setContiguousBatches(boolean contiguousBatches) {
+        this.contiguousBatches = contiguousBatches;
+    }
+
+    @Override
+    public FlowFileEventIndex.Entry findPreviousEvent(ProvenanceEventRecord event) {
+        final FlowFileEventIndex.Entry previousInBatch = previousEventsInBatch.get(event.getEventId());
+        if (previousInBatch != null) {
+            return previousInBatch;
+        }
+        return flowFileEventIndex != null ? flowFileEventIndex.findPrevious(event) : null;
     }
 
     @Override
@@ -69,12 +120,109 @@ public class StandardAnalysisContext implements AnalysisContext {
         return clusterResolver;
     }
 
+    /**
+     * Compute lineage with an executor, so that multiple lineage computations can be processed in parallel.
+     * If not configured, lineage is computed synchronously by the calling thread.
+     * @param executor executor to compute lineage, bounding the number of concurrent computations
+     * @param queryTimeoutMillis max time to wait for a single lineage computation
+     * @param batchTimeoutMillis max total time to wait for lineage computations submitted by {@link #prepareBatch(List, Set)}
+     */
+    public void setLineageQueryExecutor(ExecutorService executor, long queryTimeoutMillis, long batchTimeoutMillis) {
+        this.lineageQueryExecutor = executor;
+        this.queryTimeoutMillis = queryTimeoutMillis;
+        this.batchTimeoutMillis = batchTimeoutMillis;
+    }
+
+    /**
+     * Prepare to analyze events in a batch. This has to be called with all events in a batch before analyzing them.
+     * <p>The preceding event of each event in the same batch is resolved, so that events can be analyzed
+     * in any order, e.g. grouped by analyzers, and recorded to the FlowFile event index after the whole batch is analyzed.</p>
+     * <p>Lineage computations are submitted up front for events whose analyzer needs the preceding event
+     * but the preceding event is neither indexed nor in the same batch.
+     * Results are used by {@link #queryLineage(long)} when the events are analyzed.
+     * Any results of the previous batch those are not used are cancelled.</p>
+     * @param events events in a batch, in event id order
+     * @param targetEventTypes event types those will be analyzed
+     */
+    public void prepareBatch(List<ProvenanceEventRecord> events, Set<ProvenanceEventType> targetEventTypes) {
+        lineageQueries.values().forEach(query -> query.cancel(true));
+        lineageQueries.clear();
+        previousEventsInBatch.clear();
+        batchDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchTimeoutMillis);
+
+        final Map<String, FlowFileEventIndex.Entry> latestEventsInBatch = new HashMap<>();
+        for (ProvenanceEventRecord event : events) {
+            final FlowFileEventIndex.Entry previousInBatch = contiguousBatches ? latestEventsInBatch.get(event.getFlowFileUuid()) : null;
+            if (previousInBatch != null) {
+                previousEventsInBatch.put(event.getEventId(), previousInBatch);
+            }
+
+            final boolean previousKnown = previousInBatch != null || findPreviousEvent(event) != null;
+            if (lineageQueryExecutor != null && !previousKnown && targetEventTypes.contains(event.getEventType())) {
+                final NiFiProvenanceEventAnalyzer analyzer = NiFiProvenanceEventAnalyzerFactory.getAnalyzer(event.getComponentType(),
+                        event.getTransitUri(), event.getEventType());
+                if (analyzer != null && analyzer.requiresPreviousEvent(event)) {
+                    lineageQueries.put(event.getEventId(), queryLineageAsync(event.getEventId()));
+                }
+            }
+
+            final FlowFileEventIndex.Entry entry = new FlowFileEventIndex.Entry(event.getComponentId(), event.getEventId());
+            latestEventsInBatch.put(event.getFlowFileUuid(), entry);
+            if (event.getChildUuids() != null) {
+                event.getChildUuids().forEach(childUuid -> latestEventsInBatch.put(childUuid, entry));
+            }
+        }
+        if (!lineageQueries.isEmpty()) {
+            logger.debug("Submitted {} lineage queries in advance.", lineageQueries.size());
+        }
+    }
+
+    @Override
+    public Future<ComputeLineageResult> queryLineageAsync(long eventId) {
+        if (lineageQueryExecutor == null) {
+            return CompletableFuture.completedFuture(computeLineage(eventId, queryTimeoutMillis));
+        }
+        return lineageQueryExecutor.submit(() -> computeLineage(eventId, queryTimeoutMillis));
+    }
+
     @Override
     public ComputeLineageResult queryLineage(long eventId) {
+        final long remainingMillis = batchDeadlineNanos > 0
+                ? TimeUnit.NANOSECONDS.toMillis(batchDeadlineNanos - System.nanoTime())
+                : queryTimeoutMillis;
+        final Future<ComputeLineageResult> query = lineageQueries.remove(eventId);
+
+        if (remainingMillis <= 0) {
+            logger.warn("Lineage query for {} was skipped as the batch time budget has been used up.", new Object[]{eventId});
+            if (query != null) {
+                query.cancel(true);
+            }
+            return null;
+        }
+
+        if (query == null) {
+            return computeLineage(eventId, Math.min(queryTimeoutMillis, remainingMillis));
+        }
+
+        try {
+            return query.get(remainingMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Lineage query for {} timed out.", new Object[]{eventId});
+        } catch (InterruptedException e) {
+            logger.warn("Lineage query for {} was interrupted due to {}.", new Object[]{eventId, e}, e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Lineage query for {} failed due to {}.", new Object[]{eventId, e.getCause()}, e.getCause());
+        }
+        query.cancel(true);
+        return null;
+    }
+
+    private ComputeLineageResult computeLineage(long eventId, long timeoutMillis) {
         final ComputeLineageSubmission submission = provenanceRepository.submitLineageComputation(eventId, NIFI_USER);
         final ComputeLineageResult result = submission.getResult();
         try {
-            if (result.awaitCompletion(10, TimeUnit.SECONDS)) {
+            if (result.awaitCompletion(timeoutMillis, TimeUnit.MILLISECONDS)) {
                 return result;
             }
             logger.warn("Lineage query for {} timed out.", new Object[]{eventId});
@@ -88,7 +236,8 @@ public class StandardAnalysisContext implements AnalysisContext {
     }
 
     // TODO: Work around. User is required to avoid NullPointerException at PersistentProvenanceRepository.submitLineageComputation
-    private static final QueryNiFiUser NIFI_USER = new QueryNiFiUser();
+    // and submitQuery, the latter is used by ResumableEventConsumer.
+    static final NiFiUser NIFI_USER = new QueryNiFiUser();
     private static class QueryNiFiUser implements NiFiUser {
         @Override
         public String getIdentity() {
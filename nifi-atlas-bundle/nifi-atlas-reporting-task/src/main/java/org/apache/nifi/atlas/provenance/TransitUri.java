@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A lightweight view of a provenance event transit URI, such as:
+ * <ul>
+ * <li>hdfs://0.example.com:8020/user/nifi/fileA
+ * <li>jdbc:hive2://0.example.com:10000/databaseA
+ * <li>PLAINTEXT://0.example.com:6667,1.example.com:6667/topicA
+ * <li>hbase://zk0.example.com,zk1.example.com/tableA/rowB
+ * <li>file:/var/data/landing/sample_z
+ * </ul>
+ * <p>Unlike {@link java.net.URI}, the scheme is everything before '://' (e.g. 'jdbc:hive2'),
+ * the authority can have a comma separated list of hosts, and an invalid URI doesn't throw an exception.
+ * Only offsets are computed when parsed, strings are created when each part is requested.</p>
+ */
+public final class TransitUri {
+
+    private final String uri;
+    private final int schemeEnd;
+    private final int authorityStart;
+    private final int authorityEnd;
+    private final int pathStart;
+    private final int pathEnd;
+
+    private TransitUri(String uri) {
+        this.uri = uri;
+        final int length = uri.length();
+
+        final int separator = uri.indexOf("://");
+        if (separator > 0) {
+            schemeEnd = separator;
+            authorityStart = separator + 3;
+            int end = authorityStart;
+            while (end < length && !isAuthorityTerminator(uri.charAt(end))) {
+                end++;
+            }
+            authorityEnd = end;
+        } else {
+            // No authority, such as 'file:/path'.
+            final int colon = uri.indexOf(':');
+            schemeEnd = colon > 0 && colon < firstTerminator(uri, 0) ? colon : -1;
+            authorityStart = -1;
+            authorityEnd = -1;
+        }
+
+        pathStart = authorityEnd >= 0 ? authorityEnd : schemeEnd + 1;
+        int end = pathStart;
+        while (end < length && uri.charAt(end) != '?' && uri.charAt(end) != '#') {
+            end++;
+        }
+        pathEnd = end;
+    }
+
+    /**
+     * @param uri a transit URI
+     * @return parsed TransitUri, or null if the uri is null
+     */
+    public static TransitUri parse(String uri) {
+        return uri == null ? null : new TransitUri(uri);
+    }
+
+    private static boolean isAuthorityTerminator(char c) {
+        return c == '/' || c == '?' || c == '#';
+    }
+
+    private static int firstTerminator(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (isAuthorityTerminator(s.charAt(i))) {
+                return i;
+            }
+        }
+        return s.length();
+    }
+
+    /**
+     * @return the scheme, e.g. 'hdfs' or 'jdbc:hive2', or null if the URI doesn't have one
+     */
+    public String getScheme() {
+        return schemeEnd > 0 ? uri.substring(0, schemeEnd) : null;
+    }
+
+    /**
+     * @return the authority, that can be a comma separated list of hosts, or null if the URI doesn't have one
+     */
+    public String getAuthority() {
+        return authorityStart < 0 || authorityStart == authorityEnd ? null : uri.substring(authorityStart, authorityEnd);
+    }
+
+    /**
+     * @return the number of comma separated hosts in the authority
+     */
+    public int getHostCount() {
+        if (authorityStart < 0 || authorityStart == authorityEnd) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = authorityStart; i < authorityEnd; i++) {
+            if (uri.charAt(i) == ',') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the hostname at the index, without user info and port, or null if there's no such host
+     */
+    public String getHost(int index) {
+        final int start = hostStart(index);
+        if (start < 0) {
+            return null;
+        }
+        final int end = hostEnd(start);
+        final int portSeparator = portSeparator(start, end);
+        final int hostEnd = portSeparator < 0 ? end : portSeparator;
+        final String host = uri.substring(start, hostEnd).trim();
+        return host.isEmpty() ? null : host;
+    }
+
+    /**
+     * @return the first hostname, or null if the URI doesn't have a host
+     */
+    public String getHost() {
+        return getHost(0);
+    }
+
+    /**
+     * @return the port of the host at the index, or -1 if not specified
+     */
+    public int getPort(int index) {
+        final int start = hostStart(index);
+        if (start < 0) {
+            return -1;
+        }
+        final int end = hostEnd(start);
+        final int portSeparator = portSeparator(start, end);
+        if (portSeparator < 0 || portSeparator + 1 == end) {
+            return -1;
+        }
+        int port = 0;
+        for (int i = portSeparator + 1; i < end; i++) {
+            final char c = uri.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port;
+    }
+
+    private int hostStart(int index) {
+        if (authorityStart < 0 || index < 0) {
+            return -1;
+        }
+        int start = authorityStart;
+        for (int i = 0; i < index; i++) {
+            final int comma = uri.indexOf(',', start);
+            if (comma < 0 || comma >= authorityEnd) {
+                return -1;
+            }
+            start = comma + 1;
+        }
+        // Skip user info.
+        final int end = hostEnd(start);
+        final int at = uri.lastIndexOf('@', end - 1);
+        return at >= start ? at + 1 : start;
+    }
+
+    private int hostEnd(int start) {
+        final int comma = uri.indexOf(',', start);
+        return comma < 0 || comma >= authorityEnd ? authorityEnd : comma;
+    }
+
+    private int portSeparator(int start, int end) {
+        // Skip IPv6 address.
+        int from = start;
+        if (start < end && uri.charAt(start) == '[') {
+            final int closing = uri.indexOf(']', start);
+            from = closing < 0 || closing >= end ? end : closing;
+        }
+        final int colon = uri.indexOf(':', from);
+        return colon < 0 || colon >= end ? -1 : colon;
+    }
+
+    /**
+     * @return decoded path, e.g. '/user/nifi/fileA', or an empty string if the URI doesn't have a path
+     */
+    public String getPath() {
+        return decode(pathStart, pathEnd);
+    }
+
+    /**
+     * @return the decoded path segment at the index, e.g. 'tableA' at 0 and 'rowB' at 1 for 'hbase://zk0/tableA/rowB',
+     * or null if there's no such segment or the segment is empty
+     */
+    public String getPathSegment(int index) {
+        int start = pathStart;
+        for (int i = 0; i <= index; i++) {
+            if (start >= pathEnd || uri.charAt(start) != '/') {
+                return null;
+            }
+            start++;
+            if (i < index) {
+                final int next = uri.indexOf('/', start);
+                start = next < 0 || next >= pathEnd ? pathEnd : next;
+            }
+        }
+        final int next = uri.indexOf('/', start);
+        final int end = next < 0 || next >= pathEnd ? pathEnd : next;
+        return start == end ? null : decode(start, end);
+    }
+
+    private String decode(int start, int end) {
+        final int percent = uri.indexOf('%', start);
+        if (percent < 0 || percent >= end) {
+            return uri.substring(start, end);
+        }
+
+        final StringBuilder decoded = new StringBuilder(end - start);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int i = start;
+        while (i < end) {
+            final char c = uri.charAt(i);
+            if (c == '%' && i + 2 < end) {
+                final int high = Character.digit(uri.charAt(i + 1), 16);
+                final int low = Character.digit(uri.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    bytes.write((high << 4) + low);
+                    i += 3;
+                    continue;
+                }
+            }
+            if (bytes.size() > 0) {
+                decoded.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                bytes.reset();
+            }
+            decoded.append(c);
+            i++;
+        }
+        if (bytes.size() > 0) {
+            decoded.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        }
+        return decoded.toString();
+    }
+
+    @Override
+    public String toString() {
+        return uri;
+    }
+}
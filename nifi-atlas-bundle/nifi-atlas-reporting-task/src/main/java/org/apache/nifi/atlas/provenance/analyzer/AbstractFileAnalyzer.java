@@ -3,8 +3,6 @@ package org.apache.nifi.atlas.provenance.analyzer;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.AbstractNiFiProvenanceEventAnalyzer;
 
-import java.net.URI;
-
 import static org.apache.nifi.atlas.NiFiTypes.*;
 
 public abstract class AbstractFileAnalyzer extends AbstractNiFiProvenanceEventAnalyzer {
@@ -18,9 +16,9 @@ public abstract class AbstractFileAnalyzer extends AbstractNiFiProvenanceEventAn
     static final String ATTR_FILE_OWNER = "owner";
     static final String ATTR_IS_FILE = "isFile";
 
-    protected Referenceable createFileRef(String clusterName, URI transitUrl) {
+    protected Referenceable createFileRef(String clusterName, String path) {
         final Referenceable ref = new Referenceable(TYPE_FILE);
-        ref.set(ATTR_QUALIFIED_NAME, toQualifiedName(clusterName, transitUrl.getPath()));
+        ref.set(ATTR_QUALIFIED_NAME, toQualifiedName(clusterName, path));
         return ref;
     }
 
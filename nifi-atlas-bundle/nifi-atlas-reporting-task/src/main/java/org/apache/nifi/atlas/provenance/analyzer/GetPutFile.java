@@ -3,10 +3,9 @@ package org.apache.nifi.atlas.provenance.analyzer;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
+import org.apache.nifi.atlas.provenance.TransitUri;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 
-import java.net.URI;
-
 import static org.apache.nifi.atlas.NiFiTypes.*;
 
 /**
@@ -19,19 +18,28 @@ public class GetPutFile extends AbstractFileAnalyzer {
     @Override
     public DataSetRefs analyze(AnalysisContext context, ProvenanceEventRecord event) {
 
-        final URI uri = parseUri(event.getTransitUri());
-        final String clusterName = context.getClusterResolver().fromHostname(uri.getHost());
+        final TransitUri uri = parseTransitUri(event.getTransitUri());
+        final String clusterName = resolveClusterName(context, uri);
 
         final DataSetRefs refs = new DataSetRefs(event.getComponentId());
-        final Referenceable ref = createFileRef(clusterName, uri);
-
-        ref.set(ATTR_NAME, event.getAttribute("filename"));
-        ref.set(ATTR_PATH, event.getAttribute("path"));
-
-        ref.set(ATTR_IS_FILE, true);
-        ref.set(ATTR_FILE_SIZE, event.getFileSize());
-        ref.set(ATTR_FILE_GROUP, event.getAttribute("file.group"));
-        ref.set(ATTR_FILE_OWNER, event.getAttribute("file.owner"));
+        final String path = uri.getPath();
+        final String normalizedPath = normalizePath(context, path);
+        final Referenceable ref = createFileRef(clusterName, normalizedPath);
+
+        if (normalizedPath.equals(path)) {
+            ref.set(ATTR_NAME, event.getAttribute("filename"));
+            ref.set(ATTR_PATH, event.getAttribute("path"));
+
+            ref.set(ATTR_IS_FILE, true);
+            ref.set(ATTR_FILE_SIZE, event.getFileSize());
+            ref.set(ATTR_FILE_GROUP, event.getAttribute("file.group"));
+            ref.set(ATTR_FILE_OWNER, event.getAttribute("file.owner"));
+        } else {
+            // The DataSet represents multiple files, attributes of a particular file are not applicable.
+            ref.set(ATTR_NAME, normalizedPath);
+            ref.set(ATTR_PATH, normalizedPath);
+            ref.set(ATTR_IS_FILE, false);
+        }
 
         if (event.getComponentType().equals("GetFile")) {
             refs.addInput(ref);
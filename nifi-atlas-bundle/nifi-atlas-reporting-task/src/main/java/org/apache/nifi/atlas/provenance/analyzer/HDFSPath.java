@@ -4,9 +4,11 @@ import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.AbstractNiFiProvenanceEventAnalyzer;
 import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
+import org.apache.nifi.atlas.provenance.TransitUri;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 
-import java.net.URI;
+import java.util.Collections;
+import java.util.List;
 
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_CLUSTER_NAME;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
@@ -25,9 +27,9 @@ public class HDFSPath extends AbstractNiFiProvenanceEventAnalyzer {
     @Override
     public DataSetRefs analyze(AnalysisContext context, ProvenanceEventRecord event) {
         final Referenceable ref = new Referenceable(TYPE);
-        final URI uri = parseUri(event.getTransitUri());
-        final String clusterName = context.getClusterResolver().fromHostname(uri.getHost());
-        final String path = uri.getPath();
+        final TransitUri uri = parseTransitUri(event.getTransitUri());
+        final String clusterName = resolveClusterName(context, uri);
+        final String path = normalizePath(context, uri.getPath());
         ref.set(ATTR_NAME, path);
         ref.set(ATTR_PATH, path);
         ref.set(ATTR_CLUSTER_NAME, clusterName);
@@ -36,6 +38,11 @@ public class HDFSPath extends AbstractNiFiProvenanceEventAnalyzer {
         return singleDataSetRef(event.getComponentId(), event.getEventType(), ref);
     }
 
+    @Override
+    public List<String> cacheKeyAttributes() {
+        return Collections.emptyList();
+    }
+
     @Override
     public String targetTransitUriPattern() {
         return "^hdfs://.+$";
@@ -3,11 +3,13 @@ package org.apache.nifi.atlas.provenance.analyzer;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
+import org.apache.nifi.atlas.provenance.TransitUri;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.provenance.ProvenanceEventType;
 import org.apache.nifi.util.Tuple;
 
-import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import static org.apache.nifi.atlas.provenance.analyzer.DatabaseAnalyzerUtil.ATTR_INPUT_TABLES;
@@ -33,16 +35,15 @@ import static org.apache.nifi.atlas.provenance.analyzer.DatabaseAnalyzerUtil.par
  */
 public class Hive2JDBC extends AbstractHiveAnalyzer {
 
+    private static final List<String> CACHE_KEY_ATTRIBUTES = Arrays.asList(ATTR_INPUT_TABLES, ATTR_OUTPUT_TABLES);
+
     @Override
     public DataSetRefs analyze(AnalysisContext context, ProvenanceEventRecord event) {
 
-        // Replace the colon so that the schema in the URI can be parsed correctly.
-        final String transitUri = event.getTransitUri().replaceFirst("^jdbc:hive2", "jdbc-hive2");
-        final URI uri = parseUri(transitUri);
-        final String clusterName = context.getClusterResolver().fromHostname(uri.getHost());
+        final TransitUri uri = parseTransitUri(event.getTransitUri());
+        final String clusterName = resolveClusterName(context, uri);
         // TODO: what if uri does not contain database name??
-        // Remove the heading '/'
-        final String connectedDatabaseName = uri.getPath().substring(1);
+        final String connectedDatabaseName = toDatabaseName(uri.getPathSegment(0));
 
         final Set<Tuple<String, String>> inputTables = parseTableNames(connectedDatabaseName, event.getAttribute(ATTR_INPUT_TABLES));
         final Set<Tuple<String, String>> outputTables = parseTableNames(connectedDatabaseName, event.getAttribute(ATTR_OUTPUT_TABLES));
@@ -59,6 +60,17 @@ public class Hive2JDBC extends AbstractHiveAnalyzer {
         return refs;
     }
 
+    /**
+     * Remove session variables from a database path segment, such as 'databaseA;principal=hive/_HOST@EXAMPLE.COM'.
+     */
+    private String toDatabaseName(String pathSegment) {
+        if (pathSegment == null) {
+            return "";
+        }
+        final int semicolon = pathSegment.indexOf(';');
+        return semicolon < 0 ? pathSegment : pathSegment.substring(0, semicolon);
+    }
+
     private DataSetRefs getDatabaseRef(String componentId, ProvenanceEventType eventType,
                                        String clusterName, String databaseName) {
         final Referenceable ref = createDatabaseRef(clusterName, databaseName);
@@ -78,6 +90,11 @@ public class Hive2JDBC extends AbstractHiveAnalyzer {
         });
     }
 
+    @Override
+    public List<String> cacheKeyAttributes() {
+        return CACHE_KEY_ATTRIBUTES;
+    }
+
     @Override
     public String targetTransitUriPattern() {
         return "^jdbc:hive2://.+$";
@@ -4,12 +4,13 @@ import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.AbstractNiFiProvenanceEventAnalyzer;
 import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
+import org.apache.nifi.atlas.provenance.TransitUri;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.List;
 
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
@@ -27,30 +28,20 @@ public class KafkaTopic extends AbstractNiFiProvenanceEventAnalyzer {
     private static final String TYPE = "kafka_topic";
     private static final String ATTR_TOPIC = "topic";
 
-    // PLAINTEXT://0.example.com:6667,1.example.com:6667/topicA
-    private static final Pattern URI_PATTERN = Pattern.compile("^.+://([^/]+)/(.+)$");
-
     @Override
     public DataSetRefs analyze(AnalysisContext context, ProvenanceEventRecord event) {
         final Referenceable ref = new Referenceable(TYPE);
 
+        // PLAINTEXT://0.example.com:6667,1.example.com:6667/topicA
         final String transitUri = event.getTransitUri();
-        final Matcher uriMatcher = URI_PATTERN.matcher(transitUri);
-        if (!uriMatcher.matches()) {
+        final TransitUri uri = parseTransitUri(transitUri);
+        final String topicName = uri != null ? uri.getPathSegment(0) : null;
+        if (topicName == null || uri.getHostCount() == 0) {
             logger.warn("Unexpected transit URI: {}", new Object[]{transitUri});
             return null;
         }
 
-        String clusterName = null;
-        for (String broker : uriMatcher.group(1).split(",")) {
-            final String brokerHostname = broker.split(":")[0].trim();
-            clusterName = context.getClusterResolver().fromHostname(brokerHostname);
-            if (clusterName != null && !clusterName.isEmpty()) {
-                break;
-            }
-        }
-
-        final String topicName = uriMatcher.group(2);
+        final String clusterName = resolveClusterName(context, uri);
 
         ref.set(ATTR_NAME, topicName);
         ref.set(ATTR_TOPIC, topicName);
@@ -60,6 +51,11 @@ public class KafkaTopic extends AbstractNiFiProvenanceEventAnalyzer {
         return singleDataSetRef(event.getComponentId(), event.getEventType(), ref);
     }
 
+    @Override
+    public List<String> cacheKeyAttributes() {
+        return Collections.emptyList();
+    }
+
     @Override
     public String targetComponentTypePattern() {
         return "^(Publish|Consume)Kafka.*$";
@@ -7,9 +7,6 @@ import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
 import org.apache.nifi.controller.status.ConnectionStatus;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
-import org.apache.nifi.provenance.lineage.ComputeLineageResult;
-import org.apache.nifi.provenance.lineage.LineageNode;
-import org.apache.nifi.provenance.lineage.LineageNodeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +46,7 @@ public class NiFiRemotePort extends AbstractNiFiProvenanceEventAnalyzer {
 
         // For RemoteInputPort, need to find the previous component connected to this port,
         // which passed this particular FlowFile.
-        // That is only possible by calling lineage API.
+        // That is found from the FlowFile event index, or by calling lineage API.
         final DataSetRefs refs;
         if (isRemoteInputPort) {
             // There will eventually be an output port SEND that will set the NAME appropriately
@@ -59,13 +56,13 @@ public class NiFiRemotePort extends AbstractNiFiProvenanceEventAnalyzer {
             ref.set(ATTR_NAME, isRemoteInputPort ? connection.getDestinationName() : connection.getSourceName());
             ref.set(ATTR_QUALIFIED_NAME, event.getFlowFileUuid()); // event.getComponentId();
 
-            final ProvenanceEventRecord previousEvent = findPreviousProvenanceEvent(context, event);
-            if (previousEvent == null) {
+            final String previousComponentId = findPreviousComponentId(context, event);
+            if (previousComponentId == null) {
                 logger.warn("Previous event was not found: {}", new Object[]{event});
                 return null;
             }
 
-            refs = new DataSetRefs(previousEvent.getComponentId());
+            refs = new DataSetRefs(previousComponentId);
             refs.addOutput(ref);
         } else {
             String sourceFlowFileUuid = event.getSourceSystemFlowFileIdentifier().substring("urn:nifi:".length());
@@ -88,38 +85,9 @@ public class NiFiRemotePort extends AbstractNiFiProvenanceEventAnalyzer {
         return refs;
     }
 
-    private ProvenanceEventRecord findPreviousProvenanceEvent(AnalysisContext context, ProvenanceEventRecord event) {
-        final ComputeLineageResult lineage = context.queryLineage(event.getEventId());
-        if (lineage == null) {
-            logger.warn("Lineage was not found: {}", new Object[]{event});
-            return null;
-        }
-
-        // TODO: What if there is no previous node? Expired or remote_output to remote_input direct connection?
-        final LineageNode previousProvenanceNode = traverseLineage(lineage, String.valueOf(event.getEventId()));
-        if (previousProvenanceNode == null) {
-            logger.warn("Traverse lineage could not find any preceding provenance event node: {}", new Object[]{event});
-            return null;
-        }
-
-        final long previousEventId = Long.parseLong(previousProvenanceNode.getIdentifier());
-        return context.getProvenanceEvent(previousEventId);
-    }
-
-    /**
-     * Recursively traverse lineage graph until a preceding provenance event is found.
-     */
-    private LineageNode traverseLineage(ComputeLineageResult lineage, String eventId) {
-        final LineageNode previousNode = lineage.getEdges().stream()
-                .filter(edge -> edge.getDestination().getIdentifier().equals(String.valueOf(eventId)))
-                .findFirst().map(edge -> edge.getSource()).orElse(null);
-        if (previousNode == null) {
-            return null;
-        }
-        if (previousNode.getNodeType().equals(LineageNodeType.PROVENANCE_EVENT_NODE)) {
-            return previousNode;
-        }
-        return traverseLineage(lineage, previousNode.getIdentifier());
+    @Override
+    public boolean requiresPreviousEvent(ProvenanceEventRecord event) {
+        return "Remote Input Port".equals(event.getComponentType());
     }
 
     @Override
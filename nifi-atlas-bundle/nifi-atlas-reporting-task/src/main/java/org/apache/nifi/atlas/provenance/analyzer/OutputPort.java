@@ -7,9 +7,6 @@ import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
 import org.apache.nifi.controller.status.ConnectionStatus;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
-import org.apache.nifi.provenance.lineage.ComputeLineageResult;
-import org.apache.nifi.provenance.lineage.LineageNode;
-import org.apache.nifi.provenance.lineage.LineageNodeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,50 +42,21 @@ public class OutputPort extends AbstractFileAnalyzer {
         ref.set(ATTR_DESCRIPTION, "OutputPort -> " + event.getAttribute("filename"));
         ref.set(ATTR_QUALIFIED_NAME, event.getFlowFileUuid());
 
-        final ProvenanceEventRecord previousEvent = findPreviousProvenanceEvent(context, event);
-        if (previousEvent == null) {
+        final String previousComponentId = findPreviousComponentId(context, event);
+        if (previousComponentId == null) {
             logger.warn("Previous event was not found: {}", new Object[]{event});
             return null;
         }
 
-        final DataSetRefs refs = new DataSetRefs(previousEvent.getComponentId());
+        final DataSetRefs refs = new DataSetRefs(previousComponentId);
         refs.addOutput(ref);
         return refs;
     }
 
 
-    private ProvenanceEventRecord findPreviousProvenanceEvent(AnalysisContext context, ProvenanceEventRecord event) {
-        final ComputeLineageResult lineage = context.queryLineage(event.getEventId());
-        if (lineage == null) {
-            logger.warn("Lineage was not found: {}", new Object[]{event});
-            return null;
-        }
-
-        // TODO: What if there is no previous node? Expired or remote_output to remote_input direct connection?
-        final LineageNode previousProvenanceNode = traverseLineage(lineage, String.valueOf(event.getEventId()));
-        if (previousProvenanceNode == null) {
-            logger.warn("Traverse lineage could not find any preceding provenance event node: {}", new Object[]{event});
-            return null;
-        }
-
-        final long previousEventId = Long.parseLong(previousProvenanceNode.getIdentifier());
-        return context.getProvenanceEvent(previousEventId);
-    }
-
-    /**
-     * Recursively traverse lineage graph until a preceding provenance event is found.
-     */
-    private LineageNode traverseLineage(ComputeLineageResult lineage, String eventId) {
-        final LineageNode previousNode = lineage.getEdges().stream()
-                .filter(edge -> edge.getDestination().getIdentifier().equals(String.valueOf(eventId)))
-                .findFirst().map(edge -> edge.getSource()).orElse(null);
-        if (previousNode == null) {
-            return null;
-        }
-        if (previousNode.getNodeType().equals(LineageNodeType.PROVENANCE_EVENT_NODE)) {
-            return previousNode;
-        }
-        return traverseLineage(lineage, previousNode.getIdentifier());
+    @Override
+    public boolean requiresPreviousEvent(ProvenanceEventRecord event) {
+        return true;
     }
 
     @Override
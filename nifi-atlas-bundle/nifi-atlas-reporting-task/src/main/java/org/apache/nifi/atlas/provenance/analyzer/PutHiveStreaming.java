@@ -3,10 +3,12 @@ package org.apache.nifi.atlas.provenance.analyzer;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
+import org.apache.nifi.atlas.provenance.TransitUri;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.util.Tuple;
 
-import java.net.URI;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import static org.apache.nifi.atlas.provenance.analyzer.DatabaseAnalyzerUtil.ATTR_OUTPUT_TABLES;
@@ -22,8 +24,8 @@ public class PutHiveStreaming extends AbstractHiveAnalyzer {
     @Override
     public DataSetRefs analyze(AnalysisContext context, ProvenanceEventRecord event) {
 
-        final URI uri = parseUri(event.getTransitUri());
-        final String clusterName = context.getClusterResolver().fromHostname(uri.getHost());
+        final TransitUri uri = parseTransitUri(event.getTransitUri());
+        final String clusterName = resolveClusterName(context, uri);
         final Set<Tuple<String, String>> outputTables = parseTableNames(null, event.getAttribute(ATTR_OUTPUT_TABLES));
         if (outputTables.isEmpty()) {
             return null;
@@ -37,6 +39,11 @@ public class PutHiveStreaming extends AbstractHiveAnalyzer {
         return refs;
     }
 
+    @Override
+    public List<String> cacheKeyAttributes() {
+        return Collections.singletonList(ATTR_OUTPUT_TABLES);
+    }
+
     @Override
     public String targetComponentTypePattern() {
         return "^PutHiveStreaming$";
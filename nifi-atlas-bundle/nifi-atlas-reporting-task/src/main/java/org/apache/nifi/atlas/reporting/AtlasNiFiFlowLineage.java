@@ -21,14 +21,17 @@ import org.apache.atlas.model.instance.AtlasObjectId;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.atlas.typesystem.persistence.Id;
 import org.apache.commons.lang.StringUtils;
+import org.apache.nifi.annotation.behavior.DynamicProperties;
 import org.apache.nifi.annotation.behavior.DynamicProperty;
 import org.apache.nifi.annotation.behavior.Stateful;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.annotation.lifecycle.OnUnscheduled;
 import org.apache.nifi.atlas.*;
 import org.apache.nifi.atlas.provenance.*;
+import org.apache.nifi.atlas.resolver.CidrClusterResolver;
 import org.apache.nifi.atlas.resolver.ClusterResolver;
 import org.apache.nifi.atlas.resolver.ClusterResolvers;
 import org.apache.nifi.atlas.resolver.RegexClusterResolver;
@@ -39,6 +42,7 @@ import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.components.state.Scope;
 import org.apache.nifi.controller.ConfigurationContext;
 import org.apache.nifi.controller.status.ProcessorStatus;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
@@ -47,7 +51,7 @@ import org.apache.nifi.provenance.ProvenanceRepository;
 import org.apache.nifi.reporting.AbstractReportingTask;
 import org.apache.nifi.reporting.EventAccess;
 import org.apache.nifi.reporting.ReportingContext;
-import org.apache.nifi.reporting.util.provenance.ProvenanceEventConsumer;
+import org.apache.nifi.reporting.Severity;
 import org.apache.nifi.ssl.SSLContextService;
 import org.apache.nifi.web.api.entity.ClusterEntity;
 
@@ -61,13 +65,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -81,8 +91,15 @@ import static org.apache.nifi.reporting.util.provenance.ProvenanceEventConsumer.
         " By reporting flow information to Atlas, an end-to-end Process and DataSet lineage such as across NiFi environments and other systems" +
         " connected by technologies, for example NiFi Site-to-Site, Kafka topic or Hive tables." +
         " There are limitations and required configurations for both NiFi and Atlas. See 'Additional Details' for further description.")
-@Stateful(scopes = Scope.LOCAL, description = "Stores the Reporting Task's last event Id so that on restart the task knows where it left off.")
-@DynamicProperty(name = "hostnamePattern.<ClusterName>", value = "hostname Regex patterns", description = RegexClusterResolver.PATTERN_PROPERTY_PREFIX_DESC)
+@Stateful(scopes = {Scope.LOCAL, Scope.CLUSTER}, description = "Stores the Reporting Task's last event Id so that on restart the task knows where it left off." +
+        " In a NiFi cluster, the node publishing the NiFi flow structure, its lease and the published flow structure version are stored in cluster state.")
+@DynamicProperties({
+        @DynamicProperty(name = "hostnamePattern.<ClusterName>", value = "hostname Regex patterns", description = RegexClusterResolver.PATTERN_PROPERTY_PREFIX_DESC),
+        @DynamicProperty(name = CidrClusterResolver.CIDR_PROPERTY_PREFIX + "<ClusterName>", value = "CIDR ranges", description = CidrClusterResolver.CIDR_PROPERTY_PREFIX_DESC),
+        @DynamicProperty(name = CidrClusterResolver.SUFFIX_PROPERTY_PREFIX + "<ClusterName>", value = "hostname suffixes", description = CidrClusterResolver.SUFFIX_PROPERTY_PREFIX_DESC),
+        @DynamicProperty(name = LineageSampler.RATE_PROPERTY_PREFIX + "<ComponentId>", value = "Sampling rate between 0.0 and 1.0",
+                description = LineageSampler.RATE_PROPERTY_PREFIX_DESC)
+})
 public class AtlasNiFiFlowLineage extends AbstractReportingTask {
 
     static final PropertyDescriptor ATLAS_URLS = new PropertyDescriptor.Builder()
@@ -137,11 +154,304 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
     public static final PropertyDescriptor NIFI_LINEAGE_STRATEGY = new PropertyDescriptor.Builder()
             .name("nifi-lineage-strategy")
             .displayName("NiFi Lineage Strategy")
-            .description("Specifies what granularity the data should be sent to Atlas.  By Flow Path or by Unique File.")
+            .description("Specifies what granularity the data should be sent to Atlas.  By Flow Path or by Unique File." +
+                    " 'ByTimeWindow' aggregates lineage of each Flow Path into time windows, see 'NiFi Lineage Window Size' property.")
             .required(true)
             .defaultValue("ByFlowPath")
             .expressionLanguageSupported(false)
-            .allowableValues("ByFlowPath", "ByFlowFile")
+            .allowableValues("ByFlowPath", "ByFlowFile", "ByTimeWindow")
+            .build();
+
+    static final PropertyDescriptor NIFI_LINEAGE_WINDOW_SIZE = new PropertyDescriptor.Builder()
+            .name("nifi-lineage-window-size")
+            .displayName("NiFi Lineage Window Size")
+            .description("Used with 'ByTimeWindow' lineage strategy. Provenance events of a Flow Path are aggregated into" +
+                    " a 'nifi_lineage_window' entity per this time window, based on event time." +
+                    " Each window entity has input and output DataSets, number of FlowFiles and total bytes within the window.")
+            .required(true)
+            .defaultValue("5 mins")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor NIFI_LINEAGE_SAMPLING_RATE = new PropertyDescriptor.Builder()
+            .name("nifi-lineage-sampling-rate")
+            .displayName("NiFi Lineage Sampling Rate")
+            .description("Used with 'ByFlowFile' lineage strategy. A rate between 0.0 and 1.0 of FlowFiles to report lineage for." +
+                    " Whether a FlowFile is sampled is decided by hashing the UUID of its root FlowFile," +
+                    " so that cloned children are reported together with their parents." +
+                    " The rate can be overridden per processor, flow path or process group with '" + LineageSampler.RATE_PROPERTY_PREFIX + "<ID>' dynamic properties.")
+            .required(true)
+            .defaultValue("1.0")
+            .expressionLanguageSupported(false)
+            .addValidator(LineageSampler.RATE_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor NIFI_LINEAGE_CLONE_FAN_OUT_THRESHOLD = new PropertyDescriptor.Builder()
+            .name("nifi-lineage-clone-fan-out-threshold")
+            .displayName("NiFi Lineage Clone Fan-out Threshold")
+            .description("Used with 'ByFlowFile' lineage strategy. If a CLONE event has more children than this threshold," +
+                    " a single 'nifi_data' entity represents all the children, instead of creating one per child.")
+            .required(true)
+            .defaultValue("1000")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor LINEAGE_DEGRADATION_EVENT_LAG = new PropertyDescriptor.Builder()
+            .name("lineage-degradation-event-lag")
+            .displayName("Lineage Degradation Event Lag")
+            .description("Number of provenance events behind the latest event to start degrading lineage fidelity," +
+                    " so that lineage is kept current rather than complete when this task falls behind." +
+                    " Lineage is degraded to sampled lineage at this lag, lineage by flow path at twice this lag," +
+                    " and flow structure only at four times this lag. Sampled and flow path tiers apply only to 'ByFlowFile' strategy." +
+                    " Full lineage is restored by one tier at a time once the lag drops below half of the current tier's lag." +
+                    " A bulletin is emitted on each switch. If not specified, event lag is not used to degrade lineage.")
+            .required(false)
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor LINEAGE_DEGRADATION_EVENT_AGE = new PropertyDescriptor.Builder()
+            .name("lineage-degradation-event-age")
+            .displayName("Lineage Degradation Event Age")
+            .description("Age of the oldest unprocessed provenance event to start degrading lineage fidelity." +
+                    " Tiers are switched in the same way as '" + LINEAGE_DEGRADATION_EVENT_LAG.getDisplayName() + "'," +
+                    " whichever is more behind. If not specified, event age is not used to degrade lineage.")
+            .required(false)
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor LINEAGE_DEGRADATION_SAMPLING_RATE = new PropertyDescriptor.Builder()
+            .name("lineage-degradation-sampling-rate")
+            .displayName("Lineage Degradation Sampling Rate")
+            .description("Sampling rate between 0.0 and 1.0 used while lineage is degraded to sampled lineage.")
+            .required(true)
+            .defaultValue("0.1")
+            .expressionLanguageSupported(false)
+            .addValidator(LineageSampler.RATE_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor NIFI_LINEAGE_DELIVERY = new PropertyDescriptor.Builder()
+            .name("nifi-lineage-delivery")
+            .displayName("NiFi Lineage Delivery")
+            .description("Specifies how lineage derived from provenance events is sent to Atlas." +
+                    " 'KafkaHook' publishes Atlas hook notification messages to the Atlas Kafka topic." +
+                    " 'AtlasRest' sends entities with Atlas V2 bulk entity REST API, which does not require the Atlas Kafka hook." +
+                    " With 'AtlasRest', if Atlas fails to store a batch, the batch is retried at the next execution.")
+            .required(true)
+            .defaultValue("KafkaHook")
+            .expressionLanguageSupported(false)
+            .allowableValues("KafkaHook", "AtlasRest")
+            .build();
+
+    static final PropertyDescriptor ATLAS_REST_BATCH_SIZE = new PropertyDescriptor.Builder()
+            .name("atlas-rest-batch-size")
+            .displayName("Atlas REST Batch Size")
+            .description("Max number of entities sent with a single Atlas bulk entity REST API request." +
+                    " Only used when 'NiFi Lineage Delivery' is 'AtlasRest'.")
+            .required(true)
+            .defaultValue("1000")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor FLOWFILE_EVENT_INDEX_SIZE = new PropertyDescriptor.Builder()
+            .name("flowfile-event-index-size")
+            .displayName("FlowFile Event Index Size")
+            .description("Max number of FlowFiles to remember their most recent provenance event." +
+                    " The index is used to find the component which passed a FlowFile to an Output Port or a Remote Input Port," +
+                    " without computing lineage with the provenance repository. Lineage is computed only if a FlowFile is not in the index.")
+            .required(true)
+            .defaultValue("100000")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor FLOWFILE_EVENT_INDEX_FILE = new PropertyDescriptor.Builder()
+            .name("flowfile-event-index-file")
+            .displayName("FlowFile Event Index File")
+            .description("If specified, the FlowFile event index is saved to this file when the reporting task is stopped," +
+                    " and loaded when it is started, so that the index survives restarts.")
+            .required(false)
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor PUBLISHED_EVENT_IDS_FILE = new PropertyDescriptor.Builder()
+            .name("published-event-ids-file")
+            .displayName("Published Event IDs File")
+            .description("If specified, ids of provenance events published to Atlas are recorded to this file," +
+                    " so that events replayed after a failure, such as a crash before the last event id is stored, are not published again." +
+                    " The latest " + PublishedEventIds.DEFAULT_CAPACITY + " event ids are kept in a memory-mapped file of "
+                    + (PublishedEventIds.DEFAULT_CAPACITY / 8 / 1024 / 1024) + " MB.")
+            .required(false)
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor DATASET_PATH_NORMALIZATION_RULES = new PropertyDescriptor.Builder()
+            .name("dataset-path-normalization-rules")
+            .displayName("DataSet Path Normalization Rules")
+            .description("Rules to normalize file and HDFS paths before creating DataSets, so that partitioned directories" +
+                    " or per-file names are represented as a single DataSet. Each line is '<pattern> => <template>'." +
+                    " The pattern is a regular expression, or a glob if prefixed with 'glob:' where each wildcard captures a group." +
+                    " The template can refer to captured groups with '$1', '$2' ... The first rule matching a whole path is applied." +
+                    " E.g. '^(/data/events)/dt=[^/]+/.*$ => $1' normalizes '/data/events/dt=2026-10-17/part-0001' to '/data/events'.")
+            .required(false)
+            .expressionLanguageSupported(false)
+            .addValidator(PathNormalizer.RULES_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor DATASET_REFS_CACHE_SIZE = new PropertyDescriptor.Builder()
+            .name("dataset-refs-cache-size")
+            .displayName("DataSet Reference Cache Size")
+            .description("Max number of analyzed DataSets to cache, keyed by transit URI and relevant attributes," +
+                    " so that provenance events of the same Kafka topic, HDFS path or Hive table are analyzed only once." +
+                    " Set 0 to disable the cache.")
+            .required(true)
+            .defaultValue("10000")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor DATASET_REFS_CACHE_TTL = new PropertyDescriptor.Builder()
+            .name("dataset-refs-cache-ttl")
+            .displayName("DataSet Reference Cache TTL")
+            .description("How long an analyzed DataSet is cached. The cache is also cleared when the reporting task is restarted.")
+            .required(true)
+            .defaultValue("10 mins")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor DATASET_REGISTRY_SERVICE = new PropertyDescriptor.Builder()
+            .name("dataset-registry-service")
+            .displayName("DataSet Registry Service")
+            .description("A Distributed Map Cache Client used to share DataSets and flow path edges already sent to Atlas" +
+                    " among NiFi cluster nodes, so that each node does not send the same entities again." +
+                    " If not specified, every node sends all DataSets it finds.")
+            .required(false)
+            .identifiesControllerService(DistributedMapCacheClient.class)
+            .build();
+
+    static final PropertyDescriptor DATASET_REGISTRY_TTL = new PropertyDescriptor.Builder()
+            .name("dataset-registry-ttl")
+            .displayName("DataSet Registry TTL")
+            .description("How long a DataSet or a flow path edge registered to 'DataSet Registry Service' is considered as sent to Atlas." +
+                    " Once expired, it is sent again by a node and registered with the current time," +
+                    " so that entities lost or deleted in Atlas are eventually reported again.")
+            .required(true)
+            .defaultValue("1 hour")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor PROVENANCE_EVENT_TRACE_RATE = new PropertyDescriptor.Builder()
+            .name("provenance-event-trace-rate")
+            .displayName("Provenance Event Trace Rate")
+            .description("A rate between 0.0 and 1.0 of analyzed provenance events to trace." +
+                    " Events are traced only if DEBUG level is enabled for '" + EventTracer.class.getName() + "' logger." +
+                    " Recently traced events are logged with the summary of a batch when the batch had warnings.")
+            .required(true)
+            .defaultValue("0.01")
+            .expressionLanguageSupported(false)
+            .addValidator(LineageSampler.RATE_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor LINEAGE_QUERY_TIMEOUT = new PropertyDescriptor.Builder()
+            .name("lineage-query-timeout")
+            .displayName("Lineage Query Timeout")
+            .description("Max time to wait for a single provenance lineage computation," +
+                    " used to find the component which passed a FlowFile to an Output Port or a Remote Input Port" +
+                    " when the FlowFile is not in the FlowFile event index.")
+            .required(true)
+            .defaultValue("10 secs")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor LINEAGE_QUERY_BATCH_TIMEOUT = new PropertyDescriptor.Builder()
+            .name("lineage-query-batch-timeout")
+            .displayName("Lineage Query Batch Timeout")
+            .description("Max total time to wait for provenance lineage computations within a batch of provenance events." +
+                    " Once exceeded, remaining events those require lineage computation are skipped.")
+            .required(true)
+            .defaultValue("1 min")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor LINEAGE_QUERY_CONCURRENCY = new PropertyDescriptor.Builder()
+            .name("lineage-query-concurrency")
+            .displayName("Lineage Query Concurrency")
+            .description("Max number of provenance lineage computations processed in parallel." +
+                    " Lineage computations for a batch of provenance events are submitted in advance and resolved together.")
+            .required(true)
+            .defaultValue("4")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor TRIGGER_TIME_BUDGET = new PropertyDescriptor.Builder()
+            .name("trigger-time-budget")
+            .displayName("Trigger Time Budget")
+            .description("Max time to spend reporting each time this reporting task runs." +
+                    " Once exceeded, provenance events are checkpointed at the last published event," +
+                    " and remaining events are reported the next time this task runs." +
+                    " When this is set, events are published in small slices and at least one slice is published each time." +
+                    " If not specified, all available provenance events are reported each time.")
+            .required(false)
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor PROVENANCE_CATCH_UP_THRESHOLD = new PropertyDescriptor.Builder()
+            .name("provenance-catch-up-threshold")
+            .displayName("Provenance Catch-up Threshold")
+            .description("Number of provenance events behind the latest event to jump to the latest event," +
+                    " so that current lineage is reported first, e.g. after Atlas has been unavailable for a long time." +
+                    " Skipped events are recorded in state as a gap, and back-filled after new events are reported each time this task runs," +
+                    " at least a batch at a time. If the trigger time budget is set, new events are reported within 75% of the budget" +
+                    " while there is a gap, and the gap is back-filled until the budget is exceeded." +
+                    " The task does not jump again until the gap is back-filled." +
+                    " If not specified, events are always reported in order.")
+            .required(false)
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor PROVENANCE_CONSUMPTION_MODE = new PropertyDescriptor.Builder()
+            .name("provenance-consumption-mode")
+            .displayName("Provenance Consumption Mode")
+            .description("Specifies how provenance events are read. 'Scan' reads all provenance events and filters events to report." +
+                    " 'IndexedSearch' searches the provenance repository index for event types to report (CREATE, FETCH, RECEIVE, SEND and CLONE)" +
+                    " in each range of event ids, so that other events are not read. 'EventType' has to be an indexed field of the provenance repository." +
+                    " Ranges containing events those may not have been indexed yet are read entirely, as well as when a search fails" +
+                    " or takes longer than '" + LINEAGE_QUERY_TIMEOUT.getDisplayName() + "'." +
+                    " As events are searched by event time, an event recorded a long time before it was stored in the repository, e.g. by a long running session," +
+                    " can be missed. As events between them are not read, the FlowFile event index is not used in this mode," +
+                    " and lineage is computed for each event whose analysis needs the preceding event, e.g. of remote and root group ports.")
+            .required(true)
+            .defaultValue("Scan")
+            .expressionLanguageSupported(false)
+            .allowableValues("Scan", "IndexedSearch")
+            .build();
+
+    static final PropertyDescriptor FLOW_STRUCTURE_LEASE_DURATION = new PropertyDescriptor.Builder()
+            .name("flow-structure-lease-duration")
+            .displayName("Flow Structure Lease Duration")
+            .description("In a NiFi cluster, every node reports lineage of its own provenance events," +
+                    " but only the node holding a lease in cluster state registers the NiFi flow structure to Atlas." +
+                    " The lease is renewed each time the reporting task runs on the node." +
+                    " If the node stops renewing the lease, another node takes it over once this duration has passed." +
+                    " It should be longer than the run schedule of this reporting task." +
+                    " The flow structure is registered only when it has changed since the last registration.")
+            .required(true)
+            .defaultValue("10 mins")
+            .expressionLanguageSupported(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
             .build();
 
     static final PropertyDescriptor LOCAL_HOSTNAME = new PropertyDescriptor.Builder()
@@ -184,15 +494,41 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
             .build();
 
     private static final String ATLAS_PROPERTIES_FILENAME = "atlas-application.properties";
+    private static final int EVENT_TRACE_RING_BUFFER_SIZE = 256;
+    private static final int MAX_SAMPLED_CLONE_CHILDREN = 100_000;
+    private static final int DATASET_REGISTRY_NEAR_CACHE_SIZE = 100_000;
+    private static final int TIME_BUDGET_SLICE_SIZE = 100;
+    private static final double GAP_TIME_BUDGET_RATIO = 0.25;
+    private static final Set<ProvenanceEventType> TARGET_EVENT_TYPES = EnumSet.of(CREATE, FETCH, RECEIVE, SEND, CLONE);
     private final ServiceLoader<ClusterResolver> clusterResolverLoader = ServiceLoader.load(ClusterResolver.class);
     private volatile NiFiAtlasClient atlasClient;
     private volatile Properties atlasProperties;
     private volatile boolean isTypeDefCreated = false;
 
-    private volatile ProvenanceEventConsumer consumer;
+    private volatile ResumableEventConsumer consumer;
     private volatile ClusterResolvers clusterResolvers;
     private volatile NiFIAtlasHook nifiAtlasHook;
+    private volatile NiFiApiClient nifiApiClient;
     private volatile LineageStrategy lineageStrategy;
+    private volatile LineageEventProcessor lineageEventProcessor;
+    private volatile LineageDegradationPolicy degradationPolicy;
+    private volatile ByFileLineageStrategy byFileLineageStrategy;
+    private volatile ByWindowLineageStrategy byWindowLineageStrategy;
+    private volatile LineageSampler configuredSampler;
+    private volatile LineageSampler degradedSampler;
+    private volatile ByPathLineageStrategy degradedByPathStrategy;
+    private volatile FlowFileEventIndex flowFileEventIndex;
+    private volatile File flowFileEventIndexFile;
+    private volatile boolean indexedSearch;
+    private volatile PublishedEventIds publishedEventIds;
+    private volatile ExecutorService lineageQueryExecutor;
+    private volatile EventTracer eventTracer;
+    private volatile PathNormalizer pathNormalizer;
+    private volatile long lineageQueryTimeoutMillis;
+    private volatile long lineageQueryBatchTimeoutMillis;
+    private volatile long flowStructureLeaseMillis;
+    private volatile long triggerTimeBudgetMillis;
+    private volatile FlowStructureCoordinator flowStructureCoordinator;
 
     @Override
     protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
@@ -204,6 +540,30 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
         properties.add(ATLAS_NIFI_URL);
         properties.add(LOCAL_HOSTNAME);
         properties.add(NIFI_LINEAGE_STRATEGY);
+        properties.add(NIFI_LINEAGE_WINDOW_SIZE);
+        properties.add(NIFI_LINEAGE_SAMPLING_RATE);
+        properties.add(NIFI_LINEAGE_CLONE_FAN_OUT_THRESHOLD);
+        properties.add(LINEAGE_DEGRADATION_EVENT_LAG);
+        properties.add(LINEAGE_DEGRADATION_EVENT_AGE);
+        properties.add(LINEAGE_DEGRADATION_SAMPLING_RATE);
+        properties.add(NIFI_LINEAGE_DELIVERY);
+        properties.add(ATLAS_REST_BATCH_SIZE);
+        properties.add(FLOWFILE_EVENT_INDEX_SIZE);
+        properties.add(FLOWFILE_EVENT_INDEX_FILE);
+        properties.add(PUBLISHED_EVENT_IDS_FILE);
+        properties.add(DATASET_PATH_NORMALIZATION_RULES);
+        properties.add(DATASET_REFS_CACHE_SIZE);
+        properties.add(DATASET_REFS_CACHE_TTL);
+        properties.add(DATASET_REGISTRY_SERVICE);
+        properties.add(DATASET_REGISTRY_TTL);
+        properties.add(PROVENANCE_EVENT_TRACE_RATE);
+        properties.add(LINEAGE_QUERY_TIMEOUT);
+        properties.add(LINEAGE_QUERY_BATCH_TIMEOUT);
+        properties.add(LINEAGE_QUERY_CONCURRENCY);
+        properties.add(FLOW_STRUCTURE_LEASE_DURATION);
+        properties.add(TRIGGER_TIME_BUDGET);
+        properties.add(PROVENANCE_CATCH_UP_THRESHOLD);
+        properties.add(PROVENANCE_CONSUMPTION_MODE);
         properties.add(NIFI_API_PORT);
         properties.add(NIFI_API_SECURE);
         properties.add(SSL_CONTEXT);
@@ -214,6 +574,16 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
 
     @Override
     protected PropertyDescriptor getSupportedDynamicPropertyDescriptor(String propertyDescriptorName) {
+        if (propertyDescriptorName.startsWith(LineageSampler.RATE_PROPERTY_PREFIX)) {
+            return new PropertyDescriptor
+                    .Builder().name(propertyDescriptorName)
+                    .description(LineageSampler.RATE_PROPERTY_PREFIX_DESC)
+                    .addValidator(LineageSampler.RATE_VALIDATOR)
+                    .expressionLanguageSupported(false)
+                    .dynamic(true)
+                    .sensitive(false)
+                    .build();
+        }
         for (ClusterResolver resolver : clusterResolverLoader) {
             final PropertyDescriptor propertyDescriptor = resolver.getSupportedDynamicPropertyDescriptor(propertyDescriptorName);
             if(propertyDescriptor != null) {
@@ -256,9 +626,129 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
         // initAtlasClient has to be done first as it loads AtlasProperty.
         initAtlasClient(context);
         initProvenanceConsumer(context);
+        initNiFiApiClient(context);
 
+        final PathNormalizer normalizer = PathNormalizer.parse(context.getProperty(DATASET_PATH_NORMALIZATION_RULES).getValue());
+        pathNormalizer = normalizer.isEmpty() ? null : normalizer;
+
+        final PropertyValue triggerTimeBudget = context.getProperty(TRIGGER_TIME_BUDGET);
+        triggerTimeBudgetMillis = triggerTimeBudget.isSet() ? triggerTimeBudget.asTimePeriod(TimeUnit.MILLISECONDS) : 0;
+        flowStructureLeaseMillis = context.getProperty(FLOW_STRUCTURE_LEASE_DURATION).asTimePeriod(TimeUnit.MILLISECONDS);
+        flowStructureCoordinator = null;
+
+        eventTracer = new EventTracer(context.getProperty(PROVENANCE_EVENT_TRACE_RATE).asDouble(), EVENT_TRACE_RING_BUFFER_SIZE);
+
+        final AbstractLineageStrategy lineageStrategyImpl;
+        byFileLineageStrategy = null;
+        byWindowLineageStrategy = null;
+        configuredSampler = null;
         String strategy = context.getProperty(NIFI_LINEAGE_STRATEGY).getValue();
-        lineageStrategy = "ByFlowFile".equals(strategy) ? LineageStrategy.BY_FILE : LineageStrategy.BY_PATH;
+        switch (strategy) {
+            case "ByFlowFile":
+                lineageStrategy = LineageStrategy.BY_FILE;
+                final ByFileLineageStrategy byFileLineageStrategy = new ByFileLineageStrategy(getLogger(), nifiAtlasHook);
+                final LineageSampler sampler = LineageSampler.fromProperties(context.getProperty(NIFI_LINEAGE_SAMPLING_RATE).asDouble(),
+                        context.getAllProperties(), MAX_SAMPLED_CLONE_CHILDREN);
+                if (sampler.isEnabled()) {
+                    byFileLineageStrategy.setSampler(sampler);
+                    configuredSampler = sampler;
+                }
+                byFileLineageStrategy.setCloneFanOutThreshold(context.getProperty(NIFI_LINEAGE_CLONE_FAN_OUT_THRESHOLD).asInteger());
+                lineageStrategyImpl = byFileLineageStrategy;
+                this.byFileLineageStrategy = byFileLineageStrategy;
+                break;
+            case "ByTimeWindow":
+                lineageStrategy = LineageStrategy.BY_WINDOW;
+                final ByWindowLineageStrategy byWindowLineageStrategy = new ByWindowLineageStrategy(getLogger(), nifiAtlasHook,
+                        context.getProperty(NIFI_LINEAGE_WINDOW_SIZE).asTimePeriod(TimeUnit.MILLISECONDS));
+                lineageStrategyImpl = byWindowLineageStrategy;
+                this.byWindowLineageStrategy = byWindowLineageStrategy;
+                break;
+            default:
+                lineageStrategy = LineageStrategy.BY_PATH;
+                lineageStrategyImpl = new ByPathLineageStrategy(getLogger(), nifiAtlasHook);
+        }
+        lineageStrategyImpl.setEventTracer(eventTracer);
+        lineageStrategyImpl.setPublishedEventIds(publishedEventIds);
+        final int dataSetRefsCacheSize = context.getProperty(DATASET_REFS_CACHE_SIZE).asInteger();
+        final DataSetRefsCache dataSetRefsCache = dataSetRefsCacheSize > 0 ? new DataSetRefsCache(dataSetRefsCacheSize,
+                context.getProperty(DATASET_REFS_CACHE_TTL).asTimePeriod(TimeUnit.MILLISECONDS)) : null;
+        if (dataSetRefsCache != null) {
+            lineageStrategyImpl.setDataSetRefsCache(dataSetRefsCache);
+        }
+        lineageEventProcessor = lineageStrategyImpl;
+
+        initDegradationPolicy(context, dataSetRefsCache);
+    }
+
+    private void initDegradationPolicy(ConfigurationContext context, DataSetRefsCache dataSetRefsCache) {
+        final PropertyValue eventLag = context.getProperty(LINEAGE_DEGRADATION_EVENT_LAG);
+        final PropertyValue eventAge = context.getProperty(LINEAGE_DEGRADATION_EVENT_AGE);
+        degradedSampler = null;
+        degradedByPathStrategy = null;
+        if (!eventLag.isSet() && !eventAge.isSet()) {
+            degradationPolicy = null;
+            return;
+        }
+        degradationPolicy = new LineageDegradationPolicy(eventLag.isSet() ? eventLag.asLong() : 0,
+                eventAge.isSet() ? eventAge.asTimePeriod(TimeUnit.MILLISECONDS) : 0);
+
+        if (lineageStrategy == LineageStrategy.BY_FILE) {
+            final double degradedRate = context.getProperty(LINEAGE_DEGRADATION_SAMPLING_RATE).asDouble();
+            // Share tracked cloned children with the configured sampler, so that chains are not split when switched.
+            degradedSampler = configuredSampler != null
+                    ? new LineageSampler(degradedRate, Collections.emptyMap(), configuredSampler)
+                    : new LineageSampler(degradedRate, Collections.emptyMap(), MAX_SAMPLED_CLONE_CHILDREN);
+            final ByPathLineageStrategy byPathStrategy = new ByPathLineageStrategy(getLogger(), nifiAtlasHook);
+            byPathStrategy.setEdgeDedupe(true);
+            byPathStrategy.setEventTracer(eventTracer);
+            byPathStrategy.setPublishedEventIds(publishedEventIds);
+            if (dataSetRefsCache != null) {
+                byPathStrategy.setDataSetRefsCache(dataSetRefsCache);
+            }
+            degradedByPathStrategy = byPathStrategy;
+        }
+    }
+
+    /**
+     * Update the lineage degradation tier with the lag of the oldest event in the batch,
+     * and emit a bulletin if the tier has changed.
+     * @return the processor to report lineage of the events, or null to report only the flow structure
+     */
+    private LineageEventProcessor selectLineageEventProcessor(ReportingContext context, List<ProvenanceEventRecord> events) {
+        final LineageDegradationPolicy policy = degradationPolicy;
+        if (policy == null) {
+            return lineageEventProcessor;
+        }
+
+        final Long maxEventId = context.getEventAccess().getProvenanceRepository().getMaxEventId();
+        final ProvenanceEventRecord oldestEvent = events.get(0);
+        final long eventLag = maxEventId != null ? maxEventId - oldestEvent.getEventId() : 0;
+        final long eventAgeMillis = System.currentTimeMillis() - oldestEvent.getEventTime();
+        final LineageDegradationPolicy.Tier previous = policy.getTier();
+        if (policy.update(eventLag, eventAgeMillis)) {
+            final LineageDegradationPolicy.Tier tier = policy.getTier();
+            final boolean degraded = tier.ordinal() > previous.ordinal();
+            final String message = String.format("Lineage fidelity is %s from '%s' to '%s'," +
+                            " as provenance events are %d events and %d ms behind.",
+                    degraded ? "degraded" : "restored", previous.getDescription(), tier.getDescription(), eventLag, eventAgeMillis);
+            getLogger().info(message);
+            context.getBulletinRepository().addBulletin(context.createBulletin("Atlas Lineage",
+                    degraded ? Severity.WARNING : Severity.INFO, message));
+
+            if (byFileLineageStrategy != null) {
+                byFileLineageStrategy.setSampler(tier == LineageDegradationPolicy.Tier.SAMPLED ? degradedSampler : configuredSampler);
+            }
+        }
+
+        switch (policy.getTier()) {
+            case BY_PATH:
+                return degradedByPathStrategy != null ? degradedByPathStrategy : lineageEventProcessor;
+            case FLOW_STRUCTURE_ONLY:
+                return null;
+            default:
+                return lineageEventProcessor;
+        }
     }
 
 
@@ -297,14 +787,44 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
                     " Make sure 'atlas-application.properties' is in the directory specified with %s" +
                     " or under root classpath if not specified.", e, ATLAS_CONF_DIR.getDisplayName()), e);
         }
+        atlasClient.setTrafficShaper(AtlasTrafficShaper.fromProperties(atlasProperties));
+
+    }
+
+    /**
+     * Create a NiFi API client once, so that pooled connections, the SSLContext and cached responses
+     * are reused until the reporting task is stopped. The publisher of the NiFi flow structure also uses it
+     * to read root group port comments, those are not available from status.
+     */
+    private void initNiFiApiClient(final ConfigurationContext context) {
+        final Boolean isNiFiApiSecure = context.getProperty(NIFI_API_SECURE).evaluateAttributeExpressions().asBoolean();
+        final Integer nifiApiPort = context.getProperty(NIFI_API_PORT).evaluateAttributeExpressions().asInteger();
+        final String localhost = context.getProperty(LOCAL_HOSTNAME).evaluateAttributeExpressions().getValue();
+        final String nifiBaseUrl = (isNiFiApiSecure ? "https" : "http") + "://" + localhost + ":" + nifiApiPort + "/";
+        final NiFiApiClient nifiClient = new NiFiApiClient(nifiBaseUrl);
 
+        if (isNiFiApiSecure) {
+            final SSLContextService sslContextService = context.getProperty(SSL_CONTEXT).asControllerService(SSLContextService.class);
+            final SSLContext sslContext = sslContextService.createSSLContext(SSLContextService.ClientAuth.REQUIRED);
+            nifiClient.setSslContext(sslContext);
+        }
+        nifiApiClient = nifiClient;
     }
 
     private void initProvenanceConsumer(final ConfigurationContext context) throws IOException {
-        consumer = new ProvenanceEventConsumer();
+        consumer = new ResumableEventConsumer();
         consumer.setStartPositionValue(context.getProperty(PROVENANCE_START_POSITION).getValue());
         consumer.setBatchSize(context.getProperty(PROVENANCE_BATCH_SIZE).asInteger());
-        consumer.addTargetEventType(CREATE, FETCH, RECEIVE, SEND, CLONE);
+        final PropertyValue catchUpThreshold = context.getProperty(PROVENANCE_CATCH_UP_THRESHOLD);
+        consumer.setCatchUpThreshold(catchUpThreshold.isSet() ? catchUpThreshold.asLong() : 0);
+        // All event types are consumed to index FlowFile events. Target event types are filtered when events are analyzed.
+        // With indexed search, only target event types are consumed. As events between them, e.g. ROUTE or CONTENT_MODIFIED,
+        // are not read, preceding events can't be known from consumed events, so the FlowFile event index is not used
+        // and lineage is computed for every event which needs its preceding event.
+        indexedSearch = "IndexedSearch".equals(context.getProperty(PROVENANCE_CONSUMPTION_MODE).getValue());
+        if (indexedSearch) {
+            consumer.setIndexedSearch(TARGET_EVENT_TYPES, context.getProperty(LINEAGE_QUERY_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS));
+        }
         consumer.setLogger(getLogger());
         consumer.setScheduled(true);
 
@@ -315,30 +835,95 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
         });
         clusterResolvers = new ClusterResolvers(Collections.unmodifiableSet(loadedClusterResolvers), null);
 
+        flowFileEventIndex = indexedSearch ? null : new FlowFileEventIndex(context.getProperty(FLOWFILE_EVENT_INDEX_SIZE).asInteger());
+        final String indexFile = context.getProperty(FLOWFILE_EVENT_INDEX_FILE).getValue();
+        flowFileEventIndexFile = indexFile != null ? new File(indexFile) : null;
+        if (flowFileEventIndex != null && flowFileEventIndexFile != null) {
+            try {
+                flowFileEventIndex.load(flowFileEventIndexFile);
+            } catch (IOException e) {
+                getLogger().warn("Failed to load FlowFile event index from {} due to {}. Starting with an empty index.",
+                        new Object[]{flowFileEventIndexFile, e}, e);
+            }
+        }
+
+        final String publishedEventIdsFile = context.getProperty(PUBLISHED_EVENT_IDS_FILE).getValue();
+        publishedEventIds = publishedEventIdsFile != null ? new PublishedEventIds(new File(publishedEventIdsFile), PublishedEventIds.DEFAULT_CAPACITY) : null;
+        // Ids published before the repository restarted its event ids would be taken as published again.
+        consumer.setResetListener(firstEventId -> {
+            final PublishedEventIds published = publishedEventIds;
+            if (published != null) {
+                published.clear(firstEventId);
+            }
+        });
+
+        lineageQueryTimeoutMillis = context.getProperty(LINEAGE_QUERY_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS);
+        lineageQueryBatchTimeoutMillis = context.getProperty(LINEAGE_QUERY_BATCH_TIMEOUT).asTimePeriod(TimeUnit.MILLISECONDS);
+        final AtomicInteger lineageQueryThreadCount = new AtomicInteger();
+        lineageQueryExecutor = Executors.newFixedThreadPool(context.getProperty(LINEAGE_QUERY_CONCURRENCY).asInteger(), r -> {
+            final Thread thread = new Thread(r, "AtlasNiFiFlowLineage lineage query " + lineageQueryThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
         nifiAtlasHook = new NiFIAtlasHook();
+        nifiAtlasHook.setTrafficShaper(atlasClient.getTrafficShaper());
+        if ("AtlasRest".equals(context.getProperty(NIFI_LINEAGE_DELIVERY).getValue())) {
+            nifiAtlasHook.setRestDelivery(atlasClient, context.getProperty(ATLAS_REST_BATCH_SIZE).asInteger());
+        }
+        final DistributedMapCacheClient registryCache = context.getProperty(DATASET_REGISTRY_SERVICE).asControllerService(DistributedMapCacheClient.class);
+        if (registryCache != null) {
+            nifiAtlasHook.setDataSetRegistry(new DataSetRegistry(registryCache, DATASET_REGISTRY_NEAR_CACHE_SIZE,
+                    context.getProperty(DATASET_REGISTRY_TTL).asTimePeriod(TimeUnit.MILLISECONDS)));
+        }
     }
 
     @OnUnscheduled
     public void onUnscheduled() {
+        // Stop consuming events, the trigger thread can be still running.
         if (consumer != null) {
             consumer.setScheduled(false);
         }
     }
 
+    /**
+     * Release resources once all trigger threads have finished, as they are not thread-safe.
+     */
+    @OnStopped
+    public void onStopped() {
+        if (nifiAtlasHook != null) {
+            nifiAtlasHook.close();
+        }
+        if (lineageQueryExecutor != null) {
+            lineageQueryExecutor.shutdownNow();
+        }
+        if (nifiApiClient != null) {
+            try {
+                nifiApiClient.close();
+            } catch (IOException e) {
+                getLogger().warn("Failed to close NiFi API client due to {}.", new Object[]{e}, e);
+            }
+        }
+        if (publishedEventIds != null) {
+            try {
+                publishedEventIds.close();
+            } catch (IOException e) {
+                getLogger().warn("Failed to close published event ids due to {}.", new Object[]{e}, e);
+            }
+            publishedEventIds = null;
+        }
+        if (flowFileEventIndex != null && flowFileEventIndexFile != null) {
+            try {
+                flowFileEventIndex.save(flowFileEventIndexFile);
+            } catch (IOException e) {
+                getLogger().warn("Failed to save FlowFile event index to {} due to {}.", new Object[]{flowFileEventIndexFile, e}, e);
+            }
+        }
+    }
+
     @Override
     public void onTrigger(ReportingContext context) {
-
-        final Boolean isNiFiApiSecure = context.getProperty(NIFI_API_SECURE).evaluateAttributeExpressions().asBoolean();
-        final Integer nifiApiPort = context.getProperty(NIFI_API_PORT).evaluateAttributeExpressions().asInteger();
-        final String localhost = context.getProperty(LOCAL_HOSTNAME).evaluateAttributeExpressions().getValue();
-        final String nifiBaseUrl = (isNiFiApiSecure ? "https" : "http") + "://" + localhost + ":" + nifiApiPort + "/";
-        final NiFiApiClient nifiClient = new NiFiApiClient(nifiBaseUrl);
-
-        if (isNiFiApiSecure) {
-            final SSLContextService sslContextService = context.getProperty(SSL_CONTEXT).asControllerService(SSLContextService.class);
-            final SSLContext sslContext = sslContextService.createSSLContext(SSLContextService.ClientAuth.REQUIRED);
-            nifiClient.setSslContext(sslContext);
-        }
+        final long deadline = triggerTimeBudgetMillis > 0 ? System.currentTimeMillis() + triggerTimeBudgetMillis : Long.MAX_VALUE;
 
         final String clusterNodeId = context.getClusterNodeIdentifier();
         if (context.isClustered()) {
@@ -350,7 +935,7 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
             Want to run on all nodes
             try {
                 // /nifi-api/controller/cluster
-                final ClusterEntity clusterEntity = nifiClient.getClusterEntity();
+                final ClusterEntity clusterEntity = nifiApiClient.getClusterEntity();
                 LogUtils.log("Cluster Details", clusterEntity);
                 if (clusterEntity.getCluster().getNodes().stream()
                         .noneMatch(node -> clusterNodeId.equals(node.getNodeId())
@@ -386,34 +971,195 @@ public class AtlasNiFiFlowLineage extends AbstractReportingTask {
             throw new RuntimeException("Failed to analyze NiFi flow. " + e, e);
         }
 
+        flowAnalyzer.analyzePaths(niFiFlow);
+        registerNiFiFlow(context, niFiFlow);
+
+        if (byWindowLineageStrategy != null) {
+            // Node id is only available from ReportingContext.
+            byWindowLineageStrategy.setNodeId(getNodeId(context));
+        }
+
+        consumeNiFiProvenanceEvents(context, niFiFlow, deadline);
+
+    }
+
+    private static String getNodeId(ReportingContext context) {
+        return context.isClustered() ? context.getClusterNodeIdentifier() : "standalone";
+    }
+
+    /**
+     * Register the NiFi flow structure to Atlas, only if this node is elected as the publisher
+     * and the flow structure has changed since it was registered last time.
+     */
+    private void registerNiFiFlow(ReportingContext context, NiFiFlow niFiFlow) {
+        if (flowStructureCoordinator == null) {
+            flowStructureCoordinator = new FlowStructureCoordinator(context.getStateManager(), getNodeId(context),
+                    flowStructureLeaseMillis, context.isClustered());
+        }
+        final FlowStructureCoordinator coordinator = flowStructureCoordinator;
+
+        try {
+            if (!coordinator.acquire(System.currentTimeMillis())) {
+                getLogger().debug("NiFi flow structure is registered by {}.", new Object[]{coordinator.getPublisher()});
+                return;
+            }
+        } catch (IOException e) {
+            if (context.isClustered()) {
+                getLogger().warn("Failed to elect NiFi flow structure publisher due to {}. Skipping registration this time.", new Object[]{e}, e);
+                return;
+            }
+            getLogger().warn("Failed to check NiFi flow structure version due to {}. Registering it anyway.", new Object[]{e}, e);
+        }
+
+        final NiFiApiClient nifiClient = nifiApiClient;
+        if (nifiClient != null) {
+            try {
+                FlowStructureCoordinator.describeRootGroupPorts(niFiFlow, nifiClient);
+            } catch (IOException | RuntimeException e) {
+                getLogger().debug("Failed to read root group port comments from {} due to {}.",
+                        new Object[]{nifiClient.getBaseUri(), e});
+            }
+        }
+
+        final String version = FlowStructureCoordinator.fingerprint(niFiFlow);
+        if (version.equals(coordinator.getPublishedVersion())) {
+            getLogger().debug("NiFi flow structure has not changed since version {} was registered.", new Object[]{version});
+            return;
+        }
+
         try {
-            flowAnalyzer.analyzePaths(niFiFlow);
             atlasClient.registerNiFiFlow(niFiFlow);
         } catch (AtlasServiceException e) {
             throw new RuntimeException("Failed to register NiFI flow. " + e, e);
         }
 
-        consumeNiFiProvenanceEvents(context, niFiFlow);
-
+        try {
+            if (!coordinator.recordPublished(version)) {
+                getLogger().warn("Lost the lease to publish NiFi flow structure while registering version {}." +
+                        " The current publisher will register it again.", new Object[]{version});
+            }
+        } catch (IOException e) {
+            getLogger().warn("Failed to record NiFi flow structure version {} due to {}.", new Object[]{version, e}, e);
+        }
     }
 
-    private void consumeNiFiProvenanceEvents(ReportingContext context, NiFiFlow nifiFlow) {
+    private void consumeNiFiProvenanceEvents(ReportingContext context, NiFiFlow nifiFlow, long deadline) {
         final EventAccess eventAccess = context.getEventAccess();
-        final AnalysisContext analysisContext = new StandardAnalysisContext(nifiFlow, clusterResolvers,
+        final StandardAnalysisContext analysisContext = new StandardAnalysisContext(nifiFlow, clusterResolvers,
                 // FIXME: Class cast shouldn't be necessary to query lineage.
-                (ProvenanceRepository)eventAccess.getProvenanceRepository());
+                (ProvenanceRepository)eventAccess.getProvenanceRepository(), flowFileEventIndex);
+        analysisContext.setLineageQueryExecutor(lineageQueryExecutor, lineageQueryTimeoutMillis, lineageQueryBatchTimeoutMillis);
+        analysisContext.setPathNormalizer(pathNormalizer);
+        analysisContext.setContiguousBatches(!indexedSearch);
 
-        LineageEventProcessor processor = (lineageStrategy == LineageStrategy.BY_PATH ? new ByPathLineageStrategy(getLogger(), nifiAtlasHook) : new ByFileLineageStrategy(getLogger(), nifiAtlasHook) );
+        final EventTracer tracer = eventTracer;
+        final PublishedEventIds published = publishedEventIds;
 
-        consumer.consumeEvents(eventAccess, context.getStateManager(), events -> {
-            for (ProvenanceEventRecord event : events) {
+        // Without a deadline, a whole batch is published at once.
+        final int sliceSize = deadline < Long.MAX_VALUE ? TIME_BUDGET_SLICE_SIZE : Integer.MAX_VALUE;
+        // While there is a gap, a share of the time budget is left for back-filling even if new events keep coming.
+        final long now = System.currentTimeMillis();
+        final long liveDeadline = consumer.hasGap() && deadline < Long.MAX_VALUE
+                ? now + (long) ((deadline - now) * (1 - GAP_TIME_BUDGET_RATIO)) : deadline;
+        consumer.consumeEvents(eventAccess, context.getStateManager(), liveDeadline,
+                events -> publishInSlices(events, nifiFlow, analysisContext, selectLineageEventProcessor(context, events),
+                        tracer, published, liveDeadline, sliceSize));
 
-                LogUtils.log("ProvenanceEvent", event);
+        // Back-fill the gap after new events, at least a batch each time even if the budget is used up.
+        // Without a deadline, only a batch is back-filled each time not to delay new events.
+        if (consumer.hasGap()) {
+            final LineageEventProcessor processor = lineageEventProcessor;
+            consumer.consumeGap(eventAccess, context.getStateManager(), deadline, deadline < Long.MAX_VALUE ? Integer.MAX_VALUE : 1,
+                    events -> publishInSlices(events, nifiFlow, analysisContext, processor, tracer, published, deadline, sliceSize));
+        }
+    }
 
-                processor.processEvent(event, nifiFlow, analysisContext);
+    /**
+     * Publish events in slices until the deadline.
+     * @return number of leading events those have been published
+     */
+    private int publishInSlices(List<ProvenanceEventRecord> events, NiFiFlow nifiFlow, StandardAnalysisContext analysisContext,
+                                LineageEventProcessor processor, EventTracer tracer, PublishedEventIds published,
+                                long deadline, int sliceSize) {
+        return consumeInSlices(events, deadline, sliceSize,
+                slice -> publishEvents(slice, nifiFlow, analysisContext, processor, tracer, published));
+    }
 
+    /**
+     * Consume events in slices until the deadline, or until a slice fails,
+     * so that the consumer does not store a position beyond the failed slice.
+     * @param sliceConsumer returns false if the slice is not consumed
+     * @return number of leading events those have been consumed
+     */
+    static int consumeInSlices(List<ProvenanceEventRecord> events, long deadline, int sliceSize,
+                               Predicate<List<ProvenanceEventRecord>> sliceConsumer) {
+        int consumed = 0;
+        while (consumed < events.size()) {
+            // Consume at least one slice per batch, so that the consumer always makes progress.
+            if (consumed > 0 && System.currentTimeMillis() >= deadline) {
+                break;
             }
-            nifiAtlasHook.commitMessages();
-        });
+            final List<ProvenanceEventRecord> slice = events.subList(consumed, (int) Math.min(events.size(), (long) consumed + sliceSize));
+            if (!sliceConsumer.test(slice)) {
+                break;
+            }
+            consumed += slice.size();
+        }
+        return consumed;
+    }
+
+    /**
+     * Publish lineage of the events. Once this method returns true, the events are fully published and can be checkpointed.
+     * @param processor the processor to report lineage, or null to skip reporting lineage of the events
+     * @return false if messages of the events are not delivered, then the events should be published again
+     */
+    private boolean publishEvents(List<ProvenanceEventRecord> events, NiFiFlow nifiFlow, StandardAnalysisContext analysisContext,
+                                  LineageEventProcessor processor, EventTracer tracer, PublishedEventIds published) {
+        final FlowFileEventIndex index = flowFileEventIndex;
+        if (processor == null) {
+            if (index != null) {
+                events.forEach(index::record);
+            }
+            return true;
+        }
+
+        analysisContext.prepareBatch(events, TARGET_EVENT_TYPES);
+        final List<ProvenanceEventRecord> targetEvents = new ArrayList<>(events.size());
+        for (ProvenanceEventRecord event : events) {
+            if (TARGET_EVENT_TYPES.contains(event.getEventType())) {
+                tracer.trace(event);
+                targetEvents.add(event);
+            }
+        }
+
+        processor.processEvents(targetEvents, nifiFlow, analysisContext);
+
+        // Index after analyzing, preceding events in the same batch are resolved by the analysis context.
+        if (index != null) {
+            events.forEach(index::record);
+        }
+        processor.flush(nifiFlow);
+        final boolean delivered = commitMessages(nifiAtlasHook, events, published);
+        if (!delivered) {
+            getLogger().warn("Failed to deliver lineage of {} provenance events. Those will be published again.", new Object[]{events.size()});
+        }
+        tracer.logBatchSummary(getLogger());
+        return delivered;
+    }
+
+    /**
+     * Commit messages of the events, then record the events as published only if the messages are delivered,
+     * before the consumer stores the last event id.
+     * @return true if the messages are delivered
+     */
+    static boolean commitMessages(NiFIAtlasHook hook, List<ProvenanceEventRecord> events, PublishedEventIds published) {
+        if (!hook.commitMessages()) {
+            return false;
+        }
+        if (published != null) {
+            events.forEach(event -> published.add(event.getEventId()));
+            published.sync();
+        }
+        return true;
     }
 }
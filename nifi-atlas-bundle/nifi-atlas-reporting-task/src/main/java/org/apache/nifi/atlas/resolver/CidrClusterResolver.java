@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.resolver;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.context.PropertyContext;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves a cluster name from an IP address with CIDR ranges, or from a hostname with hostname suffixes,
+ * configured by dynamic properties.
+ * <p>IP addresses are looked up with a binary prefix trie per address family, and hostnames with a trie of
+ * reversed hostname labels, so that a lookup takes time proportional to the length of the address,
+ * regardless of the number of configured ranges. The longest matching range or suffix is used.</p>
+ * <p>Hostnames are never resolved to IP addresses with DNS.</p>
+ */
+public class CidrClusterResolver implements ClusterResolver {
+
+    public static final String CIDR_PROPERTY_PREFIX = "cidr.";
+    public static final String CIDR_PROPERTY_PREFIX_DESC = "White space delimited (including new line) CIDR ranges, such as '192.168.1.0/24' or 'fd00::/8'," +
+            " to resolve a 'Cluster Name' from an IP address of a transit URI of NiFi provenance record. The longest matching range is used.";
+    public static final String SUFFIX_PROPERTY_PREFIX = "hostnameSuffix.";
+    public static final String SUFFIX_PROPERTY_PREFIX_DESC = "White space delimited (including new line) hostname suffixes, such as 'c1.example.com'," +
+            " to resolve a 'Cluster Name' from a hostname of a transit URI of NiFi provenance record." +
+            " A suffix matches the hostname itself and its sub domains. The longest matching suffix is used.";
+
+    /**
+     * A binary trie of address prefixes.
+     */
+    private static class PrefixTrie {
+        private static class Node {
+            private final Node[] children = new Node[2];
+            private String clusterName;
+        }
+
+        private final Node root = new Node();
+
+        /**
+         * @return the cluster name already registered with the same prefix, or null
+         */
+        private String put(byte[] address, int prefixLength, String clusterName) {
+            Node node = root;
+            for (int i = 0; i < prefixLength; i++) {
+                final int bit = bitAt(address, i);
+                if (node.children[bit] == null) {
+                    node.children[bit] = new Node();
+                }
+                node = node.children[bit];
+            }
+            final String existing = node.clusterName;
+            node.clusterName = clusterName;
+            return existing;
+        }
+
+        private String findLongestMatch(byte[] address) {
+            Node node = root;
+            String clusterName = root.clusterName;
+            for (int i = 0; i < address.length * 8 && node != null; i++) {
+                node = node.children[bitAt(address, i)];
+                if (node != null && node.clusterName != null) {
+                    clusterName = node.clusterName;
+                }
+            }
+            return clusterName;
+        }
+
+        private static int bitAt(byte[] address, int index) {
+            return (address[index >> 3] >> (7 - (index & 7))) & 1;
+        }
+    }
+
+    /**
+     * A trie of hostname labels from the top level domain.
+     */
+    private static class SuffixTrie {
+        private static class Node {
+            private final Map<String, Node> children = new HashMap<>();
+            private String clusterName;
+        }
+
+        private final Node root = new Node();
+
+        /**
+         * @return the cluster name already registered with the same suffix, or null
+         */
+        private String put(String suffix, String clusterName) {
+            final String[] labels = suffix.split("\\.");
+            Node node = root;
+            for (int i = labels.length - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(labels[i], k -> new Node());
+            }
+            final String existing = node.clusterName;
+            node.clusterName = clusterName;
+            return existing;
+        }
+
+        private String findLongestMatch(String hostname) {
+            Node node = root;
+            String clusterName = null;
+            int end = hostname.length();
+            while (end > 0 && node != null) {
+                final int start = hostname.lastIndexOf('.', end - 1) + 1;
+                node = node.children.get(hostname.substring(start, end));
+                if (node != null && node.clusterName != null) {
+                    clusterName = node.clusterName;
+                }
+                end = start - 1;
+            }
+            return clusterName;
+        }
+    }
+
+    private PrefixTrie ipv4Trie;
+    private PrefixTrie ipv6Trie;
+    private SuffixTrie suffixTrie;
+
+    @Override
+    public PropertyDescriptor getSupportedDynamicPropertyDescriptor(String propertyDescriptorName) {
+        final String description;
+        if (propertyDescriptorName.startsWith(CIDR_PROPERTY_PREFIX)) {
+            description = CIDR_PROPERTY_PREFIX_DESC;
+        } else if (propertyDescriptorName.startsWith(SUFFIX_PROPERTY_PREFIX)) {
+            description = SUFFIX_PROPERTY_PREFIX_DESC;
+        } else {
+            return null;
+        }
+        return new PropertyDescriptor
+                .Builder().name(propertyDescriptorName)
+                .description(description)
+                .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+                .expressionLanguageSupported(true)
+                .dynamic(true)
+                .sensitive(false)
+                .build();
+    }
+
+    @Override
+    public Collection<ValidationResult> validate(ValidationContext validationContext) {
+        final List<ValidationResult> validationResults = new ArrayList<>();
+        consumeConfigurations(validationContext.getAllProperties(), new PrefixTrie(), new PrefixTrie(), new SuffixTrie(),
+                (entry, e) -> {
+                    final ValidationResult result = new ValidationResult.Builder()
+                            .subject(entry.getKey())
+                            .input(entry.getValue())
+                            .explanation(e.getMessage())
+                            .valid(false)
+                            .build();
+                    validationResults.add(result);
+                });
+        return validationResults;
+    }
+
+    @Override
+    public void configure(PropertyContext context) {
+        final PrefixTrie ipv4Trie = new PrefixTrie();
+        final PrefixTrie ipv6Trie = new PrefixTrie();
+        final SuffixTrie suffixTrie = new SuffixTrie();
+        consumeConfigurations(context.getAllProperties(), ipv4Trie, ipv6Trie, suffixTrie, null);
+        this.ipv4Trie = ipv4Trie;
+        this.ipv6Trie = ipv6Trie;
+        this.suffixTrie = suffixTrie;
+    }
+
+    private void consumeConfigurations(final Map<String, String> allProperties,
+                                       final PrefixTrie ipv4Trie, final PrefixTrie ipv6Trie, final SuffixTrie suffixTrie,
+                                       final BiConsumer<Map.Entry<String, String>, RuntimeException> errorHandler) {
+        // Sort properties so that a conflict is reported on the same property every time.
+        new TreeMap<>(allProperties).entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(CIDR_PROPERTY_PREFIX) || entry.getKey().startsWith(SUFFIX_PROPERTY_PREFIX))
+                .forEach(entry -> {
+                    try {
+                        final boolean cidr = entry.getKey().startsWith(CIDR_PROPERTY_PREFIX);
+                        final String clusterName = entry.getKey().substring(cidr ? CIDR_PROPERTY_PREFIX.length() : SUFFIX_PROPERTY_PREFIX.length());
+                        if (clusterName.isEmpty()) {
+                            throw new IllegalArgumentException("Empty cluster name is not allowed.");
+                        }
+
+                        final List<String> values = entry.getValue() == null ? new ArrayList<>() : Arrays.stream(entry.getValue().split("\\s"))
+                                .map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+                        if (values.isEmpty()) {
+                            throw new IllegalArgumentException(
+                                    String.format("At least one %s is required, [%s].", cidr ? "CIDR range" : "hostname suffix", clusterName));
+                        }
+
+                        for (String value : values) {
+                            final String existing = cidr ? putCidr(ipv4Trie, ipv6Trie, value, clusterName) : putSuffix(suffixTrie, value, clusterName);
+                            if (existing != null && !existing.equals(clusterName)) {
+                                throw new IllegalArgumentException(
+                                        String.format("'%s' is configured for both [%s] and [%s].", value, existing, clusterName));
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        if (errorHandler != null) {
+                            errorHandler.accept(entry, e);
+                        } else {
+                            throw e;
+                        }
+                    }
+                });
+    }
+
+    private static String putCidr(PrefixTrie ipv4Trie, PrefixTrie ipv6Trie, String cidr, String clusterName) {
+        final int slash = cidr.indexOf('/');
+        final String addressStr = slash < 0 ? cidr : cidr.substring(0, slash);
+        final byte[] address = toAddress(addressStr);
+        if (address == null) {
+            throw new IllegalArgumentException(String.format("'%s' is not a valid IP address.", cidr));
+        }
+
+        final int maxPrefixLength = address.length * 8;
+        final int prefixLength;
+        try {
+            prefixLength = slash < 0 ? maxPrefixLength : Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("'%s' does not have a valid prefix length.", cidr));
+        }
+        if (prefixLength < 0 || prefixLength > maxPrefixLength) {
+            throw new IllegalArgumentException(String.format("Prefix length of '%s' should be between 0 and %d.", cidr, maxPrefixLength));
+        }
+
+        return (address.length == 4 ? ipv4Trie : ipv6Trie).put(address, prefixLength, clusterName);
+    }
+
+    private static String putSuffix(SuffixTrie suffixTrie, String suffix, String clusterName) {
+        final String normalized = normalizeHostname(suffix.startsWith(".") ? suffix.substring(1) : suffix);
+        if (normalized.isEmpty() || normalized.contains("..")) {
+            throw new IllegalArgumentException(String.format("'%s' is not a valid hostname suffix.", suffix));
+        }
+        return suffixTrie.put(normalized, clusterName);
+    }
+
+    private static String normalizeHostname(String hostname) {
+        final String lowerCase = hostname.toLowerCase(Locale.ROOT);
+        return lowerCase.endsWith(".") ? lowerCase.substring(0, lowerCase.length() - 1) : lowerCase;
+    }
+
+    /**
+     * Parse an IP address literal without looking up DNS.
+     * @return 4 bytes for an IPv4 address, 16 bytes for an IPv6 address, or null if it's not an IP address
+     */
+    static byte[] toAddress(String address) {
+        if (address == null || address.isEmpty()) {
+            return null;
+        }
+
+        if (address.indexOf(':') < 0) {
+            return toIpv4Address(address);
+        }
+
+        // Enclosed in brackets, an IPv6 literal is parsed without DNS lookup, and fails if it's not an IPv6 address.
+        String literal = address;
+        if (literal.startsWith("[") && literal.endsWith("]")) {
+            literal = literal.substring(1, literal.length() - 1);
+        }
+        final int zone = literal.indexOf('%');
+        if (zone >= 0) {
+            literal = literal.substring(0, zone);
+        }
+        if (literal.indexOf(':') < 0) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName("[" + literal + "]").getAddress();
+        } catch (UnknownHostException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static byte[] toIpv4Address(String address) {
+        final byte[] bytes = new byte[4];
+        int octet = 0;
+        int value = -1;
+        for (int i = 0; i < address.length(); i++) {
+            final char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && value >= 0 && octet < 3) {
+                bytes[octet++] = (byte) value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (octet != 3 || value < 0) {
+            return null;
+        }
+        bytes[3] = (byte) value;
+        return bytes;
+    }
+
+    @Override
+    public String fromHostname(String hostname) {
+        if (hostname == null || hostname.isEmpty()) {
+            return null;
+        }
+
+        final byte[] address = toAddress(hostname);
+        if (address != null) {
+            // An IPv4-mapped IPv6 address is returned as an IPv4 address.
+            return (address.length == 4 ? ipv4Trie : ipv6Trie).findLongestMatch(address);
+        }
+        return suffixTrie.findLongestMatch(normalizeHostname(hostname));
+    }
+
+}
@@ -5,8 +5,10 @@ import org.apache.nifi.components.ValidationContext;
 import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.context.PropertyContext;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public interface ClusterResolver {
@@ -32,6 +34,59 @@ public interface ClusterResolver {
         return null;
     }
 
+    /**
+     * Resolve a cluster name from multiple hostnames at once. Each hostname can be a comma separated list
+     * and can have a port number, e.g. '0.example.com:6667,1.example.com:6667', those are removed before resolving.
+     * @param hostnames hostnames or ip addresses
+     * @return cluster name resolved from the first hostname that can be resolved, or null
+     */
+    default String fromHostnames(String... hostnames) {
+        if (hostnames == null) {
+            return null;
+        }
+        for (String hostname : hostnames) {
+            for (String host : splitHostnames(hostname)) {
+                final String clusterName = fromHostname(host);
+                if (clusterName != null && !clusterName.isEmpty()) {
+                    return clusterName;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Split a comma separated hostname list, and remove user info and port number from each hostname.
+     * IPv6 addresses can be enclosed in brackets to specify a port, e.g. '[::1]:8080'.
+     * @param hostnames a comma separated hostname list
+     * @return hostnames, an empty list if the input is null or empty
+     */
+    static List<String> splitHostnames(String hostnames) {
+        if (hostnames == null || hostnames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> results = new ArrayList<>();
+        for (String hostname : hostnames.split(",")) {
+            String host = hostname.trim();
+            final int at = host.lastIndexOf('@');
+            if (at >= 0) {
+                host = host.substring(at + 1);
+            }
+            final int colon = host.indexOf(':');
+            if (host.startsWith("[")) {
+                final int closing = host.indexOf(']');
+                host = closing > 0 ? host.substring(1, closing) : host.substring(1);
+            } else if (colon >= 0 && colon == host.lastIndexOf(':')) {
+                // Only a single colon is a port separator, otherwise it's an IPv6 address without port.
+                host = host.substring(0, colon);
+            }
+            if (!host.isEmpty()) {
+                results.add(host);
+            }
+        }
+        return results;
+    }
+
     /**
      * Resolve a cluster name from hints, such as Zookeeper Quorum, client port and znode path
      * @param hints Contains variables to resolve a cluster name
@@ -48,7 +48,6 @@ public class ClusterResolvers implements ClusterResolver {
     }
 
     @Override
-    // TODO: refactor this, to accept multiple host names at once. Even more accept a comma separated hostname list. And if it contains port number, remove it?
     public String fromHostname(String hostname) {
         for (ClusterResolver resolver : resolvers) {
             final String clusterName = resolver.fromHostname(hostname);
@@ -59,6 +58,21 @@ public class ClusterResolvers implements ClusterResolver {
         return defaultClusterName;
     }
 
+    /**
+     * Unlike calling {@link #fromHostname(String)} for each hostname, the default cluster name is used
+     * only if none of the hostnames can be resolved by any resolver.
+     */
+    @Override
+    public String fromHostnames(String... hostnames) {
+        for (ClusterResolver resolver : resolvers) {
+            final String clusterName = resolver.fromHostnames(hostnames);
+            if (clusterName != null && !clusterName.isEmpty()) {
+                return clusterName;
+            }
+        }
+        return defaultClusterName;
+    }
+
     @Override
     public String fromHints(Map<String, String> hints) {
         for (ClusterResolver resolver : resolvers) {
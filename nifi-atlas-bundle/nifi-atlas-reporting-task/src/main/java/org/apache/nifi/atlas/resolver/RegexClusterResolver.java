@@ -9,19 +9,39 @@ import org.apache.nifi.processor.util.StandardValidators;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Resolves a cluster name from a hostname with Regular Expressions configured by dynamic properties.
+ * <p>All patterns are combined into a single Regular Expression, evaluated in the order of cluster names,
+ * then in the order of patterns configured for each cluster. If a hostname matches patterns of multiple clusters,
+ * the cluster whose name comes first alphabetically is used. Resolved cluster names are cached per hostname.</p>
+ */
 public class RegexClusterResolver implements ClusterResolver {
 
     public static final String PATTERN_PROPERTY_PREFIX = "hostnamePattern.";
-    public static final String PATTERN_PROPERTY_PREFIX_DESC = "White space delimited (including new line) Regular Expressions to resolve a 'Cluster Name' from a hostname or IP address of a transit URI of NiFi provenance record.";
+    public static final String PATTERN_PROPERTY_PREFIX_DESC = "White space delimited (including new line) Regular Expressions to resolve a 'Cluster Name' from a hostname or IP address of a transit URI of NiFi provenance record." +
+            " If a hostname matches patterns of multiple clusters, the cluster whose name comes first alphabetically is used.";
+
+    static final int HOSTNAME_CACHE_SIZE = 10_000;
+    // Numbered or named back references can not be used in the combined pattern, as group numbers are shifted.
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+    private static final String UNRESOLVED = "";
+
     private Map<String, Set<Pattern>> clusterNamePatterns;
+    private Pattern combinedPattern;
+    private int[] clusterGroups;
+    private String[] clusterGroupNames;
+    private Map<String, String> resolvedClusterNames;
 
     @Override
     public PropertyDescriptor getSupportedDynamicPropertyDescriptor(String propertyDescriptorName) {
@@ -58,11 +78,49 @@ public class RegexClusterResolver implements ClusterResolver {
     @Override
     public void configure(PropertyContext context) {
 
-        clusterNamePatterns = new HashMap<>();
+        clusterNamePatterns = new TreeMap<>();
         consumeConfigurations(context.getAllProperties(),
                 (clusterName, patterns) -> clusterNamePatterns.put(clusterName, patterns),
                 null);
 
+        combinePatterns();
+        resolvedClusterNames = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > HOSTNAME_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Combine all patterns into a single pattern, each pattern is enclosed in a capturing group
+     * to find the cluster name of the matched pattern.
+     */
+    private void combinePatterns() {
+        final StringBuilder combined = new StringBuilder();
+        final List<Integer> groups = new ArrayList<>();
+        final List<String> groupNames = new ArrayList<>();
+        int group = 1;
+        for (Map.Entry<String, Set<Pattern>> entry : clusterNamePatterns.entrySet()) {
+            for (Pattern pattern : entry.getValue()) {
+                if (BACK_REFERENCE.matcher(pattern.pattern()).find()) {
+                    // Evaluate each pattern instead.
+                    combinedPattern = null;
+                    return;
+                }
+                if (combined.length() > 0) {
+                    combined.append('|');
+                }
+                combined.append('(').append(pattern.pattern()).append(')');
+                groups.add(group);
+                groupNames.add(entry.getKey());
+                group += 1 + pattern.matcher("").groupCount();
+            }
+        }
+
+        combinedPattern = combined.length() > 0 ? Pattern.compile(combined.toString()) : null;
+        clusterGroups = groups.stream().mapToInt(Integer::intValue).toArray();
+        clusterGroupNames = groupNames.toArray(new String[groupNames.size()]);
     }
 
     private void consumeConfigurations(final Map<String, String> allProperties,
@@ -100,13 +158,42 @@ public class RegexClusterResolver implements ClusterResolver {
                     String.format("At least one cluster name pattern is required, [%s].", clusterName));
         }
 
-        return regexs.stream().map(Pattern::compile).collect(Collectors.toSet());
+        return regexs.stream().map(Pattern::compile).collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @Override
     public String fromHostname(String _hostname) {
         // Avoid NullPointerException when matching.
         final String hostname = _hostname == null ? "" : _hostname;
+        final String resolved;
+        synchronized (resolvedClusterNames) {
+            resolved = resolvedClusterNames.get(hostname);
+        }
+        if (resolved != null) {
+            return resolved.isEmpty() ? null : resolved;
+        }
+
+        final String clusterName = resolve(hostname);
+        synchronized (resolvedClusterNames) {
+            resolvedClusterNames.put(hostname, clusterName == null ? UNRESOLVED : clusterName);
+        }
+        return clusterName;
+    }
+
+    private String resolve(String hostname) {
+        if (combinedPattern != null) {
+            final Matcher matcher = combinedPattern.matcher(hostname);
+            if (!matcher.matches()) {
+                return null;
+            }
+            for (int i = 0; i < clusterGroups.length; i++) {
+                if (matcher.start(clusterGroups[i]) >= 0) {
+                    return clusterGroupNames[i];
+                }
+            }
+            return null;
+        }
+
         for (Map.Entry<String, Set<Pattern>> entry : clusterNamePatterns.entrySet()) {
             for (Pattern pattern : entry.getValue()) {
                 if (pattern.matcher(hostname).matches()) {
@@ -117,6 +204,4 @@ public class RegexClusterResolver implements ClusterResolver {
         return null;
     }
 
-
-
 }
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.model.instance.AtlasEntity;
+import org.apache.atlas.model.instance.AtlasObjectId;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_INPUTS;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestAtlasEntityConverter {
+
+    private Referenceable createTopic(String name) {
+        final Referenceable topic = new Referenceable("kafka_topic");
+        topic.set(ATTR_NAME, name);
+        topic.set(ATTR_QUALIFIED_NAME, name + "@cluster1");
+        return topic;
+    }
+
+    private Referenceable createFlowPath(Referenceable ... inputs) {
+        final Referenceable flowPath = new Referenceable(TYPE_NIFI_FLOW_PATH);
+        flowPath.set(ATTR_NAME, "ConsumeKafka");
+        flowPath.set(ATTR_QUALIFIED_NAME, "path-1");
+        final List<Referenceable> inputRefs = new ArrayList<>();
+        for (Referenceable input : inputs) {
+            inputRefs.add(input);
+        }
+        flowPath.set(ATTR_INPUTS, inputRefs);
+        return flowPath;
+    }
+
+    @Test
+    public void testMergePartialUpdates() {
+        final AtlasEntityConverter converter = new AtlasEntityConverter();
+        final Referenceable topicA = createTopic("topicA");
+        final Referenceable topicB = createTopic("topicB");
+
+        converter.add(new HookNotification.EntityCreateRequest("nifi", topicA));
+        converter.add(new HookNotification.EntityPartialUpdateRequest("nifi", TYPE_NIFI_FLOW_PATH,
+                ATTR_QUALIFIED_NAME, "path-1", createFlowPath(topicA)));
+        converter.add(new HookNotification.EntityCreateRequest("nifi", topicB));
+        converter.add(new HookNotification.EntityPartialUpdateRequest("nifi", TYPE_NIFI_FLOW_PATH,
+                ATTR_QUALIFIED_NAME, "path-1", createFlowPath(topicB)));
+        // The same DataSet should be created only once.
+        converter.add(new HookNotification.EntityCreateRequest("nifi", topicA));
+
+        final Collection<AtlasEntity> created = converter.getCreatedEntities();
+        assertEquals(2, created.size());
+
+        final Collection<AtlasEntity> updated = converter.getUpdatedEntities();
+        assertEquals(1, updated.size());
+        final AtlasEntity flowPath = updated.iterator().next();
+        final Collection<?> inputs = (Collection<?>) flowPath.getAttribute(ATTR_INPUTS);
+        assertEquals(2, inputs.size());
+        assertTrue(inputs.contains(new AtlasObjectId("kafka_topic", ATTR_QUALIFIED_NAME, "topicA@cluster1")));
+        assertTrue(inputs.contains(new AtlasObjectId("kafka_topic", ATTR_QUALIFIED_NAME, "topicB@cluster1")));
+    }
+
+    @Test
+    public void testPartialUpdateToCreatedEntity() {
+        final AtlasEntityConverter converter = new AtlasEntityConverter();
+        final Referenceable topicA = createTopic("topicA");
+        final Referenceable topicB = createTopic("topicB");
+
+        converter.add(new HookNotification.EntityCreateRequest("nifi", topicA, createFlowPath(topicA)));
+        converter.add(new HookNotification.EntityPartialUpdateRequest("nifi", TYPE_NIFI_FLOW_PATH,
+                ATTR_QUALIFIED_NAME, "path-1", createFlowPath(topicB)));
+
+        assertEquals(2, converter.getCreatedEntities().size());
+        assertTrue(converter.getUpdatedEntities().isEmpty());
+
+        final AtlasEntity flowPath = converter.getCreatedEntities().stream()
+                .filter(entity -> TYPE_NIFI_FLOW_PATH.equals(entity.getTypeName())).findFirst().get();
+        assertEquals(2, ((Collection<?>) flowPath.getAttribute(ATTR_INPUTS)).size());
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.nifi.atlas.AtlasTrafficShaper.TrafficClass.FLOW_STRUCTURE;
+import static org.apache.nifi.atlas.AtlasTrafficShaper.TrafficClass.LINEAGE_CREATE;
+import static org.apache.nifi.atlas.AtlasTrafficShaper.TrafficClass.TYPE_DEFS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestAtlasTrafficShaper {
+
+    @Test
+    public void testFromProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty("atlas.hook.nifi.rate.lineageCreate.permitsPerSecond", "100");
+        properties.setProperty("atlas.hook.nifi.rate.lineageCreate.burst", "20");
+        properties.setProperty("atlas.hook.nifi.rate.flowStructure.permitsPerSecond", "50");
+
+        final AtlasTrafficShaper shaper = AtlasTrafficShaper.fromProperties(properties);
+        assertEquals(20, shaper.getBurst(LINEAGE_CREATE));
+        assertEquals(50, shaper.getBurst(FLOW_STRUCTURE));
+        assertEquals(Integer.MAX_VALUE, shaper.getBurst(TYPE_DEFS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProperty() {
+        final Properties properties = new Properties();
+        properties.setProperty("atlas.hook.nifi.rate.lineageCreate.permitsPerSecond", "100/s");
+        try {
+            AtlasTrafficShaper.fromProperties(properties);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("atlas.hook.nifi.rate.lineageCreate.permitsPerSecond"));
+            throw e;
+        }
+    }
+
+    @Test
+    public void testRateLimit() {
+        final AtomicLong nanoTime = new AtomicLong();
+        final AtlasTrafficShaper shaper = new AtlasTrafficShaper(nanoTime::get);
+        shaper.setRate(LINEAGE_CREATE, 10, 5);
+
+        // The first 5 permits are available immediately, then 5 more take 500ms.
+        assertEquals(0, shaper.tryAcquire(LINEAGE_CREATE, 5));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), shaper.tryAcquire(LINEAGE_CREATE, 5));
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(300), shaper.tryAcquire(LINEAGE_CREATE, 5));
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(0, shaper.tryAcquire(LINEAGE_CREATE, 5));
+    }
+
+    @Test
+    public void testLowerPriorityWaits() throws Exception {
+        final AtlasTrafficShaper shaper = new AtlasTrafficShaper();
+        final CountDownLatch acquired = new CountDownLatch(1);
+
+        final AtlasTrafficShaper.Session session = shaper.begin(FLOW_STRUCTURE);
+        // Lineage should wait while flow structure is being updated.
+        assertTrue(shaper.tryAcquire(LINEAGE_CREATE, 1) > 0);
+        // Higher priority classes are not affected.
+        assertEquals(0, shaper.tryAcquire(TYPE_DEFS, 1));
+
+        final Thread lineage = new Thread(() -> {
+            shaper.acquire(LINEAGE_CREATE, 1);
+            acquired.countDown();
+        });
+        lineage.start();
+
+        session.close();
+        assertEquals(0, shaper.tryAcquire(LINEAGE_CREATE, 1));
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        lineage.join();
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.distributed.cache.client.Deserializer;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
+import org.apache.nifi.distributed.cache.client.Serializer;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestDataSetRegistry {
+
+    private static Referenceable createTopic(String name) {
+        final Referenceable topic = new Referenceable("kafka_topic");
+        topic.set(ATTR_QUALIFIED_NAME, name + "@cluster1");
+        return topic;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRegistry() throws IOException {
+        final DistributedMapCacheClient client = Mockito.mock(DistributedMapCacheClient.class);
+        // Registered by another node.
+        when(client.get(eq("nifi-atlas:kafka_topic:topic1@cluster1"), any(Serializer.class), any(Deserializer.class))).thenReturn("1000");
+
+        final DataSetRegistry registry = new DataSetRegistry(client, 10, 60_000, () -> 2000L);
+        final String topic1 = DataSetRegistry.toDataSetKey(createTopic("topic1"));
+        final String topic2 = DataSetRegistry.toDataSetKey(createTopic("topic2"));
+        assertEquals("kafka_topic:topic1@cluster1", topic1);
+
+        Set<String> registered = registry.findRegistered(Arrays.asList(topic1, topic2, topic2));
+        assertEquals(Collections.singleton(topic1), registered);
+        assertEquals(1, registry.getRemoteHitCount());
+        assertEquals(1, registry.getMissCount());
+
+        registry.register(Collections.singleton(topic2));
+        verify(client).getAndPutIfAbsent(eq("nifi-atlas:" + topic2), eq("2000"), any(Serializer.class), any(Serializer.class), any(Deserializer.class));
+
+        // Both are in the near-cache now.
+        registered = registry.findRegistered(Arrays.asList(topic1, topic2));
+        assertEquals(2, registered.size());
+        assertEquals(2, registry.getNearCacheHitCount());
+        verify(client, times(2)).get(anyString(), any(Serializer.class), any(Deserializer.class));
+
+        // Keys in the near-cache are not put again.
+        registry.register(Collections.singleton(topic1));
+        verify(client, never()).getAndPutIfAbsent(eq("nifi-atlas:" + topic1), anyString(),
+                any(Serializer.class), any(Serializer.class), any(Deserializer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExpiration() throws IOException {
+        final DistributedMapCacheClient client = Mockito.mock(DistributedMapCacheClient.class);
+        final AtomicLong now = new AtomicLong(1000);
+        final DataSetRegistry registry = new DataSetRegistry(client, 10, 60_000, now::get);
+        final String topic1 = DataSetRegistry.toDataSetKey(createTopic("topic1"));
+        final String topic2 = DataSetRegistry.toDataSetKey(createTopic("topic2"));
+
+        registry.register(Collections.singleton(topic1));
+        verify(client).getAndPutIfAbsent(eq("nifi-atlas:" + topic1), eq("1000"), any(Serializer.class), any(Serializer.class), any(Deserializer.class));
+        // Registered long ago by another node.
+        when(client.get(eq("nifi-atlas:" + topic2), any(Serializer.class), any(Deserializer.class))).thenReturn("0");
+
+        now.set(60_999);
+        assertEquals(Collections.singleton(topic1), registry.findRegistered(Arrays.asList(topic1, topic2)));
+
+        // Expired keys are not registered, even if those are in the near-cache.
+        now.set(61_000);
+        when(client.get(eq("nifi-atlas:" + topic1), any(Serializer.class), any(Deserializer.class))).thenReturn("1000");
+        assertTrue(registry.findRegistered(Arrays.asList(topic1, topic2)).isEmpty());
+
+        // Expired keys are replaced.
+        when(client.getAndPutIfAbsent(eq("nifi-atlas:" + topic1), anyString(), any(Serializer.class), any(Serializer.class), any(Deserializer.class)))
+                .thenReturn("1000");
+        when(client.getAndPutIfAbsent(eq("nifi-atlas:" + topic2), anyString(), any(Serializer.class), any(Serializer.class), any(Deserializer.class)))
+                .thenReturn("0");
+        registry.register(Arrays.asList(topic1, topic2));
+        verify(client).remove(eq("nifi-atlas:" + topic1), any(Serializer.class));
+        verify(client).remove(eq("nifi-atlas:" + topic2), any(Serializer.class));
+        verify(client).putIfAbsent(eq("nifi-atlas:" + topic1), eq("61000"), any(Serializer.class), any(Serializer.class));
+        verify(client).putIfAbsent(eq("nifi-atlas:" + topic2), eq("61000"), any(Serializer.class), any(Serializer.class));
+        assertEquals(2, registry.findRegistered(Arrays.asList(topic1, topic2)).size());
+
+        // A key registered by another node and not expired is kept.
+        final String topic3 = DataSetRegistry.toDataSetKey(createTopic("topic3"));
+        when(client.getAndPutIfAbsent(eq("nifi-atlas:" + topic3), anyString(), any(Serializer.class), any(Serializer.class), any(Deserializer.class)))
+                .thenReturn("60000");
+        registry.register(Collections.singleton(topic3));
+        verify(client, never()).remove(eq("nifi-atlas:" + topic3), any(Serializer.class));
+        verify(client, never()).putIfAbsent(eq("nifi-atlas:" + topic3), anyString(), any(Serializer.class), any(Serializer.class));
+    }
+
+    @Test
+    public void testEdgeKey() {
+        final String in = DataSetRegistry.toEdgeKey("path1", createTopic("topic1"), true);
+        final String out = DataSetRegistry.toEdgeKey("path1", createTopic("topic1"), false);
+        assertNotEquals(in, out);
+        assertTrue(in.startsWith("path1"));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.model.instance.AtlasEntity;
+import org.apache.atlas.model.instance.AtlasObjectId;
+import org.apache.nifi.atlas.reporting.AtlasNiFiFlowLineage;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.controller.status.ProcessorStatus;
+import org.apache.nifi.util.MockStateManager;
+import org.apache.nifi.web.api.dto.PortDTO;
+import org.apache.nifi.web.api.dto.flow.FlowDTO;
+import org.apache.nifi.web.api.dto.flow.ProcessGroupFlowDTO;
+import org.apache.nifi.web.api.entity.PortEntity;
+import org.apache.nifi.web.api.entity.ProcessGroupFlowEntity;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_DESCRIPTION;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_INPUT_PORT;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_OUTPUT_PORT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class TestFlowStructureCoordinator {
+
+    private static final long LEASE_MILLIS = 60_000;
+
+    @Test
+    public void testElection() throws IOException {
+        final MockStateManager stateManager = new MockStateManager(new AtlasNiFiFlowLineage());
+        final FlowStructureCoordinator node1 = new FlowStructureCoordinator(stateManager, "node1", LEASE_MILLIS, true);
+        final FlowStructureCoordinator node2 = new FlowStructureCoordinator(stateManager, "node2", LEASE_MILLIS, true);
+
+        assertTrue(node1.acquire(1_000));
+        assertEquals(1, node1.getEpoch());
+        assertNull(node1.getPublishedVersion());
+
+        assertFalse(node2.acquire(2_000));
+        assertEquals("node1", node2.getPublisher());
+        assertEquals(-1, node2.getEpoch());
+
+        // Renewing the lease keeps the epoch.
+        assertTrue(node1.acquire(50_000));
+        assertEquals(1, node1.getEpoch());
+        assertTrue(node1.recordPublished("v1"));
+
+        // The lease renewed at 50,000 is still valid.
+        assertFalse(node2.acquire(100_000));
+        assertEquals("v1", node2.getPublishedVersion());
+    }
+
+    @Test
+    public void testFencing() throws IOException {
+        final MockStateManager stateManager = new MockStateManager(new AtlasNiFiFlowLineage());
+        final FlowStructureCoordinator node1 = new FlowStructureCoordinator(stateManager, "node1", LEASE_MILLIS, true);
+        final FlowStructureCoordinator node2 = new FlowStructureCoordinator(stateManager, "node2", LEASE_MILLIS, true);
+
+        assertTrue(node1.acquire(1_000));
+        assertTrue(node1.recordPublished("v1"));
+
+        // node1 stopped renewing the lease, then node2 takes it over with a new epoch.
+        assertTrue(node2.acquire(1_000 + LEASE_MILLIS + 1));
+        assertEquals(2, node2.getEpoch());
+        assertEquals("v1", node2.getPublishedVersion());
+
+        // node1 can not record what it registered with the old epoch.
+        assertFalse(node1.recordPublished("v2"));
+        assertEquals(-1, node1.getEpoch());
+        assertFalse(node1.acquire(1_000 + LEASE_MILLIS + 2));
+
+        assertTrue(node2.recordPublished("v2"));
+        assertEquals("v2", stateManager.getState(Scope.CLUSTER).get(FlowStructureCoordinator.KEY_VERSION));
+    }
+
+    private static NiFiFlow createFlow(String processorName) {
+        final NiFiFlow flow = new NiFiFlow("flow", "root", "http://nifi.example.com:8080/nifi");
+        final ProcessorStatus processor = new ProcessorStatus();
+        processor.setId("p1");
+        processor.setName(processorName);
+        flow.addProcessor(processor);
+        final NiFiFlowPath path = new NiFiFlowPath("p1");
+        path.addProcessor("p1");
+        flow.getFlowPaths().add(path);
+        return flow;
+    }
+
+    @Test
+    public void testFingerprint() {
+        final String fingerprint = FlowStructureCoordinator.fingerprint(createFlow("GetFile"));
+        assertEquals(fingerprint, FlowStructureCoordinator.fingerprint(createFlow("GetFile")));
+        assertNotEquals(fingerprint, FlowStructureCoordinator.fingerprint(createFlow("FetchFile")));
+    }
+
+    private static AtlasEntity addRootGroupPort(NiFiFlow flow, String typeName, String portId) {
+        final AtlasEntity entity = new AtlasEntity(typeName);
+        entity.setAttribute(ATTR_QUALIFIED_NAME, portId);
+        final AtlasObjectId id = new AtlasObjectId(typeName, ATTR_QUALIFIED_NAME, portId);
+        (TYPE_NIFI_INPUT_PORT.equals(typeName) ? flow.getRootInputPortEntities() : flow.getRootOutputPortEntities()).put(id, entity);
+        return entity;
+    }
+
+    private static PortEntity createPortEntity(String portId, String comments) {
+        final PortEntity entity = new PortEntity();
+        entity.setId(portId);
+        final PortDTO dto = new PortDTO();
+        dto.setId(portId);
+        dto.setComments(comments);
+        entity.setComponent(dto);
+        return entity;
+    }
+
+    @Test
+    public void testDescribeRootGroupPorts() throws IOException {
+        final NiFiFlow flow = createFlow("GetFile");
+        final AtlasEntity inputPort = addRootGroupPort(flow, TYPE_NIFI_INPUT_PORT, "input-1");
+        final AtlasEntity outputPort = addRootGroupPort(flow, TYPE_NIFI_OUTPUT_PORT, "output-1");
+        final String fingerprint = FlowStructureCoordinator.fingerprint(flow);
+
+        final FlowDTO flowDTO = new FlowDTO();
+        flowDTO.setInputPorts(Collections.singleton(createPortEntity("input-1", "Receives data from remote NiFi")));
+        flowDTO.setOutputPorts(Collections.singleton(createPortEntity("output-1", null)));
+        final ProcessGroupFlowDTO processGroupFlow = new ProcessGroupFlowDTO();
+        processGroupFlow.setFlow(flowDTO);
+        final ProcessGroupFlowEntity processGroupFlowEntity = new ProcessGroupFlowEntity();
+        processGroupFlowEntity.setProcessGroupFlow(processGroupFlow);
+
+        final NiFiApiClient nifiApiClient = Mockito.mock(NiFiApiClient.class);
+        when(nifiApiClient.getProcessGroupFlowStructure("root")).thenReturn(processGroupFlowEntity);
+
+        FlowStructureCoordinator.describeRootGroupPorts(flow, nifiApiClient);
+
+        assertEquals("Receives data from remote NiFi", inputPort.getAttribute(ATTR_DESCRIPTION));
+        assertNull(outputPort.getAttribute(ATTR_DESCRIPTION));
+        // A changed comment is registered as a new version.
+        assertNotEquals(fingerprint, FlowStructureCoordinator.fingerprint(flow));
+    }
+
+}
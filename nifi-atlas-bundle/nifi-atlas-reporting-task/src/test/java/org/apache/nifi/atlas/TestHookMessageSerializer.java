@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.notification.NotificationInterface;
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.atlas.typesystem.persistence.Id;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_INPUTS;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_NIFI_FLOW;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestHookMessageSerializer {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testEntityCreate() throws Exception {
+        final HookMessageSerializer serializer = new HookMessageSerializer(1, 16);
+        final Referenceable topic = new Referenceable("kafka_topic");
+        topic.set(ATTR_NAME, "topicA");
+        topic.set(ATTR_QUALIFIED_NAME, "topicA@cluster1");
+
+        final JsonNode json = mapper.readTree(serializer.serialize(new HookNotification.EntityCreateRequest("nifi", topic)));
+        assertEquals("1.0.0", json.get("version").get("version").getTextValue());
+
+        final JsonNode message = json.get("message");
+        assertEquals("ENTITY_CREATE", message.get("type").getTextValue());
+        assertEquals("nifi", message.get("user").getTextValue());
+
+        final JsonNode entity = message.get("entities").get(0);
+        assertEquals("kafka_topic", entity.get("typeName").getTextValue());
+        assertEquals("kafka_topic", entity.get("id").get("typeName").getTextValue());
+        assertEquals("topicA@cluster1", entity.get("values").get(ATTR_QUALIFIED_NAME).getTextValue());
+    }
+
+    @Test
+    public void testEntityPartialUpdate() throws Exception {
+        // Use a small buffer and pool to confirm buffers are reused and grown correctly.
+        final HookMessageSerializer serializer = new HookMessageSerializer(1, 16);
+        final Referenceable topic = new Referenceable("kafka_topic");
+        topic.set(ATTR_QUALIFIED_NAME, "topicA@cluster1");
+        final Referenceable flowPath = new Referenceable(TYPE_NIFI_FLOW_PATH);
+        flowPath.set(ATTR_QUALIFIED_NAME, "path-1");
+        flowPath.set(ATTR_INPUTS, Collections.singletonList(topic));
+
+        final HookNotification.EntityPartialUpdateRequest update = new HookNotification.EntityPartialUpdateRequest("nifi",
+                TYPE_NIFI_FLOW_PATH, ATTR_QUALIFIED_NAME, "path-1", flowPath);
+
+        for (int i = 0; i < 2; i++) {
+            final JsonNode message = mapper.readTree(serializer.serialize(update)).get("message");
+            assertEquals("ENTITY_PARTIAL_UPDATE", message.get("type").getTextValue());
+            assertEquals(TYPE_NIFI_FLOW_PATH, message.get("typeName").getTextValue());
+            assertEquals("path-1", message.get("attributeValue").getTextValue());
+
+            final JsonNode input = message.get("entity").get("values").get(ATTR_INPUTS).get(0);
+            assertEquals("kafka_topic", input.get("typeName").getTextValue());
+            assertEquals("topicA@cluster1", input.get("values").get(ATTR_QUALIFIED_NAME).getTextValue());
+        }
+    }
+
+    private HookNotification.EntityCreateRequest createFlowPaths() {
+        final Referenceable flow = new Referenceable(TYPE_NIFI_FLOW);
+        flow.set(ATTR_NAME, "flowA");
+        flow.set(ATTR_QUALIFIED_NAME, "root-group-id");
+        final Referenceable topic = new Referenceable("kafka_topic");
+        topic.set(ATTR_NAME, "topicA");
+        topic.set(ATTR_QUALIFIED_NAME, "topicA@cluster1");
+
+        final Referenceable path1 = new Referenceable(TYPE_NIFI_FLOW_PATH);
+        path1.set(ATTR_NAME, "path-1");
+        path1.set(ATTR_QUALIFIED_NAME, "path-1");
+        path1.set(ATTR_NIFI_FLOW, flow);
+        path1.set(ATTR_INPUTS, Collections.singletonList(topic));
+
+        final Referenceable path2 = new Referenceable(TYPE_NIFI_FLOW_PATH);
+        path2.set(ATTR_NAME, "path-2");
+        path2.set(ATTR_QUALIFIED_NAME, "path-2");
+        path2.set(ATTR_NIFI_FLOW, flow);
+        path2.set(ATTR_INPUTS, Collections.singletonList(topic));
+
+        return new HookNotification.EntityCreateRequest("nifi", Arrays.asList(path1, path2));
+    }
+
+    @Test
+    public void testCompactNestedReferences() throws Exception {
+        final HookMessageSerializer serializer = new HookMessageSerializer(1, 16);
+        final JsonNode entities = mapper.readTree(serializer.serialize(createFlowPaths())).get("message").get("entities");
+
+        // The first flow path has the flow and the topic in full.
+        final JsonNode values1 = entities.get(0).get("values");
+        assertEquals("root-group-id", values1.get(ATTR_NIFI_FLOW).get("values").get(ATTR_QUALIFIED_NAME).getTextValue());
+        assertEquals("topicA@cluster1", values1.get(ATTR_INPUTS).get(0).get("values").get(ATTR_QUALIFIED_NAME).getTextValue());
+
+        // The second one refers those with Ids.
+        final JsonNode values2 = entities.get(1).get("values");
+        final JsonNode flowId = values2.get(ATTR_NIFI_FLOW);
+        assertFalse(flowId.has("values"));
+        assertEquals(TYPE_NIFI_FLOW, flowId.get("typeName").getTextValue());
+        assertEquals(values1.get(ATTR_NIFI_FLOW).get("id").get("id").getTextValue(), flowId.get("id").getTextValue());
+        assertFalse(values2.get(ATTR_INPUTS).get(0).has("values"));
+    }
+
+    /**
+     * Atlas hook consumer reads messages with the HOOK notification type deserializer.
+     */
+    @Test
+    public void testDeserializedByAtlas() throws Exception {
+        final HookMessageSerializer serializer = new HookMessageSerializer(1, 16);
+        final String json = new String(serializer.serialize(createFlowPaths()), StandardCharsets.UTF_8);
+
+        final Object deserialized = NotificationInterface.NotificationType.HOOK.getDeserializer().deserialize(json);
+        assertTrue(deserialized instanceof HookNotification.EntityCreateRequest);
+        final HookNotification.EntityCreateRequest message = (HookNotification.EntityCreateRequest) deserialized;
+        assertEquals(HookNotification.HookNotificationType.ENTITY_CREATE, message.getType());
+        assertEquals("nifi", message.getUser());
+
+        final List<Referenceable> entities = message.getEntities();
+        assertEquals(2, entities.size());
+        assertEquals(TYPE_NIFI_FLOW_PATH, entities.get(0).getTypeName());
+        assertEquals("path-1", entities.get(0).get(ATTR_QUALIFIED_NAME));
+        final Referenceable flow = (Referenceable) entities.get(0).get(ATTR_NIFI_FLOW);
+        assertEquals("root-group-id", flow.get(ATTR_QUALIFIED_NAME));
+
+        assertEquals("path-2", entities.get(1).get(ATTR_QUALIFIED_NAME));
+        final Id flowId = (Id) entities.get(1).get(ATTR_NIFI_FLOW);
+        assertEquals(flow.getId()._getId(), flowId._getId());
+        assertEquals(TYPE_NIFI_FLOW, flowId.getTypeName());
+
+        final HookNotification.EntityPartialUpdateRequest update = new HookNotification.EntityPartialUpdateRequest("nifi",
+                TYPE_NIFI_FLOW_PATH, ATTR_QUALIFIED_NAME, "path-1", entities.get(0));
+        final Object deserializedUpdate = NotificationInterface.NotificationType.HOOK.getDeserializer()
+                .deserialize(new String(serializer.serialize(update), StandardCharsets.UTF_8));
+        assertTrue(deserializedUpdate instanceof HookNotification.EntityPartialUpdateRequest);
+        assertEquals("path-1", ((HookNotification.EntityPartialUpdateRequest) deserializedUpdate).getAttributeValue());
+    }
+
+}
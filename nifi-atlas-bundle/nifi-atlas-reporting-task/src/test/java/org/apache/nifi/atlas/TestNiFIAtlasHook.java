@@ -1,9 +1,16 @@
 package org.apache.nifi.atlas;
 
+import org.apache.atlas.notification.hook.HookNotification;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_DESCRIPTION;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_NIFI_FLOW;
@@ -11,6 +18,7 @@ import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_URL;
 import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW;
 import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW_PATH;
+import static org.junit.Assert.assertEquals;
 
 public class TestNiFIAtlasHook {
 
@@ -51,4 +59,49 @@ public class TestNiFIAtlasHook {
         hook.addDataSetRefs(refs, flowPathRef);
         hook.commitMessages();
     }
+
+    private static Referenceable createTopic(String name) {
+        final Referenceable topic = new Referenceable("kafka_topic");
+        topic.set(ATTR_NAME, name);
+        topic.set(ATTR_QUALIFIED_NAME, name + "@cluster1");
+        return topic;
+    }
+
+    private static String describe(HookNotification.HookNotificationMessage message) {
+        if (message instanceof HookNotification.EntityCreateRequest) {
+            return "create:" + ((HookNotification.EntityCreateRequest) message).getEntities().get(0).get(ATTR_NAME);
+        }
+        return "update:" + ((HookNotification.EntityPartialUpdateRequest) message).getAttributeValue();
+    }
+
+    @Test
+    public void testMessageOrder() throws Exception {
+        final List<List<String>> published = new ArrayList<>();
+        final NiFIAtlasHook hook = new NiFIAtlasHook() {
+            @Override
+            boolean publishMessages(List<HookNotification.HookNotificationMessage> messages) {
+                published.add(messages.stream().map(TestNiFIAtlasHook::describe).collect(Collectors.toList()));
+                return true;
+            }
+        };
+        final AtlasTrafficShaper trafficShaper = new AtlasTrafficShaper();
+        trafficShaper.setRate(AtlasTrafficShaper.TrafficClass.LINEAGE_CREATE, 1000, 2);
+        hook.setTrafficShaper(trafficShaper);
+
+        hook.addCreateReferenceable(null, createTopic("topicA"));
+        hook.addCreateReferenceable(null, createTopic("topicB"));
+        hook.addCreateReferenceable(null, createTopic("topicC"));
+        final Referenceable flowPath = new Referenceable(TYPE_NIFI_FLOW_PATH);
+        flowPath.set(ATTR_QUALIFIED_NAME, "path-1");
+        hook.addUpdateReferenceable(flowPath);
+        hook.addCreateReferenceable(null, createTopic("topicD"));
+        hook.commitMessages();
+
+        // Chunks never exceed the burst size, and never reorder messages across traffic classes.
+        assertEquals(Arrays.asList(
+                Arrays.asList("create:topicA", "create:topicB"),
+                Collections.singletonList("create:topicC"),
+                Collections.singletonList("update:path-1"),
+                Collections.singletonList("create:topicD")), published);
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.nifi.web.api.entity.ProcessGroupFlowEntity;
+import org.apache.nifi.web.api.entity.ProcessorEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestNiFiApiClient {
+
+    private static final String FLOW_JSON = "{\"permissions\":{\"canRead\":true,\"canWrite\":true}," +
+            "\"processGroupFlow\":{\"id\":\"root\",\"lastRefreshed\":\"10:15:30 +0000\",\"flow\":{\"processors\":[" +
+            "{\"id\":\"p1\",\"status\":{\"id\":\"p1\",\"name\":\"GetFile\",\"aggregateSnapshot\":{\"id\":\"p1\"}},\"bulletins\":[]," +
+            "\"position\":{\"x\":1.0,\"y\":2.0},\"component\":{\"id\":\"p1\",\"name\":\"GetFile\"}}]}}}";
+
+    private static InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        final ProcessGroupFlowEntity entity = NiFiApiClient.decode(toStream(FLOW_JSON), StandardCharsets.UTF_8,
+                ProcessGroupFlowEntity.class, Collections.emptySet());
+
+        assertEquals("root", entity.getProcessGroupFlow().getId());
+        assertNotNull(entity.getProcessGroupFlow().getLastRefreshed());
+        final ProcessorEntity processor = entity.getProcessGroupFlow().getFlow().getProcessors().iterator().next();
+        assertEquals("GetFile", processor.getComponent().getName());
+        assertEquals("GetFile", processor.getStatus().getName());
+        assertNotNull(processor.getPosition());
+    }
+
+    @Test
+    public void testDecodeSelectively() throws IOException {
+        final ProcessGroupFlowEntity entity = NiFiApiClient.decode(toStream(FLOW_JSON), StandardCharsets.UTF_8,
+                ProcessGroupFlowEntity.class, NiFiApiClient.NON_STRUCTURAL_FIELDS);
+
+        final ProcessorEntity processor = entity.getProcessGroupFlow().getFlow().getProcessors().iterator().next();
+        assertEquals("GetFile", processor.getComponent().getName());
+        assertNull(processor.getStatus());
+        assertNull(processor.getBulletins());
+        assertNull(processor.getPosition());
+    }
+
+    @Test
+    public void testDecodeInvalidDate() {
+        try {
+            NiFiApiClient.decode(toStream("{\"processGroupFlow\":{\"lastRefreshed\":\"yesterday\"}}"), StandardCharsets.UTF_8,
+                    ProcessGroupFlowEntity.class, Collections.emptySet());
+            fail("Invalid date should fail");
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testDecodeDateWithTrailingCharacters() {
+        try {
+            NiFiApiClient.decode(toStream("{\"processGroupFlow\":{\"lastRefreshed\":\"10:15:30 +0000 tomorrow\"}}"), StandardCharsets.UTF_8,
+                    ProcessGroupFlowEntity.class, Collections.emptySet());
+            fail("Date with trailing characters should fail");
+        } catch (IOException e) {
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas;
+
+import org.apache.atlas.AtlasClientV2;
+import org.apache.atlas.model.instance.AtlasEntity;
+import org.apache.atlas.model.instance.AtlasObjectId;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_INPUTS;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_OUTPUTS;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW_PATH;
+import static org.junit.Assert.assertEquals;
+
+public class TestNiFiAtlasClient {
+
+    private AtlasEntity createTopic(String name) {
+        final AtlasEntity topic = new AtlasEntity("kafka_topic");
+        topic.setAttribute(ATTR_QUALIFIED_NAME, name + "@cluster1");
+        return topic;
+    }
+
+    private AtlasEntity createFlowPath(String qualifiedName, AtlasEntity input, AtlasEntity output) {
+        final AtlasEntity flowPath = new AtlasEntity(TYPE_NIFI_FLOW_PATH);
+        flowPath.setAttribute(ATTR_QUALIFIED_NAME, qualifiedName);
+        if (input != null) {
+            flowPath.setAttribute(ATTR_INPUTS, Collections.singletonList(
+                    new AtlasObjectId(input.getTypeName(), ATTR_QUALIFIED_NAME, input.getAttribute(ATTR_QUALIFIED_NAME))));
+        }
+        if (output != null) {
+            flowPath.setAttribute(ATTR_OUTPUTS, Collections.singletonList(
+                    new AtlasObjectId(output.getTypeName(), ATTR_QUALIFIED_NAME, output.getAttribute(ATTR_QUALIFIED_NAME))));
+        }
+        return flowPath;
+    }
+
+    private static List<String> qualifiedNames(AtlasEntity.AtlasEntitiesWithExtInfo entities) {
+        return entities.getEntities().stream()
+                .map(entity -> (String) entity.getAttribute(ATTR_QUALIFIED_NAME)).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSendLineage() throws Exception {
+        final AtlasClientV2 atlasClient = Mockito.mock(AtlasClientV2.class);
+        final NiFiAtlasClient client = new NiFiAtlasClient(atlasClient);
+
+        final AtlasEntity topicA = createTopic("topicA");
+        final AtlasEntity topicB = createTopic("topicB");
+        final AtlasEntity topicC = createTopic("topicC");
+        final AtlasEntity pathInput = createFlowPath("path-1", topicA, null);
+        final AtlasEntity pathOutput = createFlowPath("path-2", null, topicB);
+        // A flow path without inputs nor outputs is still a Process.
+        final AtlasEntity pathNoIO = createFlowPath("path-4", null, null);
+        // Processes are listed before DataSets, but DataSets have to be created first.
+        final List<AtlasEntity> created = Arrays.asList(pathInput, topicA, pathOutput, topicB, topicC, pathNoIO);
+        final AtlasEntity updatedPath = createFlowPath("path-3", topicC, null);
+
+        client.sendLineage(created, Collections.singletonList(updatedPath), 2);
+
+        final InOrder inOrder = Mockito.inOrder(atlasClient);
+        final ArgumentCaptor<AtlasEntity.AtlasEntitiesWithExtInfo> batches = ArgumentCaptor.forClass(AtlasEntity.AtlasEntitiesWithExtInfo.class);
+        // Updated entities are sent with the bulk API, too.
+        inOrder.verify(atlasClient, Mockito.times(5)).createEntities(batches.capture());
+        inOrder.verifyNoMoreInteractions();
+
+        final List<List<String>> sent = new ArrayList<>();
+        batches.getAllValues().forEach(batch -> sent.add(qualifiedNames(batch)));
+        assertEquals(Arrays.asList(
+                Arrays.asList("topicA@cluster1", "topicB@cluster1"),
+                Collections.singletonList("topicC@cluster1"),
+                Arrays.asList("path-1", "path-2"),
+                Collections.singletonList("path-4"),
+                Collections.singletonList("path-3")), sent);
+    }
+
+}
@@ -32,12 +32,17 @@ import org.mockito.Mockito;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_INPUTS;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_OUTPUTS;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_DATA;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_FLOW_PATH;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Matchers.matches;
@@ -55,16 +60,15 @@ public class TestByFileLineageStrategy {
         NiFIAtlasHook atlasHook = new NiFIAtlasHook() {
             protected void notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
 
-                assertEquals(4, messages.size());
+                // The child DataSet is created only once, then referred from the parent and the child processes.
+                assertEquals(3, messages.size());
                 assertEquals(1, ((HookNotification.EntityCreateRequest)messages.get(0)).getEntities().size());
                 assertEquals(1, ((HookNotification.EntityCreateRequest)messages.get(1)).getEntities().size());
                 assertEquals(1, ((HookNotification.EntityCreateRequest)messages.get(2)).getEntities().size());
-                assertEquals(1, ((HookNotification.EntityCreateRequest)messages.get(3)).getEntities().size());
 
                 assertEquals("nifi_data", ((HookNotification.EntityCreateRequest)messages.get(0)).getEntities().get(0).getTypeName());
                 assertEquals("nifi_flow_path", ((HookNotification.EntityCreateRequest)messages.get(1)).getEntities().get(0).getTypeName());
-                assertEquals("nifi_data", ((HookNotification.EntityCreateRequest)messages.get(2)).getEntities().get(0).getTypeName());
-                assertEquals("nifi_flow_path", ((HookNotification.EntityCreateRequest)messages.get(3)).getEntities().get(0).getTypeName());
+                assertEquals("nifi_flow_path", ((HookNotification.EntityCreateRequest)messages.get(2)).getEntities().get(0).getTypeName());
 
                 Referenceable nifiData0 = ((HookNotification.EntityCreateRequest)messages.get(0)).getEntities().get(0);
                 assertEquals("child-guid-1", nifiData0.get(ATTR_QUALIFIED_NAME));
@@ -74,9 +78,8 @@ public class TestByFileLineageStrategy {
 
                 Referenceable nifiData2 = ((HookNotification.EntityCreateRequest)messages.get(2)).getEntities().get(0);
                 assertEquals("child-guid-1", nifiData2.get(ATTR_QUALIFIED_NAME));
-
-                Referenceable nifiData3 = ((HookNotification.EntityCreateRequest)messages.get(3)).getEntities().get(0);
-                assertEquals("child-guid-1", nifiData3.get(ATTR_QUALIFIED_NAME));
+                final Referenceable childInput = ((List<Referenceable>) nifiData2.get(ATTR_INPUTS)).get(0);
+                assertEquals("child-guid-1", childInput.get(ATTR_QUALIFIED_NAME));
 
             }
         };
@@ -94,6 +97,7 @@ public class TestByFileLineageStrategy {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final AnalysisContext context = Mockito.mock(AnalysisContext.class);
         when(context.getClusterResolver()).thenReturn(clusterResolvers);
@@ -115,4 +119,79 @@ public class TestByFileLineageStrategy {
         atlasHook.commitMessages();
     }
 
+    private ProvenanceEventRecord createCloneEvent(int childCount) {
+        final List<String> childUuids = new ArrayList<>();
+        for (int i = 0; i < childCount; i++) {
+            childUuids.add("child-guid-" + i);
+        }
+        final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+        when(event.getComponentId()).thenReturn("comp-id");
+        when(event.getComponentType()).thenReturn("SplitText");
+        when(event.getFlowFileUuid()).thenReturn("file-guid");
+        when(event.getChildUuids()).thenReturn(childUuids);
+        when(event.getEventType()).thenReturn(ProvenanceEventType.CLONE);
+        return event;
+    }
+
+    private List<HookNotification.HookNotificationMessage> processClone(int childCount, int fanOutThreshold) {
+        final List<HookNotification.HookNotificationMessage> notified = new ArrayList<>();
+        final NiFIAtlasHook atlasHook = new NiFIAtlasHook() {
+            @Override
+            protected void notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
+                notified.addAll(messages);
+            }
+        };
+
+        final ByFileLineageStrategy strategy = new ByFileLineageStrategy(new MockComponentLog("0", this), atlasHook);
+        strategy.setCloneFanOutThreshold(fanOutThreshold);
+
+        final NiFiFlow nifiFlow = new NiFiFlow("flow", "root-id", "http://nifi.example.com:8080/nifi");
+        strategy.processEvent(createCloneEvent(childCount), nifiFlow, Mockito.mock(AnalysisContext.class));
+        atlasHook.commitMessages();
+        return notified;
+    }
+
+    @Test
+    public void testCloneChunks() {
+        final List<HookNotification.HookNotificationMessage> messages = processClone(150, 1000);
+
+        // 150 DataSets in 2 chunks, a parent and 150 children.
+        assertEquals(2 + 1 + 150, messages.size());
+        assertEquals(100, ((HookNotification.EntityCreateRequest) messages.get(0)).getEntities().size());
+        assertEquals(50, ((HookNotification.EntityCreateRequest) messages.get(1)).getEntities().size());
+
+        final Referenceable parent = ((HookNotification.EntityCreateRequest) messages.get(2)).getEntities().get(0);
+        assertEquals("file-guid", parent.get(ATTR_QUALIFIED_NAME));
+        assertEquals(150, ((Collection) parent.get(ATTR_OUTPUTS)).size());
+
+        // Each child refers only its own DataSet.
+        final Referenceable child = ((HookNotification.EntityCreateRequest) messages.get(3)).getEntities().get(0);
+        assertEquals("child-guid-0", child.get(ATTR_QUALIFIED_NAME));
+        final List<Referenceable> inputs = (List<Referenceable>) child.get(ATTR_INPUTS);
+        assertEquals(1, inputs.size());
+        assertEquals("child-guid-0", inputs.get(0).get(ATTR_QUALIFIED_NAME));
+    }
+
+    @Test
+    public void testCloneFanOut() {
+        final List<HookNotification.HookNotificationMessage> messages = processClone(3, 2);
+
+        // A fan-out DataSet, a parent and a single process for all 3 children.
+        assertEquals(1 + 1 + 1, messages.size());
+        final Referenceable fanOut = ((HookNotification.EntityCreateRequest) messages.get(0)).getEntities().get(0);
+        assertEquals(TYPE_NIFI_DATA, fanOut.getTypeName());
+        assertEquals("file-guid-clones", fanOut.get(ATTR_QUALIFIED_NAME));
+
+        final Referenceable parent = ((HookNotification.EntityCreateRequest) messages.get(1)).getEntities().get(0);
+        assertEquals("file-guid", parent.get(ATTR_QUALIFIED_NAME));
+        assertEquals(1, ((Collection) parent.get(ATTR_OUTPUTS)).size());
+
+        final Referenceable clones = ((HookNotification.EntityCreateRequest) messages.get(2)).getEntities().get(0);
+        assertEquals(TYPE_NIFI_FLOW_PATH, clones.getTypeName());
+        assertEquals("file-guid-clones", clones.get(ATTR_QUALIFIED_NAME));
+        final List<Referenceable> inputs = (List<Referenceable>) clones.get(ATTR_INPUTS);
+        assertEquals(1, inputs.size());
+        assertEquals("file-guid-clones", inputs.get(0).get(ATTR_QUALIFIED_NAME));
+    }
+
 }
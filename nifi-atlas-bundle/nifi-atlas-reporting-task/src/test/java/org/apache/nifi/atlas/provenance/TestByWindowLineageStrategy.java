@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.atlas.NiFIAtlasHook;
+import org.apache.nifi.atlas.NiFiFlow;
+import org.apache.nifi.atlas.NiFiFlowPath;
+import org.apache.nifi.atlas.resolver.ClusterResolvers;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.util.MockComponentLog;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_BYTE_COUNT;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_EVENT_COUNT;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_NIFI_FLOW_PATH;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_OUTPUTS;
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.apache.nifi.atlas.NiFiTypes.TYPE_NIFI_LINEAGE_WINDOW;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.matches;
+import static org.mockito.Mockito.when;
+
+public class TestByWindowLineageStrategy {
+
+    private ProvenanceEventRecord createEvent(String topic, long eventTime) {
+        final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+        when(event.getComponentId()).thenReturn("comp-id");
+        when(event.getComponentType()).thenReturn("PublishKafka");
+        when(event.getTransitUri()).thenReturn("PLAINTEXT://0.example.com:6667/" + topic);
+        when(event.getEventType()).thenReturn(ProvenanceEventType.SEND);
+        when(event.getEventTime()).thenReturn(eventTime);
+        when(event.getFileSize()).thenReturn(100L);
+        return event;
+    }
+
+    @Test
+    public void testAggregateByWindow() {
+        final List<HookNotification.HookNotificationMessage> notified = new ArrayList<>();
+        final NiFIAtlasHook atlasHook = new NiFIAtlasHook() {
+            @Override
+            protected void notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
+                notified.addAll(messages);
+            }
+        };
+
+        final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
+        when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
+        final AnalysisContext context = Mockito.mock(AnalysisContext.class);
+        when(context.getClusterResolver()).thenReturn(clusterResolvers);
+
+        final NiFiFlow nifiFlow = new NiFiFlow("flow", "root-id", "http://nifi.example.com:8080/nifi");
+        final NiFiFlowPath flowPath = new NiFiFlowPath("comp-id");
+        flowPath.setName("PublishKafka");
+        flowPath.addProcessor("comp-id");
+        nifiFlow.getFlowPaths().add(flowPath);
+
+        final ByWindowLineageStrategy strategy = new ByWindowLineageStrategy(new MockComponentLog("0", this), atlasHook, 60_000);
+        strategy.setNodeId("node1");
+
+        // Two windows, the first one has 3 events and 2 topics.
+        strategy.processEvent(createEvent("topicA", 1_000), nifiFlow, context);
+        strategy.processEvent(createEvent("topicB", 2_000), nifiFlow, context);
+        strategy.processEvent(createEvent("topicA", 59_000), nifiFlow, context);
+        strategy.processEvent(createEvent("topicA", 61_000), nifiFlow, context);
+        strategy.flush(nifiFlow);
+        atlasHook.commitMessages();
+
+        final List<Referenceable> windows = new ArrayList<>();
+        notified.forEach(message -> ((HookNotification.EntityCreateRequest) message).getEntities().stream()
+                .filter(ref -> TYPE_NIFI_LINEAGE_WINDOW.equals(ref.getTypeName())).forEach(windows::add));
+        assertEquals(2, windows.size());
+
+        final Referenceable window0 = windows.get(0);
+        final String window0Name = (String) window0.get(ATTR_QUALIFIED_NAME);
+        assertTrue(window0Name, window0Name.startsWith("comp-id@0@node1@"));
+        assertEquals(3L, window0.get(ATTR_EVENT_COUNT));
+        assertEquals(300L, window0.get(ATTR_BYTE_COUNT));
+        assertEquals(2, ((Collection) window0.get(ATTR_OUTPUTS)).size());
+
+        final Referenceable window1 = windows.get(1);
+        assertTrue(((String) window1.get(ATTR_QUALIFIED_NAME)).startsWith("comp-id@60000@node1@"));
+        assertEquals(1L, window1.get(ATTR_EVENT_COUNT));
+
+        // Nothing is sent if there's no update. Windows are evicted after event time passes.
+        notified.clear();
+        strategy.processEvent(createEvent("topicA", 181_000), nifiFlow, context);
+        strategy.flush(nifiFlow);
+        atlasHook.commitMessages();
+        assertEquals(2, notified.size());
+        assertEquals(1, strategy.getWindowCount());
+
+        // A late event of an evicted window is aggregated as another entity, not to overwrite the reported one.
+        notified.clear();
+        strategy.processEvent(createEvent("topicA", 30_000), nifiFlow, context);
+        strategy.flush(nifiFlow);
+        atlasHook.commitMessages();
+        final List<Referenceable> lateWindows = new ArrayList<>();
+        notified.forEach(message -> ((HookNotification.EntityCreateRequest) message).getEntities().stream()
+                .filter(ref -> TYPE_NIFI_LINEAGE_WINDOW.equals(ref.getTypeName())).forEach(lateWindows::add));
+        assertEquals(1, lateWindows.size());
+        final String lateWindowName = (String) lateWindows.get(0).get(ATTR_QUALIFIED_NAME);
+        assertTrue(lateWindowName, lateWindowName.startsWith("comp-id@0@node1@"));
+        assertNotEquals(window0Name, lateWindowName);
+        assertEquals(1L, lateWindows.get(0).get(ATTR_EVENT_COUNT));
+    }
+
+    @Test
+    public void testProcessEventsInBatch() {
+        final List<HookNotification.HookNotificationMessage> notified = new ArrayList<>();
+        final NiFIAtlasHook atlasHook = new NiFIAtlasHook() {
+            @Override
+            protected void notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
+                notified.addAll(messages);
+            }
+        };
+
+        final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
+        when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
+        final AnalysisContext context = Mockito.mock(AnalysisContext.class);
+        when(context.getClusterResolver()).thenReturn(clusterResolvers);
+
+        final NiFiFlow nifiFlow = new NiFiFlow("flow", "root-id", "http://nifi.example.com:8080/nifi");
+        final NiFiFlowPath flowPath = new NiFiFlowPath("comp-id");
+        flowPath.setName("PublishKafka");
+        flowPath.addProcessor("comp-id");
+        nifiFlow.getFlowPaths().add(flowPath);
+
+        final ByWindowLineageStrategy strategy = new ByWindowLineageStrategy(new MockComponentLog("0", this), atlasHook, 60_000);
+        final DataSetRefsCache cache = new DataSetRefsCache(10, 60_000);
+        strategy.setDataSetRefsCache(cache);
+
+        // Events without an analyzer are skipped, and the rest are analyzed together.
+        final ProvenanceEventRecord unknown = createEvent("topicA", 1_500);
+        when(unknown.getComponentType()).thenReturn("UnknownProcessor");
+        when(unknown.getTransitUri()).thenReturn("unknown://0.example.com/topicA");
+        strategy.processEvents(Arrays.asList(createEvent("topicA", 1_000), unknown,
+                createEvent("topicB", 2_000), createEvent("topicA", 61_000)), nifiFlow, context);
+        strategy.flush(nifiFlow);
+        atlasHook.commitMessages();
+
+        final List<Referenceable> windows = new ArrayList<>();
+        notified.forEach(message -> ((HookNotification.EntityCreateRequest) message).getEntities().stream()
+                .filter(ref -> TYPE_NIFI_LINEAGE_WINDOW.equals(ref.getTypeName())).forEach(windows::add));
+        assertEquals(2, windows.size());
+        assertEquals(2L, windows.get(0).get(ATTR_EVENT_COUNT));
+        assertEquals(2, ((Collection) windows.get(0).get(ATTR_OUTPUTS)).size());
+        assertEquals(1L, windows.get(1).get(ATTR_EVENT_COUNT));
+
+        // The same topic in the batch is analyzed once.
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testSendOnlyNewDataSets() {
+        final List<HookNotification.HookNotificationMessage> notified = new ArrayList<>();
+        final NiFIAtlasHook atlasHook = new NiFIAtlasHook() {
+            @Override
+            protected void notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
+                notified.addAll(messages);
+            }
+        };
+
+        final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
+        when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
+        final AnalysisContext context = Mockito.mock(AnalysisContext.class);
+        when(context.getClusterResolver()).thenReturn(clusterResolvers);
+
+        final NiFiFlow nifiFlow = new NiFiFlow("flow", "root-id", "http://nifi.example.com:8080/nifi");
+        final NiFiFlowPath flowPath = new NiFiFlowPath("comp-id");
+        flowPath.setName("PublishKafka");
+        flowPath.addProcessor("comp-id");
+        nifiFlow.getFlowPaths().add(flowPath);
+
+        final ByWindowLineageStrategy strategy = new ByWindowLineageStrategy(new MockComponentLog("0", this), atlasHook, 60_000);
+
+        strategy.processEvent(createEvent("topicA", 1_000), nifiFlow, context);
+        strategy.flush(nifiFlow);
+        atlasHook.commitMessages();
+
+        // The same window is updated with another topic.
+        notified.clear();
+        strategy.processEvent(createEvent("topicA", 2_000), nifiFlow, context);
+        strategy.processEvent(createEvent("topicB", 3_000), nifiFlow, context);
+        strategy.flush(nifiFlow);
+        atlasHook.commitMessages();
+
+        final List<Referenceable> dataSets = new ArrayList<>();
+        final List<Referenceable> windows = new ArrayList<>();
+        notified.forEach(message -> ((HookNotification.EntityCreateRequest) message).getEntities()
+                .forEach(ref -> (TYPE_NIFI_LINEAGE_WINDOW.equals(ref.getTypeName()) ? windows : dataSets).add(ref)));
+
+        // Only topicB is created.
+        assertEquals(1, dataSets.size());
+        assertEquals("topicB@cluster1", dataSets.get(0).get(ATTR_QUALIFIED_NAME));
+
+        // The window still has both topics, topicA is referred by qualifiedName.
+        assertEquals(1, windows.size());
+        final List outputs = (List) windows.get(0).get(ATTR_OUTPUTS);
+        assertEquals(2, outputs.size());
+        final Referenceable topicA = (Referenceable) outputs.get(0);
+        assertEquals("topicA@cluster1", topicA.get(ATTR_QUALIFIED_NAME));
+        assertNull(topicA.get(ATTR_NAME));
+        assertEquals("topicB", ((Referenceable) outputs.get(1)).get(ATTR_NAME));
+
+        // The flow path is referred by qualifiedName only, not to overwrite its attributes.
+        final Referenceable flowPathRef = (Referenceable) windows.get(0).get(ATTR_NIFI_FLOW_PATH);
+        assertEquals(Collections.singleton(ATTR_QUALIFIED_NAME), flowPathRef.getValuesMap().keySet());
+        assertEquals("comp-id", flowPathRef.get(ATTR_QUALIFIED_NAME));
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.atlas.provenance.analyzer.Hive2JDBC;
+import org.apache.nifi.atlas.provenance.analyzer.KafkaTopic;
+import org.apache.nifi.atlas.resolver.ClusterResolvers;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.matches;
+import static org.mockito.Mockito.when;
+
+public class TestDataSetRefsCache {
+
+    private ProvenanceEventRecord createEvent(String componentId, String componentType, String transitUri) {
+        final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+        when(event.getComponentId()).thenReturn(componentId);
+        when(event.getComponentType()).thenReturn(componentType);
+        when(event.getTransitUri()).thenReturn(transitUri);
+        when(event.getEventType()).thenReturn(ProvenanceEventType.SEND);
+        return event;
+    }
+
+    private AnalysisContext createContext() {
+        final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
+        when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
+        final AnalysisContext context = Mockito.mock(AnalysisContext.class);
+        when(context.getClusterResolver()).thenReturn(clusterResolvers);
+        return context;
+    }
+
+    @Test
+    public void testCache() {
+        final DataSetRefsCache cache = new DataSetRefsCache(10, 60_000);
+        final AnalysisContext context = createContext();
+        final KafkaTopic analyzer = new KafkaTopic();
+
+        final DataSetRefs refs1 = cache.analyze(analyzer, context, createEvent("comp-1", "PublishKafka", "PLAINTEXT://0.example.com:6667/topicA"));
+        final DataSetRefs refs2 = cache.analyze(analyzer, context, createEvent("comp-2", "PublishKafka", "PLAINTEXT://0.example.com:6667/topicA"));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        // The cached DataSet is bound to the component of each event.
+        assertEquals("comp-1", refs1.getComponentIds().iterator().next());
+        assertEquals("comp-2", refs2.getComponentIds().iterator().next());
+        final Referenceable topic = refs2.getOutputs().iterator().next();
+        assertEquals("topicA@cluster1", topic.get(ATTR_QUALIFIED_NAME));
+
+        // Different transit URI.
+        cache.analyze(analyzer, context, createEvent("comp-1", "PublishKafka", "PLAINTEXT://0.example.com:6667/topicB"));
+        assertEquals(2, cache.getMissCount());
+
+        // Cluster resolver has changed.
+        cache.analyze(analyzer, createContext(), createEvent("comp-1", "PublishKafka", "PLAINTEXT://0.example.com:6667/topicA"));
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCacheKeyAttributes() {
+        final DataSetRefsCache cache = new DataSetRefsCache(10, 60_000);
+        final AnalysisContext context = createContext();
+        final Hive2JDBC analyzer = new Hive2JDBC();
+
+        final ProvenanceEventRecord event1 = createEvent("comp-1", "PutHiveQL", "jdbc:hive2://0.example.com:10000/databaseA");
+        when(event1.getAttribute("query.output.tables")).thenReturn("tableA");
+        final ProvenanceEventRecord event2 = createEvent("comp-1", "PutHiveQL", "jdbc:hive2://0.example.com:10000/databaseA");
+        when(event2.getAttribute("query.output.tables")).thenReturn("tableB");
+
+        assertEquals("databaseA.tableA@cluster1", cache.analyze(analyzer, context, event1).getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+        assertEquals("databaseA.tableB@cluster1", cache.analyze(analyzer, context, event2).getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+        assertEquals("databaseA.tableA@cluster1", cache.analyze(analyzer, context, event1).getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testBatch() {
+        final DataSetRefsCache cache = new DataSetRefsCache(10, 60_000);
+        final AnalysisContext context = createContext();
+        final AtomicInteger analyzedCount = new AtomicInteger();
+        final KafkaTopic analyzer = new KafkaTopic() {
+            @Override
+            public DataSetRefs analyze(AnalysisContext context, ProvenanceEventRecord event) {
+                analyzedCount.incrementAndGet();
+                return super.analyze(context, event);
+            }
+        };
+
+        final List<DataSetRefs> refs = cache.analyze(analyzer, context, Arrays.asList(
+                createEvent("comp-1", "PublishKafka", "PLAINTEXT://0.example.com:6667/topicA"),
+                createEvent("comp-2", "PublishKafka", "PLAINTEXT://0.example.com:6667/topicB"),
+                createEvent("comp-3", "PublishKafka", "PLAINTEXT://0.example.com:6667/topicA")));
+
+        // Identical transit URIs in a batch are analyzed only once.
+        assertEquals(2, analyzedCount.get());
+        assertEquals(3, refs.size());
+        assertEquals("topicA@cluster1", refs.get(0).getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+        assertEquals("topicB@cluster1", refs.get(1).getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+        assertEquals("topicA@cluster1", refs.get(2).getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+        assertEquals("comp-3", refs.get(2).getComponentIds().iterator().next());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.util.MockComponentLog;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestEventTracer {
+
+    @Test
+    public void testWarningSummary() {
+        final MockComponentLog componentLog = new MockComponentLog("0", this);
+        final EventTracer tracer = new EventTracer(0.1, 8);
+
+        for (int i = 0; i < 10; i++) {
+            tracer.trace(Mockito.mock(ProvenanceEventRecord.class));
+        }
+        tracer.countWarning("FlowPath was not found", "comp-1");
+        tracer.countWarning("FlowPath was not found", "comp-1");
+        tracer.countWarning("FlowPath was not found", "comp-2");
+        tracer.logBatchSummary(componentLog);
+
+        // Warnings are aggregated into a single message.
+        assertEquals(1, componentLog.getWarnMessages().size());
+        // Tracing is disabled as DEBUG level is not enabled.
+        assertTrue(tracer.getRecentTraces().isEmpty());
+
+        // Counts are reset per batch.
+        componentLog.clearAllMessages();
+        tracer.logBatchSummary(componentLog);
+        assertEquals(0, componentLog.getWarnMessages().size());
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+public class TestFlowFileEventIndex {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private ProvenanceEventRecord createEvent(long eventId, String componentId, String flowFileUuid, List<String> childUuids) {
+        final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+        when(event.getEventId()).thenReturn(eventId);
+        when(event.getComponentId()).thenReturn(componentId);
+        when(event.getFlowFileUuid()).thenReturn(flowFileUuid);
+        when(event.getChildUuids()).thenReturn(childUuids);
+        return event;
+    }
+
+    @Test
+    public void testFindPrevious() {
+        final FlowFileEventIndex index = new FlowFileEventIndex(10);
+        final ProvenanceEventRecord create = createEvent(1, "processor-1", "ff-1", null);
+        final ProvenanceEventRecord clone = createEvent(2, "processor-2", "ff-1", Arrays.asList("ff-2", "ff-3"));
+        final ProvenanceEventRecord send = createEvent(3, "output-port", "ff-2", null);
+
+        assertNull(index.findPrevious(create));
+        index.record(create);
+        assertEquals("processor-1", index.findPrevious(clone).getComponentId());
+        index.record(clone);
+
+        // Children are indexed with the parent event.
+        assertEquals("processor-2", index.findPrevious(send).getComponentId());
+        assertEquals(2, index.findPrevious(send).getEventId());
+        index.record(send);
+
+        // The event itself shouldn't be returned if it's consumed again.
+        assertNull(index.findPrevious(send));
+    }
+
+    @Test
+    public void testOlderEventsDoNotReplaceNewer() {
+        final FlowFileEventIndex index = new FlowFileEventIndex(10);
+        index.record(createEvent(10, "processor-2", "ff-1", Arrays.asList("ff-2")));
+
+        // Back-filled older events of the same FlowFiles.
+        index.record(createEvent(5, "processor-1", "ff-1", Arrays.asList("ff-2", "ff-3")));
+
+        final ProvenanceEventRecord send = createEvent(11, "output-port", "ff-1", null);
+        assertEquals(10, index.findPrevious(send).getEventId());
+        assertEquals(10, index.findPrevious(createEvent(12, "output-port", "ff-2", null)).getEventId());
+        // A child not indexed by the newer event is indexed.
+        assertEquals(5, index.findPrevious(createEvent(13, "output-port", "ff-3", null)).getEventId());
+    }
+
+    @Test
+    public void testEviction() {
+        final FlowFileEventIndex index = new FlowFileEventIndex(2);
+        index.record(createEvent(1, "processor-1", "ff-1", null));
+        index.record(createEvent(2, "processor-1", "ff-2", null));
+        index.record(createEvent(3, "processor-1", "ff-3", null));
+        assertEquals(2, index.size());
+        assertNull(index.findPrevious(createEvent(4, "output-port", "ff-1", null)));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final File file = new File(tmpDir.getRoot(), "index");
+        final FlowFileEventIndex index = new FlowFileEventIndex(10);
+        index.record(createEvent(1, "processor-1", "ff-1", null));
+        index.record(createEvent(2, "processor-2", "ff-2", null));
+        index.save(file);
+
+        final FlowFileEventIndex loaded = new FlowFileEventIndex(10);
+        loaded.load(file);
+        assertEquals(2, loaded.size());
+        assertEquals("processor-2", loaded.findPrevious(createEvent(3, "output-port", "ff-2", null)).getComponentId());
+
+        // Missing file is ignored.
+        loaded.load(new File(tmpDir.getRoot(), "missing"));
+        assertEquals(2, loaded.size());
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.junit.Test;
+
+import static org.apache.nifi.atlas.provenance.LineageDegradationPolicy.Tier.BY_PATH;
+import static org.apache.nifi.atlas.provenance.LineageDegradationPolicy.Tier.FLOW_STRUCTURE_ONLY;
+import static org.apache.nifi.atlas.provenance.LineageDegradationPolicy.Tier.FULL;
+import static org.apache.nifi.atlas.provenance.LineageDegradationPolicy.Tier.SAMPLED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestLineageDegradationPolicy {
+
+    @Test
+    public void testDegradeAndRestore() {
+        final LineageDegradationPolicy policy = new LineageDegradationPolicy(1000, 0);
+        assertFalse(policy.update(999, 0));
+        assertEquals(FULL, policy.getTier());
+
+        // Degrade directly to the tier of the current lag.
+        assertTrue(policy.update(4000, 0));
+        assertEquals(FLOW_STRUCTURE_ONLY, policy.getTier());
+
+        // Stays while the lag is not below the half of the current tier.
+        assertFalse(policy.update(2000, 0));
+        assertEquals(FLOW_STRUCTURE_ONLY, policy.getTier());
+
+        // Restores one tier at a time.
+        assertTrue(policy.update(0, 0));
+        assertEquals(BY_PATH, policy.getTier());
+        assertFalse(policy.update(1000, 0));
+        assertEquals(BY_PATH, policy.getTier());
+        assertTrue(policy.update(999, 0));
+        assertEquals(SAMPLED, policy.getTier());
+        assertFalse(policy.update(500, 0));
+        assertTrue(policy.update(499, 0));
+        assertEquals(FULL, policy.getTier());
+    }
+
+    @Test
+    public void testEventAge() {
+        final LineageDegradationPolicy policy = new LineageDegradationPolicy(0, 60_000);
+        // Event lag is not used.
+        assertFalse(policy.update(Long.MAX_VALUE, 0));
+        assertEquals(FULL, policy.getTier());
+
+        assertTrue(policy.update(0, 120_000));
+        assertEquals(BY_PATH, policy.getTier());
+    }
+
+    @Test
+    public void testWhicheverIsMoreBehind() {
+        final LineageDegradationPolicy policy = new LineageDegradationPolicy(1000, 60_000);
+        assertTrue(policy.update(1000, 1_000));
+        assertEquals(SAMPLED, policy.getTier());
+        assertTrue(policy.update(10, 240_000));
+        assertEquals(FLOW_STRUCTURE_ONLY, policy.getTier());
+    }
+
+}
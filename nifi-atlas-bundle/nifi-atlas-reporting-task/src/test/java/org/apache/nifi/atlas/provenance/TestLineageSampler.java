@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.atlas.NiFiFlow;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class TestLineageSampler {
+
+    private final NiFiFlow nifiFlow = new NiFiFlow("flow", "root-id", "http://nifi.example.com:8080/nifi");
+
+    private static String uuid(int i) {
+        return UUID.nameUUIDFromBytes(("flowfile-" + i).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private ProvenanceEventRecord createEvent(String componentId, ProvenanceEventType eventType, String flowFileUuid, List<String> childUuids) {
+        final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+        when(event.getComponentId()).thenReturn(componentId);
+        when(event.getEventType()).thenReturn(eventType);
+        when(event.getFlowFileUuid()).thenReturn(flowFileUuid);
+        when(event.getChildUuids()).thenReturn(childUuids);
+        return event;
+    }
+
+    @Test
+    public void testSamplingRate() {
+        final LineageSampler sampler = new LineageSampler(0.1, Collections.emptyMap(), 100);
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final ProvenanceEventRecord event = createEvent("comp-id", ProvenanceEventType.SEND, uuid(i), null);
+            final boolean result = sampler.isSampled(event, nifiFlow);
+            // Decision should be deterministic.
+            assertEquals(result, sampler.isSampled(event, nifiFlow));
+            if (result) {
+                sampled++;
+            }
+        }
+        assertTrue("sampled=" + sampled, sampled > 800 && sampled < 1200);
+    }
+
+    @Test
+    public void testClonedChildrenFollowRoot() {
+        final LineageSampler sampler = new LineageSampler(0.5, Collections.emptyMap(), 100);
+        for (int i = 0; i < 100; i++) {
+            final String parent = uuid(i);
+            final String child = uuid(i + 1000);
+            final boolean parentSampled = sampler.isSampled(createEvent("comp-id", ProvenanceEventType.CLONE, parent,
+                    Collections.singletonList(child)), nifiFlow);
+            assertEquals(parentSampled, sampler.isSampled(createEvent("comp-id", ProvenanceEventType.SEND, child, null), nifiFlow));
+        }
+    }
+
+    @Test
+    public void testSharedClonedChildren() {
+        final LineageSampler sampler = new LineageSampler(0.5, Collections.emptyMap(), 100);
+        final LineageSampler shared = new LineageSampler(0.5, Collections.emptyMap(), sampler);
+        for (int i = 0; i < 100; i++) {
+            final String parent = uuid(i);
+            final String child = uuid(i + 1000);
+            final boolean parentSampled = sampler.isSampled(createEvent("comp-id", ProvenanceEventType.CLONE, parent,
+                    Collections.singletonList(child)), nifiFlow);
+            // The child is tracked by the sampler seen the CLONE event.
+            assertEquals(parentSampled, shared.isSampled(createEvent("comp-id", ProvenanceEventType.SEND, child, null), nifiFlow));
+        }
+    }
+
+    @Test
+    public void testRateOverride() {
+        final LineageSampler sampler = new LineageSampler(0, Collections.singletonMap("full-fidelity", 1.0), 100);
+        assertTrue(sampler.isEnabled());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sampler.isSampled(createEvent("full-fidelity", ProvenanceEventType.SEND, uuid(i), null), nifiFlow));
+            assertFalse(sampler.isSampled(createEvent("comp-id", ProvenanceEventType.SEND, uuid(i), null), nifiFlow));
+        }
+
+        assertFalse(new LineageSampler(1, Collections.singletonMap("comp-id", 1.0), 100).isEnabled());
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.atlas.provenance.analyzer.CreateObscureInputDataSet;
+import org.apache.nifi.atlas.provenance.analyzer.HDFSPath;
+import org.apache.nifi.atlas.provenance.analyzer.Hive2JDBC;
+import org.apache.nifi.atlas.provenance.analyzer.KafkaTopic;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.junit.Test;
+
+import static org.apache.nifi.atlas.provenance.NiFiProvenanceEventAnalyzerFactory.getAnalyzer;
+import static org.apache.nifi.atlas.provenance.NiFiProvenanceEventAnalyzerFactory.getTransitUriPrefix;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestNiFiProvenanceEventAnalyzerFactory {
+
+    @Test
+    public void testGetTransitUriPrefix() {
+        assertEquals("hdfs://", getTransitUriPrefix("hdfs://0.example.com:8020/user/nifi/fileA"));
+        assertEquals("jdbc:hive2://", getTransitUriPrefix("jdbc:hive2://0.example.com:10000/databaseA"));
+        assertEquals("", getTransitUriPrefix("file:/var/data/landing/sample_z"));
+        assertNull(getTransitUriPrefix(null));
+    }
+
+    @Test
+    public void testCachedDispatch() {
+        // Repeat to use cached results.
+        for (int i = 0; i < 2; i++) {
+            assertTrue(getAnalyzer("PublishKafka_0_10", "PLAINTEXT://0.example.com:6667/topicA", ProvenanceEventType.SEND) instanceof KafkaTopic);
+            assertTrue(getAnalyzer("PutHDFS", "hdfs://0.example.com:8020/user/nifi/fileA", ProvenanceEventType.SEND) instanceof HDFSPath);
+            assertTrue(getAnalyzer("PutHiveQL", "jdbc:hive2://0.example.com:10000/databaseA", ProvenanceEventType.SEND) instanceof Hive2JDBC);
+
+            // Transit URIs sharing the same prefix can be analyzed differently.
+            assertTrue(getAnalyzer("GenerateFlowFile", "hdfs://", ProvenanceEventType.CREATE) instanceof CreateObscureInputDataSet);
+            assertTrue(getAnalyzer("GenerateFlowFile", "hdfs://0.example.com/fileA", ProvenanceEventType.CREATE) instanceof HDFSPath);
+            assertTrue(getAnalyzer("GenerateFlowFile", null, ProvenanceEventType.CREATE) instanceof CreateObscureInputDataSet);
+            assertNull(getAnalyzer("UpdateAttribute", null, ProvenanceEventType.ATTRIBUTES_MODIFIED));
+        }
+    }
+
+}
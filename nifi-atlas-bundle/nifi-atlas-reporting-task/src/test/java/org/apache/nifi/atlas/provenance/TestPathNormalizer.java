@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPathNormalizer {
+
+    @Test
+    public void testRegex() {
+        final PathNormalizer normalizer = PathNormalizer.parse("# Collapse partitions\n" +
+                "^(/data/events)/dt=[^/]+/.*$ => $1\n" +
+                "\n" +
+                "^(/landing)/[^/]+\\.csv$ => $1/*.csv");
+
+        assertEquals("/data/events", normalizer.normalize("/data/events/dt=2026-10-17/part-0001"));
+        assertEquals("/landing/*.csv", normalizer.normalize("/landing/sample_z.csv"));
+        assertEquals("/landing/sample_z.json", normalizer.normalize("/landing/sample_z.json"));
+    }
+
+    @Test
+    public void testGlob() {
+        final PathNormalizer normalizer = PathNormalizer.parse("glob:/data/*/dt=*/** => /data/$1");
+        assertEquals("/data/events", normalizer.normalize("/data/events/dt=2026-10-17/part-0001"));
+        assertEquals("/data/events/part-0001", normalizer.normalize("/data/events/part-0001"));
+        assertEquals("^/data/([^/]*)/dt=([^/]*)/(.*)$", PathNormalizer.globToRegex("/data/*/dt=*/**"));
+    }
+
+    @Test
+    public void testAlternation() {
+        // The whole path is replaced with the match of the whole path, not with a shorter match found again.
+        final PathNormalizer normalizer = PathNormalizer.parse("(a|ab)c? => X$1");
+        assertEquals("Xab", normalizer.normalize("abc"));
+        assertEquals("Xa", normalizer.normalize("ac"));
+    }
+
+    @Test
+    public void testNamedGroups() {
+        final PathNormalizer normalizer = PathNormalizer.parse("^/data/(?<table>[^/]+)/(?<=/)dt=[^/]+/.*$ => /data/${table}");
+        assertEquals("/data/events", normalizer.normalize("/data/events/dt=2026-10-17/part-0001"));
+        assertEquals(Collections.singleton("table"), PathNormalizer.getGroupNames("^/data/(?<table>[^/]+)/(?<=/)(?<!x)\\(?<escaped>"));
+    }
+
+    @Test
+    public void testInvalidRules() {
+        assertInvalid("^/data/.*$");
+        assertInvalid("^/data/(.*$ => $1");
+        assertInvalid("^/data/(.*)$ => $2");
+        assertInvalid("^/data/(?<table>.*)$ => ${name}");
+        assertInvalid("^/data/(?<table>.*)$ => ${table");
+        assertTrue(PathNormalizer.parse(null).isEmpty());
+    }
+
+    private void assertInvalid(String rules) {
+        try {
+            PathNormalizer.parse(rules);
+            throw new AssertionError("Should fail: " + rules);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Line 1"));
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestPublishedEventIds {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testRingWindow() throws IOException {
+        final File file = new File(tmpDir.getRoot(), "published-event-ids");
+        try (PublishedEventIds ids = new PublishedEventIds(file, 64)) {
+            ids.add(0);
+            ids.add(10);
+            ids.add(63);
+            assertTrue(ids.contains(0));
+            assertTrue(ids.contains(10));
+            assertFalse(ids.contains(11));
+            assertTrue(ids.contains(63));
+
+            // The window moves to 7..70, and the slot of 6 is reused by 70.
+            ids.add(70);
+            assertFalse(ids.contains(0));
+            assertTrue(ids.contains(10));
+            assertTrue(ids.contains(70));
+            assertFalse(ids.contains(6));
+        }
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        final File file = new File(tmpDir.getRoot(), "published-event-ids");
+        try (PublishedEventIds ids = new PublishedEventIds(file, 64)) {
+            ids.add(10);
+            ids.add(70);
+        }
+
+        try (PublishedEventIds ids = new PublishedEventIds(file, 64)) {
+            assertTrue(ids.contains(10));
+            assertTrue(ids.contains(70));
+            assertFalse(ids.contains(71));
+
+            // Jumping beyond the window forgets all ids.
+            ids.add(1000);
+            assertFalse(ids.contains(70));
+            assertTrue(ids.contains(1000));
+        }
+
+        // A file with a different capacity is cleared.
+        try (PublishedEventIds ids = new PublishedEventIds(file, 128)) {
+            assertFalse(ids.contains(1000));
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        final File file = new File(tmpDir.getRoot(), "published-event-ids");
+        try (PublishedEventIds ids = new PublishedEventIds(file, 64)) {
+            ids.add(10);
+            ids.add(70);
+
+            // The repository restarted its event ids.
+            ids.clear(0);
+            assertFalse(ids.contains(10));
+            assertFalse(ids.contains(70));
+            ids.add(10);
+            assertTrue(ids.contains(10));
+        }
+
+        try (PublishedEventIds ids = new PublishedEventIds(file, 64)) {
+            assertTrue(ids.contains(10));
+            assertFalse(ids.contains(11));
+        }
+    }
+
+}
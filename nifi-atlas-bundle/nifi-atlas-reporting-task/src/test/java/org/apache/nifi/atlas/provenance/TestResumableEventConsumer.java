@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.atlas.reporting.AtlasNiFiFlowLineage;
+import org.apache.nifi.authorization.user.NiFiUser;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventRepository;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.provenance.ProvenanceRepository;
+import org.apache.nifi.provenance.search.Query;
+import org.apache.nifi.provenance.search.QueryResult;
+import org.apache.nifi.provenance.search.QuerySubmission;
+import org.apache.nifi.reporting.EventAccess;
+import org.apache.nifi.util.MockComponentLog;
+import org.apache.nifi.util.MockStateManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestResumableEventConsumer {
+
+    private static final int EVENT_COUNT = 25;
+
+    private EventAccess eventAccess;
+    private MockStateManager stateManager;
+    private ResumableEventConsumer consumer;
+
+    @Before
+    public void before() throws IOException {
+        final List<ProvenanceEventRecord> events = new ArrayList<>();
+        for (long i = 0; i < EVENT_COUNT; i++) {
+            final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+            when(event.getEventId()).thenReturn(i);
+            events.add(event);
+        }
+
+        final ProvenanceEventRepository repository = Mockito.mock(ProvenanceEventRepository.class);
+        when(repository.getMaxEventId()).thenReturn((long) EVENT_COUNT - 1);
+        eventAccess = Mockito.mock(EventAccess.class);
+        when(eventAccess.getProvenanceRepository()).thenReturn(repository);
+        when(eventAccess.getProvenanceEvents(anyLong(), anyInt())).thenAnswer(invocation -> {
+            final int first = (int) (long) invocation.getArguments()[0];
+            final int max = (int) invocation.getArguments()[1];
+            return first < EVENT_COUNT ? new ArrayList<>(events.subList(first, Math.min(EVENT_COUNT, first + max))) : Collections.emptyList();
+        });
+
+        stateManager = new MockStateManager(new AtlasNiFiFlowLineage());
+        consumer = new ResumableEventConsumer();
+        consumer.setBatchSize(10);
+        consumer.setLogger(new MockComponentLog("0", this));
+        consumer.setScheduled(true);
+    }
+
+    @Test
+    public void testConsumeAll() {
+        final List<Integer> batchSizes = new ArrayList<>();
+        consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, events -> {
+            batchSizes.add(events.size());
+            return events.size();
+        });
+
+        assertEquals(3, batchSizes.size());
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "24", Scope.LOCAL);
+    }
+
+    @Test
+    public void testYieldMidBatch() {
+        // Consume only 4 events of the first batch.
+        consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, events -> Math.min(4, events.size()));
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "3", Scope.LOCAL);
+        assertEquals(4, consumer.getFirstEventId());
+
+        // Resume from the next event with a new consumer, as if the reporting task was restarted.
+        final ResumableEventConsumer resumed = new ResumableEventConsumer();
+        resumed.setBatchSize(10);
+        resumed.setLogger(new MockComponentLog("0", this));
+        resumed.setScheduled(true);
+        final List<Long> firstEventIds = new ArrayList<>();
+        resumed.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, events -> {
+            firstEventIds.add(events.get(0).getEventId());
+            return events.size();
+        });
+        assertEquals(4L, (long) firstEventIds.get(0));
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "24", Scope.LOCAL);
+    }
+
+    @Test
+    public void testResumeFromStateAndDeadline() throws IOException {
+        final Map<String, String> state = new HashMap<>();
+        state.put(ResumableEventConsumer.LAST_EVENT_ID_KEY, "9");
+        state.put("other", "kept");
+        stateManager.setState(state, Scope.LOCAL);
+
+        // Resume from the stored position, and stop after the first batch.
+        final long deadline = System.currentTimeMillis() + 60_000;
+        final List<Integer> batchSizes = new ArrayList<>();
+        consumer.consumeEvents(eventAccess, stateManager, deadline, events -> {
+            batchSizes.add(events.size());
+            consumer.setScheduled(false);
+            return events.size();
+        });
+        assertEquals(1, batchSizes.size());
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "19", Scope.LOCAL);
+        stateManager.assertStateEquals("other", "kept", Scope.LOCAL);
+
+        // Nothing is consumed once the deadline has passed.
+        consumer.setScheduled(true);
+        consumer.consumeEvents(eventAccess, stateManager, 0, events -> {
+            batchSizes.add(events.size());
+            return events.size();
+        });
+        assertEquals(1, batchSizes.size());
+    }
+
+    @Test
+    public void testRepositoryReset() throws IOException {
+        // The last event was 99, but the repository has only 25 events.
+        stateManager.setState(Collections.singletonMap(ResumableEventConsumer.LAST_EVENT_ID_KEY, "99"), Scope.LOCAL);
+        final List<Long> resetEventIds = new ArrayList<>();
+        consumer.setResetListener(resetEventIds::add);
+
+        final List<Long> firstEventIds = new ArrayList<>();
+        consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, events -> {
+            firstEventIds.add(events.get(0).getEventId());
+            return events.size();
+        });
+        assertEquals(Collections.singletonList(0L), resetEventIds);
+        assertEquals(0L, (long) firstEventIds.get(0));
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "24", Scope.LOCAL);
+
+        // Not reset again.
+        consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, events -> events.size());
+        assertEquals(1, resetEventIds.size());
+    }
+
+    @Test
+    public void testCatchUpAndBackFill() {
+        consumer.setCatchUpThreshold(10);
+
+        // Jumps to the latest event, leaving 0 to 23 as a gap.
+        final List<Long> liveEventIds = new ArrayList<>();
+        assertTrue(consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, events -> {
+            events.forEach(event -> liveEventIds.add(event.getEventId()));
+            return events.size();
+        }));
+        assertEquals(Collections.singletonList(24L), liveEventIds);
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "24", Scope.LOCAL);
+        stateManager.assertStateEquals(ResumableEventConsumer.GAP_START_KEY, "0", Scope.LOCAL);
+        stateManager.assertStateEquals(ResumableEventConsumer.GAP_END_KEY, "24", Scope.LOCAL);
+
+        final List<Long> backFilledEventIds = new ArrayList<>();
+        final ResumableEventConsumer.BatchConsumer backFill = events -> {
+            events.forEach(event -> backFilledEventIds.add(event.getEventId()));
+            return events.size();
+        };
+        consumer.consumeGap(eventAccess, stateManager, Long.MAX_VALUE, 1, backFill);
+        assertEquals(10, backFilledEventIds.size());
+        stateManager.assertStateEquals(ResumableEventConsumer.GAP_START_KEY, "10", Scope.LOCAL);
+
+        // Resume back-filling with a new consumer, as if the reporting task was restarted.
+        final ResumableEventConsumer resumed = new ResumableEventConsumer();
+        resumed.setBatchSize(10);
+        resumed.setCatchUpThreshold(10);
+        resumed.setLogger(new MockComponentLog("0", this));
+        resumed.setScheduled(true);
+        assertTrue(resumed.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, events -> events.size()));
+        assertTrue(resumed.hasGap());
+        assertEquals(10, resumed.getGapStart());
+
+        resumed.consumeGap(eventAccess, stateManager, Long.MAX_VALUE, Integer.MAX_VALUE, backFill);
+        assertEquals(24, backFilledEventIds.size());
+        assertEquals(23L, (long) backFilledEventIds.get(23));
+        assertFalse(resumed.hasGap());
+        stateManager.assertStateNotSet(ResumableEventConsumer.GAP_START_KEY, Scope.LOCAL);
+        stateManager.assertStateNotSet(ResumableEventConsumer.GAP_END_KEY, Scope.LOCAL);
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "24", Scope.LOCAL);
+    }
+
+    @Test
+    public void testBackFillPastDeadline() {
+        consumer.setCatchUpThreshold(10);
+        // Live events use up the time budget.
+        assertFalse(consumer.consumeEvents(eventAccess, stateManager, 0, events -> events.size()));
+        assertTrue(consumer.hasGap());
+
+        // A batch is back-filled even though the deadline has passed, but not more.
+        final List<Long> backFilledEventIds = new ArrayList<>();
+        consumer.consumeGap(eventAccess, stateManager, 0, Integer.MAX_VALUE, events -> {
+            events.forEach(event -> backFilledEventIds.add(event.getEventId()));
+            return events.size();
+        });
+        assertEquals(10, backFilledEventIds.size());
+        stateManager.assertStateEquals(ResumableEventConsumer.GAP_START_KEY, "10", Scope.LOCAL);
+    }
+
+    /**
+     * Even events are SEND, odd events are ROUTE, recorded every second long time ago.
+     * Searches return up to max results of the matching events, regardless of the event time.
+     */
+    private void mockSearchableRepository(boolean failSearch) throws IOException {
+        final List<ProvenanceEventRecord> events = new ArrayList<>();
+        for (long i = 0; i < EVENT_COUNT; i++) {
+            final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+            when(event.getEventId()).thenReturn(i);
+            when(event.getEventTime()).thenReturn(i * 1000);
+            when(event.getEventType()).thenReturn(i % 2 == 0 ? ProvenanceEventType.SEND : ProvenanceEventType.ROUTE);
+            events.add(event);
+        }
+
+        final ProvenanceRepository repository = Mockito.mock(ProvenanceRepository.class);
+        when(repository.getMaxEventId()).thenReturn((long) EVENT_COUNT - 1);
+        when(repository.submitQuery(any(Query.class), any(NiFiUser.class))).thenAnswer(invocation -> {
+            final Query query = (Query) invocation.getArguments()[0];
+            final String eventType = query.getSearchTerms().get(0).getValue();
+            final List<ProvenanceEventRecord> found = events.stream()
+                    .filter(event -> event.getEventType().name().equals(eventType))
+                    .collect(Collectors.toList());
+            final QueryResult result = Mockito.mock(QueryResult.class);
+            when(result.awaitCompletion(anyLong(), any(TimeUnit.class))).thenReturn(true);
+            when(result.getMatchingEvents()).thenReturn(found.subList(0, Math.min(found.size(), query.getMaxResults())));
+            when(result.getTotalHitCount()).thenReturn((long) found.size());
+            when(result.getError()).thenReturn(failSearch ? "Index is not available" : null);
+            final QuerySubmission submission = Mockito.mock(QuerySubmission.class);
+            when(submission.getResult()).thenReturn(result);
+            return submission;
+        });
+        when(eventAccess.getProvenanceRepository()).thenReturn(repository);
+        when(eventAccess.getProvenanceEvents(anyLong(), anyInt())).thenAnswer(invocation -> {
+            final int first = (int) (long) invocation.getArguments()[0];
+            final int max = (int) invocation.getArguments()[1];
+            return first < EVENT_COUNT ? new ArrayList<>(events.subList(first, Math.min(EVENT_COUNT, first + max))) : Collections.emptyList();
+        });
+    }
+
+    @Test
+    public void testIndexedSearch() throws Exception {
+        mockSearchableRepository(false);
+
+        consumer.setIndexedSearch(Collections.singleton(ProvenanceEventType.SEND), 1_000);
+        final List<Long> consumedEventIds = new ArrayList<>();
+        assertTrue(consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, batch -> {
+            batch.forEach(event -> consumedEventIds.add(event.getEventId()));
+            return batch.size();
+        }));
+
+        assertEquals(Arrays.asList(0L, 2L, 4L, 6L, 8L, 10L, 12L, 14L, 16L, 18L, 20L, 22L, 24L), consumedEventIds);
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "24", Scope.LOCAL);
+        // Only both ends of each range are read.
+        verify(eventAccess, never()).getProvenanceEvents(anyLong(), eq(10));
+        // Max results are large enough for all events within the margins, more than the 10 events in a range.
+        assertEquals(3, consumer.getSearchCount());
+        assertEquals(0, consumer.getSearchFallbackCount());
+    }
+
+    @Test
+    public void testIndexedSearchFallback() throws Exception {
+        mockSearchableRepository(true);
+
+        consumer.setIndexedSearch(Collections.singleton(ProvenanceEventType.SEND), 1_000);
+        final List<Long> consumedEventIds = new ArrayList<>();
+        assertTrue(consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE, batch -> {
+            batch.forEach(event -> consumedEventIds.add(event.getEventId()));
+            return batch.size();
+        }));
+
+        // All events are read.
+        assertEquals(EVENT_COUNT, consumedEventIds.size());
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "24", Scope.LOCAL);
+        assertEquals(0, consumer.getSearchCount());
+        assertEquals(3, consumer.getSearchFallbackCount());
+    }
+
+}
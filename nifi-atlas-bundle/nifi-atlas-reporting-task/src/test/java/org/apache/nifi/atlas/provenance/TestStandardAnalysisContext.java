@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.provenance.ProvenanceRepository;
+import org.apache.nifi.provenance.lineage.ComputeLineageResult;
+import org.apache.nifi.provenance.lineage.ComputeLineageSubmission;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestStandardAnalysisContext {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private ProvenanceEventRecord createEvent(long eventId, String componentType, String flowFileUuid) {
+        final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+        when(event.getEventId()).thenReturn(eventId);
+        when(event.getComponentId()).thenReturn("comp-" + eventId);
+        when(event.getComponentType()).thenReturn(componentType);
+        when(event.getFlowFileUuid()).thenReturn(flowFileUuid);
+        when(event.getEventType()).thenReturn(ProvenanceEventType.SEND);
+        when(event.getTransitUri()).thenReturn("http://nifi.example.com:8080/nifi-api/data-transfer/output-ports/port-guid");
+        return event;
+    }
+
+    private ComputeLineageResult mockLineage(ProvenanceRepository provenanceRepository, long eventId) throws Exception {
+        final ComputeLineageSubmission submission = Mockito.mock(ComputeLineageSubmission.class);
+        final ComputeLineageResult result = Mockito.mock(ComputeLineageResult.class);
+        when(submission.getResult()).thenReturn(result);
+        when(result.awaitCompletion(anyLong(), any(TimeUnit.class))).thenReturn(true);
+        when(provenanceRepository.submitLineageComputation(eq(eventId), any())).thenReturn(submission);
+        return result;
+    }
+
+    @Test
+    public void testPrepareBatch() throws Exception {
+        final ProvenanceRepository provenanceRepository = Mockito.mock(ProvenanceRepository.class);
+        final ComputeLineageResult result1 = mockLineage(provenanceRepository, 1L);
+
+        final StandardAnalysisContext context = new StandardAnalysisContext(null, null, provenanceRepository);
+        context.setLineageQueryExecutor(executor, 10_000, 60_000);
+
+        // The 2nd event is preceded by the 1st one in the same batch, so it doesn't need lineage.
+        final ProvenanceEventRecord event1 = createEvent(1L, "Output Port", "ff-1");
+        final ProvenanceEventRecord event2 = createEvent(2L, "Output Port", "ff-1");
+        // Analyzers of other components don't need lineage.
+        final ProvenanceEventRecord event3 = createEvent(3L, "PutFile", "ff-2");
+        context.prepareBatch(Arrays.asList(event1, event2, event3), EnumSet.of(ProvenanceEventType.SEND));
+
+        verify(provenanceRepository, timeout(1_000)).submitLineageComputation(eq(1L), any());
+        verify(provenanceRepository, never()).submitLineageComputation(eq(2L), any());
+        verify(provenanceRepository, never()).submitLineageComputation(eq(3L), any());
+
+        assertSame(result1, context.queryLineage(1L));
+
+        // The preceding event in the same batch is found without the index.
+        final FlowFileEventIndex.Entry previous = context.findPreviousEvent(event2);
+        assertEquals("comp-1", previous.getComponentId());
+        assertEquals(1L, previous.getEventId());
+        assertNull(context.findPreviousEvent(event1));
+    }
+
+    @Test
+    public void testNonContiguousBatch() throws Exception {
+        final ProvenanceRepository provenanceRepository = Mockito.mock(ProvenanceRepository.class);
+        mockLineage(provenanceRepository, 1L);
+        final ComputeLineageResult result3 = mockLineage(provenanceRepository, 3L);
+
+        final StandardAnalysisContext context = new StandardAnalysisContext(null, null, provenanceRepository);
+        context.setLineageQueryExecutor(executor, 10_000, 60_000);
+        context.setContiguousBatches(false);
+
+        // Only target events are read by indexed search, a ROUTE event 2 of ff-1 between them is not in the batch.
+        final ProvenanceEventRecord event1 = createEvent(1L, "Output Port", "ff-1");
+        final ProvenanceEventRecord event3 = createEvent(3L, "Output Port", "ff-1");
+        context.prepareBatch(Arrays.asList(event1, event3), EnumSet.of(ProvenanceEventType.SEND));
+
+        // The 1st event is not taken as the preceding event, and lineage is computed instead.
+        verify(provenanceRepository, timeout(1_000)).submitLineageComputation(eq(3L), any());
+        assertNull(context.findPreviousEvent(event3));
+        assertSame(result3, context.queryLineage(3L));
+    }
+
+    @Test
+    public void testBatchTimeout() throws Exception {
+        final ProvenanceRepository provenanceRepository = Mockito.mock(ProvenanceRepository.class);
+        mockLineage(provenanceRepository, 1L);
+
+        final StandardAnalysisContext context = new StandardAnalysisContext(null, null, provenanceRepository);
+        context.setLineageQueryExecutor(executor, 10_000, 0);
+        context.prepareBatch(Arrays.asList(createEvent(1L, "Output Port", "ff-1")), EnumSet.of(ProvenanceEventType.SEND));
+
+        // The batch time budget is used up already.
+        assertNull(context.queryLineage(1L));
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.provenance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestTransitUri {
+
+    @Test
+    public void testHdfs() {
+        final TransitUri uri = TransitUri.parse("hdfs://0.example.com:8020/user/nifi/fileA");
+        assertEquals("hdfs", uri.getScheme());
+        assertEquals(1, uri.getHostCount());
+        assertEquals("0.example.com", uri.getHost());
+        assertEquals(8020, uri.getPort(0));
+        assertEquals("/user/nifi/fileA", uri.getPath());
+        assertEquals("user", uri.getPathSegment(0));
+        assertEquals("fileA", uri.getPathSegment(2));
+        assertNull(uri.getPathSegment(3));
+    }
+
+    @Test
+    public void testHostList() {
+        final TransitUri uri = TransitUri.parse("PLAINTEXT://0.example.com:6667,1.example.com:6667/topicA");
+        assertEquals("PLAINTEXT", uri.getScheme());
+        assertEquals(2, uri.getHostCount());
+        assertEquals("0.example.com", uri.getHost(0));
+        assertEquals("1.example.com", uri.getHost(1));
+        assertEquals(6667, uri.getPort(1));
+        assertNull(uri.getHost(2));
+        assertEquals("topicA", uri.getPathSegment(0));
+
+        final TransitUri hbase = TransitUri.parse("hbase://zk0.example.com,zk1.example.com,zk3.example.com/tableA/rowB");
+        assertEquals(3, hbase.getHostCount());
+        assertEquals("zk3.example.com", hbase.getHost(2));
+        assertEquals(-1, hbase.getPort(2));
+        assertEquals("tableA", hbase.getPathSegment(0));
+        assertEquals("rowB", hbase.getPathSegment(1));
+    }
+
+    @Test
+    public void testJdbc() {
+        final TransitUri uri = TransitUri.parse("jdbc:hive2://user@0.example.com:10000/databaseA;principal=hive?x=y");
+        assertEquals("jdbc:hive2", uri.getScheme());
+        assertEquals("0.example.com", uri.getHost());
+        assertEquals(10000, uri.getPort(0));
+        assertEquals("databaseA;principal=hive", uri.getPathSegment(0));
+        assertEquals("/databaseA;principal=hive", uri.getPath());
+    }
+
+    @Test
+    public void testNoAuthority() {
+        final TransitUri uri = TransitUri.parse("file:/var/data/landing/sample%20z");
+        assertEquals("file", uri.getScheme());
+        assertEquals(0, uri.getHostCount());
+        assertNull(uri.getHost());
+        assertEquals("/var/data/landing/sample z", uri.getPath());
+
+        assertNull(TransitUri.parse(null));
+        assertEquals("", TransitUri.parse("thrift://0.example.com:9083").getPath());
+    }
+
+}
@@ -52,6 +52,7 @@ public class TestCreateObscureInputDataSet {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final List<ConnectionStatus> connections = new ArrayList<>();
 
@@ -82,6 +83,7 @@ public class TestCreateObscureInputDataSet {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final List<ConnectionStatus> connections = new ArrayList<>();
         // The content of connection is not important, just create an empty status.
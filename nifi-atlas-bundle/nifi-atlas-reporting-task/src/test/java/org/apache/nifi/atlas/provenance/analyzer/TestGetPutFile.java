@@ -49,6 +49,7 @@ public class TestGetPutFile {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final AnalysisContext context = Mockito.mock(AnalysisContext.class);
         when(context.getClusterResolver()).thenReturn(clusterResolvers);
@@ -79,6 +80,7 @@ public class TestGetPutFile {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final AnalysisContext context = Mockito.mock(AnalysisContext.class);
         when(context.getClusterResolver()).thenReturn(clusterResolvers);
@@ -21,12 +21,17 @@ import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
 import org.apache.nifi.atlas.provenance.NiFiProvenanceEventAnalyzer;
 import org.apache.nifi.atlas.provenance.NiFiProvenanceEventAnalyzerFactory;
+import org.apache.nifi.atlas.resolver.ClusterResolver;
 import org.apache.nifi.atlas.resolver.ClusterResolvers;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.context.PropertyContext;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.provenance.ProvenanceEventType;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Collections;
+
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_NAME;
 import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
 import static org.junit.Assert.assertEquals;
@@ -47,6 +52,7 @@ public class TestKafkaTopic {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final AnalysisContext context = Mockito.mock(AnalysisContext.class);
         when(context.getClusterResolver()).thenReturn(clusterResolvers);
@@ -74,6 +80,7 @@ public class TestKafkaTopic {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final AnalysisContext context = Mockito.mock(AnalysisContext.class);
         when(context.getClusterResolver()).thenReturn(clusterResolvers);
@@ -90,6 +97,49 @@ public class TestKafkaTopic {
         assertEquals("topicA@cluster1", ref.get(ATTR_QUALIFIED_NAME));
     }
 
+    /**
+     * The default cluster name is used only if none of the brokers can be resolved.
+     */
+    @Test
+    public void testPublishKafkaDefaultClusterName() {
+        final String processorName = "PublishKafka";
+        final String transitUri = "PLAINTEXT://0.example.com:6667,1.example.com:6667/topicA";
+        final ProvenanceEventRecord record = Mockito.mock(ProvenanceEventRecord.class);
+        when(record.getComponentType()).thenReturn(processorName);
+        when(record.getTransitUri()).thenReturn(transitUri);
+        when(record.getEventType()).thenReturn(ProvenanceEventType.SEND);
+
+        // Only the second broker can be resolved.
+        final ClusterResolver resolver = new ClusterResolver() {
+            @Override
+            public PropertyDescriptor getSupportedDynamicPropertyDescriptor(String propertyDescriptorName) {
+                return null;
+            }
+
+            @Override
+            public void configure(PropertyContext context) {
+            }
+
+            @Override
+            public String fromHostname(String hostname) {
+                return "1.example.com".equals(hostname) ? "cluster1" : null;
+            }
+        };
+        final ClusterResolvers clusterResolvers = new ClusterResolvers(Collections.singleton(resolver), "defaultCluster");
+
+        final AnalysisContext context = Mockito.mock(AnalysisContext.class);
+        when(context.getClusterResolver()).thenReturn(clusterResolvers);
+
+        final NiFiProvenanceEventAnalyzer analyzer = NiFiProvenanceEventAnalyzerFactory.getAnalyzer(processorName, transitUri, record.getEventType());
+        final DataSetRefs refs = analyzer.analyze(context, record);
+        assertEquals("topicA@cluster1", refs.getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+
+        // If none can be resolved, the default cluster name is used.
+        when(record.getTransitUri()).thenReturn("PLAINTEXT://0.example.com:6667,2.example.com:6667/topicA");
+        final DataSetRefs defaultRefs = analyzer.analyze(context, record);
+        assertEquals("topicA@defaultCluster", defaultRefs.getOutputs().iterator().next().get(ATTR_QUALIFIED_NAME));
+    }
+
     @Test
     public void testConsumeKafka() {
         final String processorName = "ConsumeKafka";
@@ -101,6 +151,7 @@ public class TestKafkaTopic {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final AnalysisContext context = Mockito.mock(AnalysisContext.class);
         when(context.getClusterResolver()).thenReturn(clusterResolvers);
@@ -129,6 +180,7 @@ public class TestKafkaTopic {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final AnalysisContext context = Mockito.mock(AnalysisContext.class);
         when(context.getClusterResolver()).thenReturn(clusterResolvers);
@@ -19,6 +19,7 @@ package org.apache.nifi.atlas.provenance.analyzer;
 import org.apache.atlas.typesystem.Referenceable;
 import org.apache.nifi.atlas.provenance.AnalysisContext;
 import org.apache.nifi.atlas.provenance.DataSetRefs;
+import org.apache.nifi.atlas.provenance.FlowFileEventIndex;
 import org.apache.nifi.atlas.provenance.NiFiProvenanceEventAnalyzer;
 import org.apache.nifi.atlas.provenance.NiFiProvenanceEventAnalyzerFactory;
 import org.apache.nifi.atlas.resolver.ClusterResolvers;
@@ -44,8 +45,11 @@ import static org.apache.nifi.provenance.lineage.LineageNodeType.PROVENANCE_EVEN
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.matches;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TestNiFiRemotePort {
@@ -70,6 +74,7 @@ public class TestNiFiRemotePort {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final List<ConnectionStatus> connections = new ArrayList<>();
         final ConnectionStatus connection = new ConnectionStatus();
@@ -110,6 +115,45 @@ public class TestNiFiRemotePort {
         assertEquals("file-guid", ref.get(ATTR_QUALIFIED_NAME));
     }
 
+    @Test
+    public void testRemoteInputPortIndexed() {
+        final String componentType = "Remote Input Port";
+        final String transitUri = "http://0.example.com:8080/nifi-api/data-transfer/input-ports/port-guid/transactions/tx-guid/flow-files";
+        final ProvenanceEventRecord sendEvent = Mockito.mock(ProvenanceEventRecord.class);
+        when(sendEvent.getEventId()).thenReturn(123L);
+        when(sendEvent.getComponentId()).thenReturn("port-guid");
+        when(sendEvent.getFlowFileUuid()).thenReturn("file-guid");
+        when(sendEvent.getComponentType()).thenReturn(componentType);
+        when(sendEvent.getTransitUri()).thenReturn(transitUri);
+        when(sendEvent.getEventType()).thenReturn(ProvenanceEventType.SEND);
+
+        final ProvenanceEventRecord createEvent = Mockito.mock(ProvenanceEventRecord.class);
+        when(createEvent.getEventId()).thenReturn(100L);
+        when(createEvent.getComponentId()).thenReturn("processor-guid");
+        when(createEvent.getFlowFileUuid()).thenReturn("file-guid");
+
+        final FlowFileEventIndex index = new FlowFileEventIndex(10);
+        index.record(createEvent);
+
+        final List<ConnectionStatus> connections = new ArrayList<>();
+        final ConnectionStatus connection = new ConnectionStatus();
+        connection.setDestinationId("port-guid");
+        connection.setDestinationName("inputPortA");
+        connections.add(connection);
+
+        final AnalysisContext context = Mockito.mock(AnalysisContext.class);
+        when(context.findConnectionTo(matches("port-guid"))).thenReturn(connections);
+        when(context.findPreviousEvent(sendEvent)).thenReturn(index.findPrevious(sendEvent));
+
+        final NiFiProvenanceEventAnalyzer analyzer = NiFiProvenanceEventAnalyzerFactory.getAnalyzer(componentType, transitUri, sendEvent.getEventType());
+        final DataSetRefs refs = analyzer.analyze(context, sendEvent);
+        assertEquals(1, refs.getComponentIds().size());
+        assertTrue(refs.getComponentIds().contains("processor-guid"));
+
+        // Lineage should not be computed if the previous event is indexed.
+        verify(context, never()).queryLineage(anyLong());
+    }
+
     private LineageNode createLineageNode(LineageNodeType type, String id) {
         final LineageNode node = Mockito.mock(LineageNode.class);
         when(node.getNodeType()).thenReturn(type);
@@ -140,6 +184,7 @@ public class TestNiFiRemotePort {
 
         final ClusterResolvers clusterResolvers = Mockito.mock(ClusterResolvers.class);
         when(clusterResolvers.fromHostname(matches(".+\\.example\\.com"))).thenReturn("cluster1");
+        when(clusterResolvers.fromHostnames(matches("[^,]+\\.example\\.com(:\\d+)?(,[^,]+\\.example\\.com(:\\d+)?)*"))).thenReturn("cluster1");
 
         final List<ConnectionStatus> connections = new ArrayList<>();
         final ConnectionStatus connection = new ConnectionStatus();
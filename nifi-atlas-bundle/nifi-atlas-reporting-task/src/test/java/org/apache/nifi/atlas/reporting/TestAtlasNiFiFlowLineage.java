@@ -16,26 +16,53 @@
  */
 package org.apache.nifi.atlas.reporting;
 
+import org.apache.atlas.notification.hook.HookNotification;
+import org.apache.atlas.typesystem.Referenceable;
+import org.apache.nifi.atlas.NiFIAtlasHook;
+import org.apache.nifi.atlas.provenance.PublishedEventIds;
+import org.apache.nifi.atlas.provenance.ResumableEventConsumer;
 import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventRepository;
+import org.apache.nifi.reporting.EventAccess;
+import org.apache.nifi.util.MockComponentLog;
 import org.apache.nifi.util.MockProcessContext;
+import org.apache.nifi.util.MockStateManager;
 import org.apache.nifi.util.MockValidationContext;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import static org.apache.nifi.atlas.NiFiTypes.ATTR_QUALIFIED_NAME;
 import static org.apache.nifi.atlas.reporting.AtlasNiFiFlowLineage.ATLAS_PASSWORD;
 import static org.apache.nifi.atlas.reporting.AtlasNiFiFlowLineage.ATLAS_URLS;
 import static org.apache.nifi.atlas.reporting.AtlasNiFiFlowLineage.ATLAS_USER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.when;
 
 public class TestAtlasNiFiFlowLineage {
 
     private final Logger logger = LoggerFactory.getLogger(TestAtlasNiFiFlowLineage.class);
 
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
     @Test
     public void validateAtlasUrls() throws Exception {
         final AtlasNiFiFlowLineage reportingTask = new AtlasNiFiFlowLineage();
@@ -84,4 +111,77 @@ public class TestAtlasNiFiFlowLineage {
                 r -> assertTrue("Atlas URLs is invalid", !r.isValid()));
     }
 
+    private static List<ProvenanceEventRecord> createEvents(long from, long to) {
+        final List<ProvenanceEventRecord> events = new ArrayList<>();
+        for (long i = from; i < to; i++) {
+            final ProvenanceEventRecord event = Mockito.mock(ProvenanceEventRecord.class);
+            when(event.getEventId()).thenReturn(i);
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static NiFIAtlasHook createHook(boolean deliverable) {
+        final NiFIAtlasHook hook = new NiFIAtlasHook() {
+            @Override
+            protected void notifyEntities(List<HookNotification.HookNotificationMessage> messages) {
+                if (!deliverable) {
+                    throw new IllegalStateException("Failed to send notification messages.");
+                }
+            }
+        };
+        final Referenceable topic = new Referenceable("kafka_topic");
+        topic.set(ATTR_QUALIFIED_NAME, "topic1@cluster1");
+        hook.addCreateReferenceable(null, topic);
+        return hook;
+    }
+
+    @Test
+    public void testEventsArePublishedOnlyIfDelivered() throws Exception {
+        try (PublishedEventIds published = new PublishedEventIds(new File(tmpDir.getRoot(), "published-event-ids"), 64)) {
+            assertFalse(AtlasNiFiFlowLineage.commitMessages(createHook(false), createEvents(0, 3), published));
+            for (long i = 0; i < 3; i++) {
+                assertFalse(published.contains(i));
+            }
+
+            assertTrue(AtlasNiFiFlowLineage.commitMessages(createHook(true), createEvents(0, 3), published));
+            for (long i = 0; i < 3; i++) {
+                assertTrue(published.contains(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointStopsAtFailedSlice() throws Exception {
+        final List<ProvenanceEventRecord> events = createEvents(0, 10);
+        final ProvenanceEventRepository repository = Mockito.mock(ProvenanceEventRepository.class);
+        when(repository.getMaxEventId()).thenReturn(9L);
+        final EventAccess eventAccess = Mockito.mock(EventAccess.class);
+        when(eventAccess.getProvenanceRepository()).thenReturn(repository);
+        when(eventAccess.getProvenanceEvents(anyLong(), anyInt())).thenAnswer(invocation -> {
+            final int first = (int) (long) invocation.getArguments()[0];
+            final int max = (int) invocation.getArguments()[1];
+            return first < events.size() ? new ArrayList<>(events.subList(first, Math.min(events.size(), first + max))) : Collections.emptyList();
+        });
+
+        final MockStateManager stateManager = new MockStateManager(new AtlasNiFiFlowLineage());
+        final ResumableEventConsumer consumer = new ResumableEventConsumer();
+        consumer.setBatchSize(10);
+        consumer.setLogger(new MockComponentLog("0", this));
+        consumer.setScheduled(true);
+
+        // The second slice fails to be delivered.
+        final List<Long> firstEventIds = new ArrayList<>();
+        consumer.consumeEvents(eventAccess, stateManager, Long.MAX_VALUE,
+                batch -> AtlasNiFiFlowLineage.consumeInSlices(batch, Long.MAX_VALUE, 4, slice -> {
+                    firstEventIds.add(slice.get(0).getEventId());
+                    return firstEventIds.size() != 2;
+                }));
+
+        // The third slice is not consumed, and the position stays at the end of the first slice.
+        assertEquals(2, firstEventIds.size());
+        stateManager.assertStateEquals(ResumableEventConsumer.LAST_EVENT_ID_KEY, "3", Scope.LOCAL);
+        assertEquals(4, consumer.getFirstEventId());
+    }
+
 }
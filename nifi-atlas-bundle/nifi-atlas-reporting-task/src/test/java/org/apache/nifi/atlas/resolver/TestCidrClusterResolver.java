@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.atlas.resolver;
+
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.context.PropertyContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.when;
+
+public class TestCidrClusterResolver {
+
+    private PropertyContext context;
+    private ValidationContext validationContext;
+
+    public void setupMock(Map<String, String> properties) {
+        context = Mockito.mock(PropertyContext.class);
+        validationContext = Mockito.mock(ValidationContext.class);
+        when(validationContext.getAllProperties()).thenReturn(properties);
+        when(context.getAllProperties()).thenReturn(properties);
+    }
+
+    @Test
+    public void testCidr() {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put(CidrClusterResolver.CIDR_PROPERTY_PREFIX + "Cluster1", "192.168.0.0/16 fd00::/8");
+        properties.put(CidrClusterResolver.CIDR_PROPERTY_PREFIX + "Cluster2", "192.168.2.0/24\n10.0.0.1");
+        setupMock(properties);
+        final CidrClusterResolver resolver = new CidrClusterResolver();
+
+        Assert.assertEquals(0, resolver.validate(validationContext).size());
+        resolver.configure(context);
+
+        Assert.assertEquals("Cluster1", resolver.fromHostname("192.168.1.10"));
+        // The longest matching range is used.
+        Assert.assertEquals("Cluster2", resolver.fromHostname("192.168.2.10"));
+        Assert.assertEquals("Cluster2", resolver.fromHostname("10.0.0.1"));
+        Assert.assertNull(resolver.fromHostname("10.0.0.2"));
+        Assert.assertNull(resolver.fromHostname("192.169.0.1"));
+
+        Assert.assertEquals("Cluster1", resolver.fromHostname("fd12:3456::1"));
+        Assert.assertEquals("Cluster1", resolver.fromHostname("[fd12:3456::1]"));
+        Assert.assertNull(resolver.fromHostname("fe80::1"));
+        Assert.assertNull(resolver.fromHostname(null));
+    }
+
+    @Test
+    public void testHostnameSuffix() {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put(CidrClusterResolver.SUFFIX_PROPERTY_PREFIX + "Cluster1", "example.com");
+        properties.put(CidrClusterResolver.SUFFIX_PROPERTY_PREFIX + "Cluster2", ".c2.example.com");
+        setupMock(properties);
+        final CidrClusterResolver resolver = new CidrClusterResolver();
+
+        Assert.assertEquals(0, resolver.validate(validationContext).size());
+        resolver.configure(context);
+
+        Assert.assertEquals("Cluster1", resolver.fromHostname("example.com"));
+        Assert.assertEquals("Cluster1", resolver.fromHostname("host1.c1.example.com"));
+        Assert.assertEquals("Cluster2", resolver.fromHostname("host1.C2.example.com."));
+        Assert.assertEquals("Cluster2", resolver.fromHostname("c2.example.com"));
+        // Suffix has to match with whole labels.
+        Assert.assertNull(resolver.fromHostname("host1.anexample.com"));
+        Assert.assertNull(resolver.fromHostname("example.org"));
+        // IP addresses are not matched with hostname suffixes.
+        Assert.assertNull(resolver.fromHostname("192.168.1.10"));
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put(CidrClusterResolver.CIDR_PROPERTY_PREFIX + "Cluster1", "192.168.0.0/33");
+        properties.put(CidrClusterResolver.CIDR_PROPERTY_PREFIX + "Cluster2", "host1.example.com/24");
+        properties.put(CidrClusterResolver.CIDR_PROPERTY_PREFIX + "Cluster3", "10.0.0.0/8");
+        properties.put(CidrClusterResolver.CIDR_PROPERTY_PREFIX + "Cluster4", "10.0.0.0/8");
+        properties.put(CidrClusterResolver.SUFFIX_PROPERTY_PREFIX, "example.com");
+        setupMock(properties);
+        final CidrClusterResolver resolver = new CidrClusterResolver();
+
+        final Collection<ValidationResult> validationResults = resolver.validate(validationContext);
+        Assert.assertEquals(4, validationResults.size());
+
+        try {
+            resolver.configure(context);
+            Assert.fail("Configure method should fail, too");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testToAddress() {
+        Assert.assertArrayEquals(new byte[]{(byte) 192, (byte) 168, 1, 10}, CidrClusterResolver.toAddress("192.168.1.10"));
+        Assert.assertEquals(16, CidrClusterResolver.toAddress("::1").length);
+        Assert.assertEquals(16, CidrClusterResolver.toAddress("fe80::1%eth0").length);
+        Assert.assertNull(CidrClusterResolver.toAddress("192.168.1"));
+        Assert.assertNull(CidrClusterResolver.toAddress("192.168.1.256"));
+        Assert.assertNull(CidrClusterResolver.toAddress("192.168..1"));
+        Assert.assertNull(CidrClusterResolver.toAddress("host1.example.com"));
+        Assert.assertNull(CidrClusterResolver.toAddress("host1:8080x"));
+    }
+
+}
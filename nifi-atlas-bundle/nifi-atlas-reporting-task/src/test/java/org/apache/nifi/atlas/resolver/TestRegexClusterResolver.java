@@ -155,4 +155,53 @@ public class TestRegexClusterResolver {
         Assert.assertNull(resolver.fromHostname("192.168.3.30"));
     }
 
+    @Test
+    public void testClusterPrecedence() {
+        final Map<String, String> properties = new HashMap<>();
+        // Both patterns match hosts in c1, the cluster whose name comes first is used.
+        properties.put(RegexClusterResolver.PATTERN_PROPERTY_PREFIX + "ClusterB", "^.*\\.c1\\.example.com$");
+        properties.put(RegexClusterResolver.PATTERN_PROPERTY_PREFIX + "ClusterA", "^.*\\.example.com$");
+        properties.put(RegexClusterResolver.PATTERN_PROPERTY_PREFIX + "ClusterC", "^(c)\\1\\.example.org$");
+        setupMock(properties);
+        final RegexClusterResolver resolver = new RegexClusterResolver();
+        resolver.configure(context);
+
+        Assert.assertEquals("ClusterA", resolver.fromHostname("host1.c1.example.com"));
+        Assert.assertEquals("ClusterA", resolver.fromHostname("host1.c1.example.com"));
+        // Patterns having back references are supported, too.
+        Assert.assertEquals("ClusterC", resolver.fromHostname("cc.example.org"));
+        Assert.assertNull(resolver.fromHostname("c.example.org"));
+        Assert.assertNull(resolver.fromHostname(null));
+    }
+
+    @Test
+    public void testCapturingGroups() {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put(RegexClusterResolver.PATTERN_PROPERTY_PREFIX + "Cluster1", "^(kafka|zk)(\\d+)\\.c1\\.example.com$");
+        properties.put(RegexClusterResolver.PATTERN_PROPERTY_PREFIX + "Cluster2", "^(kafka|zk)(\\d+)\\.c2\\.example.com$");
+        setupMock(properties);
+        final RegexClusterResolver resolver = new RegexClusterResolver();
+        resolver.configure(context);
+
+        Assert.assertEquals("Cluster1", resolver.fromHostname("kafka0.c1.example.com"));
+        Assert.assertEquals("Cluster2", resolver.fromHostname("zk1.c2.example.com"));
+        Assert.assertNull(resolver.fromHostname("zk1.c3.example.com"));
+    }
+
+    @Test
+    public void testFromHostnames() {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put(RegexClusterResolver.PATTERN_PROPERTY_PREFIX + "Cluster1", "^.*\\.c1\\.example.com$ ^192.168.1.[\\d]+$ ^fe80::1$");
+        setupMock(properties);
+        final RegexClusterResolver resolver = new RegexClusterResolver();
+        resolver.configure(context);
+
+        Assert.assertEquals("Cluster1", resolver.fromHostnames("0.other.example.com:6667,1.c1.example.com:6667"));
+        Assert.assertEquals("Cluster1", resolver.fromHostnames("unknown", "user@192.168.1.10:8020"));
+        Assert.assertEquals("Cluster1", resolver.fromHostnames("[fe80::1]:8080"));
+        Assert.assertEquals("Cluster1", resolver.fromHostnames("fe80::1"));
+        Assert.assertNull(resolver.fromHostnames("0.other.example.com:6667"));
+        Assert.assertNull(resolver.fromHostnames((String) null));
+    }
+
 }